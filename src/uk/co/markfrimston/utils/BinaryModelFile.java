@@ -0,0 +1,277 @@
+/*
+Copyright (c) 2008 Mark Frimston
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package uk.co.markfrimston.utils;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.zip.*;
+
+/*
+ * A WireframeModel's points and lines in a compact binary file, which can be
+ * memory-mapped and read straight out of the mapping. All values are little 
+ * endian. The file is a fixed size header:
+ * 
+ *   magic "WFMB", format version (int)
+ *   number of points, number of lines (int)
+ *   length and modification time of the source file, or -1 and 0 (long)
+ *   scaling the source was loaded with (double)
+ *   CRC32 of everything after the header (long)
+ *   padding to 64 bytes
+ * 
+ * followed by the x, y and z coordinates as three arrays of doubles, then 
+ * the start and end point of each line in turn as ints.
+ */
+class BinaryModelFile
+{
+	private static final int MAGIC = 0x424d4657; //"WFMB" read little endian
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 64;
+	private static final int WRITE_SIZE = 1 << 16;
+	
+	public int numPoints;
+	public int numLines;
+	public long sourceLength;
+	public long sourceModified;
+	public double scaling;
+	public long checksum;
+	
+	public DoubleBuffer xs;
+	public DoubleBuffer ys;
+	public DoubleBuffer zs;
+	//start and end of each line in turn
+	public IntBuffer lines;
+	
+	/*
+	 * Writes a model file, going through a temporary file which replaces any 
+	 * existing one once complete
+	 */
+	public static void write(File file, PointBuffer points, int[][] lines, 
+			long sourceLength, long sourceModified, double scaling) throws IOException
+	{
+		//a temporary file of its own, so writers of the same cache don't collide
+		File temp = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(), 
+				file.getName(), ".tmp").toFile();
+		boolean written = false;
+		try
+		{
+			RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+			try
+			{
+				raf.setLength(0);
+				FileChannel channel = raf.getChannel();
+				ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+				CRC32 crc = new CRC32();
+				channel.position(HEADER_SIZE);
+			
+				int size = points.size();
+				double[][] coords = {points.xs, points.ys, points.zs};
+				for(double[] array : coords)
+				{
+					for(int i=0; i<size; )
+					{
+						int count = Math.min(size-i, buffer.remaining()/8);
+						if(count == 0)
+						{
+							flush(channel, buffer, crc);
+							continue;
+						}
+						buffer.asDoubleBuffer().put(array, i, count);
+						buffer.position(buffer.position()+count*8);
+						i += count;
+					}
+				}
+				for(int[] line : lines)
+				{
+					if(buffer.remaining() < 8){
+						flush(channel, buffer, crc);
+					}
+					buffer.putInt(line[0]);
+					buffer.putInt(line[1]);
+				}
+				flush(channel, buffer, crc);
+			
+				buffer.putInt(MAGIC);
+				buffer.putInt(VERSION);
+				buffer.putInt(size);
+				buffer.putInt(lines.length);
+				buffer.putLong(sourceLength);
+				buffer.putLong(sourceModified);
+				buffer.putDouble(scaling);
+				buffer.putLong(crc.getValue());
+				while(buffer.position() < HEADER_SIZE)
+				{
+					buffer.put((byte)0);
+				}
+				buffer.flip();
+				channel.write(buffer, 0);
+			}
+			finally
+			{
+				raf.close();
+			}
+			
+			//replace the old file in one step, so there is always a whole cache
+			try
+			{
+				Files.move(temp.toPath(), file.toPath(), 
+						StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch(AtomicMoveNotSupportedException e)
+			{
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			written = true;
+		}
+		finally
+		{
+			if(!written){
+				temp.delete();
+			}
+		}
+	}
+	
+	private static void flush(FileChannel channel, ByteBuffer buffer, CRC32 crc) throws IOException
+	{
+		buffer.flip();
+		crc.update(buffer.duplicate());
+		while(buffer.hasRemaining())
+		{
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+	
+	/*
+	 * Reads just the header of a model file, or returns null if it is missing
+	 * or isn't a model file of this version
+	 */
+	public static BinaryModelFile readHeader(File file) throws IOException
+	{
+		if(!file.isFile() || file.length() < HEADER_SIZE){
+			return null;
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			return readHeader(raf.getChannel());
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+	
+	private static BinaryModelFile readHeader(FileChannel channel) throws IOException
+	{
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		while(header.hasRemaining())
+		{
+			if(channel.read(header, header.position()) < 0){
+				return null;
+			}
+		}
+		header.flip();
+		if(header.getInt() != MAGIC || header.getInt() != VERSION){
+			return null;
+		}
+		BinaryModelFile model = new BinaryModelFile();
+		model.numPoints = header.getInt();
+		model.numLines = header.getInt();
+		model.sourceLength = header.getLong();
+		model.sourceModified = header.getLong();
+		model.scaling = header.getDouble();
+		model.checksum = header.getLong();
+		if(model.numPoints < 0 || model.numLines < 0){
+			return null;
+		}
+		return model;
+	}
+	
+	/*
+	 * Whether this file was made from the given source, as it is now, with 
+	 * the given scaling
+	 */
+	public boolean isFrom(File source, double scaling)
+	{
+		return sourceLength >= 0 && sourceLength == source.length() 
+			&& sourceModified == source.lastModified()
+			&& Double.compare(this.scaling, scaling) == 0;
+	}
+	
+	/*
+	 * Maps a model file, checking its checksum
+	 */
+	public static BinaryModelFile read(File file) throws IOException, ModelFormatException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			BinaryModelFile model = readHeader(channel);
+			if(model == null){
+				throw new ModelFormatException("Not a binary model file");
+			}
+			long coordsSize = (long)model.numPoints * 8;
+			long linesSize = (long)model.numLines * 8;
+			if(channel.size() != HEADER_SIZE + coordsSize*3 + linesSize){
+				throw new ModelFormatException("Binary model file is the wrong size");
+			}
+			
+			//mapped a section at a time, as a mapping is limited to 2GB
+			CRC32 crc = new CRC32();
+			long pos = HEADER_SIZE;
+			model.xs = map(channel, pos, coordsSize, crc).asDoubleBuffer();
+			pos += coordsSize;
+			model.ys = map(channel, pos, coordsSize, crc).asDoubleBuffer();
+			pos += coordsSize;
+			model.zs = map(channel, pos, coordsSize, crc).asDoubleBuffer();
+			pos += coordsSize;
+			model.lines = map(channel, pos, linesSize, crc).asIntBuffer();
+			if(crc.getValue() != model.checksum){
+				throw new ModelFormatException("Binary model file checksum does not match");
+			}
+			return model;
+		}
+		finally
+		{
+			//mappings stay valid once the channel is closed
+			raf.close();
+		}
+	}
+	
+	private static ByteBuffer map(FileChannel channel, long pos, long size, CRC32 crc) 
+		throws IOException, ModelFormatException
+	{
+		if(size > Integer.MAX_VALUE){
+			throw new ModelFormatException("Model too large for binary file");
+		}
+		ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, pos, size);
+		crc.update(buffer.duplicate());
+		return buffer.order(ByteOrder.LITTLE_ENDIAN);
+	}
+}
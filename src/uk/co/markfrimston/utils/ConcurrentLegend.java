@@ -0,0 +1,134 @@
+/*
+Copyright (c) 2008 Mark Frimston
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package uk.co.markfrimston.utils;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+/*
+ * A Legend which may be read and added to from many threads. Looking up a 
+ * known type takes no locks. A new type is given the next position from a
+ * counter and stored in a chunk of slots, chunks doubling in size so slots
+ * never move once written. Types may not be null.
+ */
+class ConcurrentLegend<T>
+{
+	private static final int FIRST_CHUNK_BITS = 4;
+	private static final int FIRST_CHUNK = 1 << FIRST_CHUNK_BITS;
+	private static final int MAX_CHUNKS = 32-FIRST_CHUNK_BITS;
+	
+	private ConcurrentHashMap<T,Integer> ordinals = new ConcurrentHashMap<T,Integer>();
+	private AtomicInteger size = new AtomicInteger();
+	private AtomicReferenceArray<AtomicReferenceArray<T>> chunks 
+			= new AtomicReferenceArray<AtomicReferenceArray<T>>(MAX_CHUNKS);
+	
+	/*
+	 * Returns the position of the given type, or -1 if it isn't present
+	 */
+	public int indexOf(T type)
+	{
+		Integer ordinal = ordinals.get(type);
+		return ordinal != null ? ordinal : -1;
+	}
+	
+	/*
+	 * Adds the type if it isn't present, returning its position
+	 */
+	public int add(final T type)
+	{
+		Integer ordinal = ordinals.get(type);
+		if(ordinal != null){
+			return ordinal;
+		}
+		//only runs once for each new type
+		return ordinals.computeIfAbsent(type, new Function<T,Integer>(){
+			public Integer apply(T key)
+			{
+				int ordinal = size.getAndIncrement();
+				chunk(ordinal).set(offset(ordinal), key);
+				return ordinal;
+			}
+		});
+	}
+	
+	private static int chunkIndex(int ordinal)
+	{
+		return 31 - Integer.numberOfLeadingZeros(ordinal + FIRST_CHUNK) - FIRST_CHUNK_BITS;
+	}
+	
+	private static int offset(int ordinal)
+	{
+		return ordinal + FIRST_CHUNK - (FIRST_CHUNK << chunkIndex(ordinal));
+	}
+	
+	private AtomicReferenceArray<T> chunk(int ordinal)
+	{
+		int index = chunkIndex(ordinal);
+		AtomicReferenceArray<T> chunk = chunks.get(index);
+		if(chunk == null)
+		{
+			chunks.compareAndSet(index, null, 
+					new AtomicReferenceArray<T>(FIRST_CHUNK << index));
+			chunk = chunks.get(index);
+		}
+		return chunk;
+	}
+	
+	/*
+	 * Returns the type at the given position, or null if it is still being
+	 * added
+	 */
+	public T get(int ordinal)
+	{
+		AtomicReferenceArray<T> chunk = chunks.get(chunkIndex(ordinal));
+		return chunk != null ? chunk.get(offset(ordinal)) : null;
+	}
+	
+	public int size()
+	{
+		return size.get();
+	}
+	
+	/*
+	 * Returns the types added so far, in order, leaving out any still being
+	 * added
+	 */
+	public List<T> snapshot()
+	{
+		int size = size();
+		List<T> types = new ArrayList<T>(size);
+		for(int i=0; i<size; i++)
+		{
+			T type = get(i);
+			if(type != null){
+				types.add(type);
+			}
+		}
+		return Collections.unmodifiableList(types);
+	}
+}
@@ -0,0 +1,206 @@
+/*
+Copyright (c) 2008 Mark Frimston
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package uk.co.markfrimston.utils;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/*
+ * A ThreeDimGrid which many threads may add to at once, as 
+ * ConcurrentTwoDimGrid. Values are keyed on the x, y and z positions packed 
+ * 21 bits each into a long, allowing up to 2^21 types along each side.
+ * 
+ * Types and values may not be null - adding a null value empties the cell.
+ * The legends returned are snapshots. Adds which race a clear() may be lost.
+ */
+public class ConcurrentThreeDimGrid<X,Y,Z,V> implements Cloneable
+{
+	private static final int ORDINAL_BITS = 21;
+	private static final long ORDINAL_MASK = (1L << ORDINAL_BITS)-1;
+	
+	private volatile State<X,Y,Z,V> state = new State<X,Y,Z,V>();
+	
+	private static class State<X,Y,Z,V>
+	{
+		final ConcurrentLegend<X> xLegend = new ConcurrentLegend<X>();
+		final ConcurrentLegend<Y> yLegend = new ConcurrentLegend<Y>();
+		final ConcurrentLegend<Z> zLegend = new ConcurrentLegend<Z>();
+		final ConcurrentHashMap<Long,V> cells = new ConcurrentHashMap<Long,V>();
+		
+		Long key(X xType, Y yType, Z zType)
+		{
+			int x = xLegend.add(xType);
+			int y = yLegend.add(yType);
+			int z = zLegend.add(zType);
+			if(((x | y | z) >>> ORDINAL_BITS) != 0){
+				throw new IllegalStateException("Grid has too many types along one side");
+			}
+			return ((long)x << (ORDINAL_BITS*2)) | ((long)y << ORDINAL_BITS) | z;
+		}
+		
+		X x(long key)
+		{
+			return xLegend.get((int)(key >>> (ORDINAL_BITS*2)));
+		}
+		
+		Y y(long key)
+		{
+			return yLegend.get((int)((key >>> ORDINAL_BITS) & ORDINAL_MASK));
+		}
+		
+		Z z(long key)
+		{
+			return zLegend.get((int)(key & ORDINAL_MASK));
+		}
+	}
+	
+	public void addXType(X xType)
+	{
+		state.xLegend.add(xType);
+	}
+	
+	public void addYType(Y yType)
+	{
+		state.yLegend.add(yType);
+	}
+	
+	public void addZType(Z zType)
+	{
+		state.zLegend.add(zType);
+	}
+	
+	public void add(X xType, Y yType, Z zType, V value)
+	{
+		State<X,Y,Z,V> s = state;
+		Long key = s.key(xType, yType, zType);
+		if(value != null){
+			s.cells.put(key, value);
+		}else{
+			s.cells.remove(key);
+		}
+	}
+	
+	/*
+	 * Atomically combines the given value with the one in the cell, or puts 
+	 * it there if the cell is empty, returning the cell's new value. If the
+	 * function returns null the cell is emptied.
+	 */
+	public V merge(X xType, Y yType, Z zType, V value, BinaryOperator<V> function)
+	{
+		State<X,Y,Z,V> s = state;
+		return s.cells.merge(s.key(xType, yType, zType), value, function);
+	}
+	
+	public V get(X xType, Y yType, Z zType)
+	{
+		State<X,Y,Z,V> s = state;
+		int x = s.xLegend.indexOf(xType);
+		int y = s.yLegend.indexOf(yType);
+		int z = s.zLegend.indexOf(zType);
+		if(x < 0 || y < 0 || z < 0){
+			return null;
+		}
+		return s.cells.get(((long)x << (ORDINAL_BITS*2)) | ((long)y << ORDINAL_BITS) | z);
+	}
+	
+	public List<X> getXLegend()
+	{
+		return state.xLegend.snapshot();
+	}
+	
+	public List<Y> getYLegend()
+	{
+		return state.yLegend.snapshot();
+	}
+	
+	public List<Z> getZLegend()
+	{
+		return state.zLegend.snapshot();
+	}
+	
+	public void clear()
+	{
+		state = new State<X,Y,Z,V>();
+	}
+	
+	/*
+	 * Copies the grid's contents into a plain ThreeDimGrid with the given 
+	 * storage, once the threads filling it are done
+	 */
+	public ThreeDimGrid<X,Y,Z,V> toGrid(ThreeDimGrid.Storage storage)
+	{
+		State<X,Y,Z,V> s = state;
+		ThreeDimGrid<X,Y,Z,V> grid = new ThreeDimGrid<X,Y,Z,V>(storage);
+		for(X xType : s.xLegend.snapshot())
+		{
+			grid.addXType(xType);
+		}
+		for(Y yType : s.yLegend.snapshot())
+		{
+			grid.addYType(yType);
+		}
+		for(Z zType : s.zLegend.snapshot())
+		{
+			grid.addZType(zType);
+		}
+		for(Map.Entry<Long,V> entry : s.cells.entrySet())
+		{
+			long key = entry.getKey();
+			grid.add(s.x(key), s.y(key), s.z(key), entry.getValue());
+		}
+		return grid;
+	}
+	
+	public Object clone()
+	{
+		State<X,Y,Z,V> s = state;
+		ConcurrentThreeDimGrid<X,Y,Z,V> obj = new ConcurrentThreeDimGrid<X,Y,Z,V>();
+		for(X xType : s.xLegend.snapshot())
+		{
+			obj.addXType(xType);
+		}
+		for(Y yType : s.yLegend.snapshot())
+		{
+			obj.addYType(yType);
+		}
+		for(Z zType : s.zLegend.snapshot())
+		{
+			obj.addZType(zType);
+		}
+		for(Map.Entry<Long,V> entry : s.cells.entrySet())
+		{
+			long key = entry.getKey();
+			obj.add(s.x(key), s.y(key), s.z(key), entry.getValue());
+		}
+		return obj;
+	}
+	
+	public boolean isEmpty()
+	{
+		return state.xLegend.size() == 0;
+	}
+}
@@ -0,0 +1,165 @@
+/*
+Copyright (c) 2008 Mark Frimston
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package uk.co.markfrimston.utils;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/*
+ * A TwoDimGrid which many threads may add to at once without locking 
+ * around it. Types are registered through ConcurrentLegends, and values are
+ * kept in a ConcurrentHashMap keyed on the x and y positions packed into a
+ * long, so updates to different cells rarely contend. merge() combines a 
+ * value into a cell atomically, for accumulating counts and sums.
+ * 
+ * Types and values may not be null - adding a null value empties the cell.
+ * The legends returned are snapshots. Adds which race a clear() may be lost.
+ */
+public class ConcurrentTwoDimGrid<X,Y,V> implements Cloneable
+{
+	private volatile State<X,Y,V> state = new State<X,Y,V>();
+	
+	private static class State<X,Y,V>
+	{
+		final ConcurrentLegend<X> xLegend = new ConcurrentLegend<X>();
+		final ConcurrentLegend<Y> yLegend = new ConcurrentLegend<Y>();
+		final ConcurrentHashMap<Long,V> cells = new ConcurrentHashMap<Long,V>();
+	}
+	
+	private static Long key(int x, int y)
+	{
+		return ((long)x << 32) | y;
+	}
+	
+	public void addXType(X xType)
+	{
+		state.xLegend.add(xType);
+	}
+	
+	public void addYType(Y yType)
+	{
+		state.yLegend.add(yType);
+	}
+	
+	public void add(X xType, Y yType, V value)
+	{
+		State<X,Y,V> s = state;
+		Long key = key(s.xLegend.add(xType), s.yLegend.add(yType));
+		if(value != null){
+			s.cells.put(key, value);
+		}else{
+			s.cells.remove(key);
+		}
+	}
+	
+	/*
+	 * Atomically combines the given value with the one in the cell, or puts 
+	 * it there if the cell is empty, returning the cell's new value. If the
+	 * function returns null the cell is emptied.
+	 */
+	public V merge(X xType, Y yType, V value, BinaryOperator<V> function)
+	{
+		State<X,Y,V> s = state;
+		return s.cells.merge(key(s.xLegend.add(xType), s.yLegend.add(yType)), value, function);
+	}
+	
+	public V get(X xType, Y yType)
+	{
+		State<X,Y,V> s = state;
+		int x = s.xLegend.indexOf(xType);
+		int y = s.yLegend.indexOf(yType);
+		if(x < 0 || y < 0){
+			return null;
+		}
+		return s.cells.get(key(x, y));
+	}
+	
+	public List<X> getXLegend()
+	{
+		return state.xLegend.snapshot();
+	}
+	
+	public List<Y> getYLegend()
+	{
+		return state.yLegend.snapshot();
+	}
+	
+	public void clear()
+	{
+		state = new State<X,Y,V>();
+	}
+	
+	/*
+	 * Copies the grid's contents into a plain TwoDimGrid with the given 
+	 * storage, once the threads filling it are done. As with the TwoDimGrid
+	 * constructor, the storage may not be NUMERIC.
+	 */
+	public TwoDimGrid<X,Y,V> toGrid(TwoDimGrid.Storage storage)
+	{
+		State<X,Y,V> s = state;
+		TwoDimGrid<X,Y,V> grid = new TwoDimGrid<X,Y,V>(storage);
+		for(X xType : s.xLegend.snapshot())
+		{
+			grid.addXType(xType);
+		}
+		for(Y yType : s.yLegend.snapshot())
+		{
+			grid.addYType(yType);
+		}
+		for(Map.Entry<Long,V> entry : s.cells.entrySet())
+		{
+			long key = entry.getKey();
+			grid.add(s.xLegend.get((int)(key >>> 32)), s.yLegend.get((int)key), entry.getValue());
+		}
+		return grid;
+	}
+	
+	public Object clone()
+	{
+		State<X,Y,V> s = state;
+		ConcurrentTwoDimGrid<X,Y,V> obj = new ConcurrentTwoDimGrid<X,Y,V>();
+		for(X xType : s.xLegend.snapshot())
+		{
+			obj.addXType(xType);
+		}
+		for(Y yType : s.yLegend.snapshot())
+		{
+			obj.addYType(yType);
+		}
+		for(Map.Entry<Long,V> entry : s.cells.entrySet())
+		{
+			long key = entry.getKey();
+			obj.add(s.xLegend.get((int)(key >>> 32)), s.yLegend.get((int)key), entry.getValue());
+		}
+		return obj;
+	}
+	
+	public boolean isEmpty()
+	{
+		return state.xLegend.size() == 0;
+	}
+}
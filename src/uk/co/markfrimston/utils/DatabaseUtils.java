@@ -56,15 +56,56 @@ public class DatabaseUtils
 		return Arrays.binarySearch(STRING_TYPES, sqlType) >=0;
 	}
 	
+	/*
+	 * Receives mapped root objects one at a time, in result set order
+	 */
+	public static interface ResultHandler<T>
+	{
+		public void handle(T object) throws ColumnMappingException, SQLException;
+	}
+	
+	private static class ResultCollector<T> implements ResultHandler<T>
+	{
+		private List<T> results = new ArrayList<T>();
+		
+		public void handle(T object)
+		{
+			results.add(object);
+		}
+	}
+	
 	public static <T> List<T> mapResults(ResultSet results, Class<T> clazz)
 		throws ColumnMappingException, SQLException
+	{
+		ResultCollector<T> collector = new ResultCollector<T>();
+		mapResults(results, clazz, collector);
+		return collector.results;
+	}
+	
+	public static <T> void mapResults(ResultSet results, Class<T> clazz, ResultHandler<? super T> handler)
+		throws ColumnMappingException, SQLException
 	{
 		ResultSetMetaData rsmd = results.getMetaData();
-		return mapResults(results, new ColumnMapping<T>(clazz,rsmd.getColumnCount()));
+		mapResults(results, handler, new ColumnMapping<T>(clazz,rsmd.getColumnCount()));
 	}
 	
 	public static <T> List<T> mapResults(ResultSet results, ColumnMapping<T> root, ColumnMapping<?>... children)
 		throws ColumnMappingException, SQLException
+	{
+		ResultCollector<T> collector = new ResultCollector<T>();
+		mapResults(results, collector, root, children);
+		return collector.results;
+	}
+	
+	/*
+	 * Streaming form of mapResults. Each root object is passed to the handler, 
+	 * children and all, as soon as the first row of the next root is read, so only 
+	 * one root is held in memory at a time. For the driver to stream the rows as 
+	 * well, the statement needs a fetch size - see prepareStreamingStatement.
+	 */
+	public static <T> void mapResults(ResultSet results, ResultHandler<? super T> handler, 
+			ColumnMapping<T> root, ColumnMapping<?>... children)
+		throws ColumnMappingException, SQLException
 	{
 		ColumnMapping<?>[] mappings = new ColumnMapping[children.length+1];
 		mappings[0] = root;
@@ -81,24 +122,32 @@ public class DatabaseUtils
 			throw new ColumnMappingException("Number of columns in result set does not match number in mapping");
 		}
 		
-		List<T> returnVal = new ArrayList<T>();
-		String[][] lastRow = null;
+		//look up the column labels once rather than for every object
+		String[][] labels = new String[mappings.length][];
+		String[][] row = new String[mappings.length][];
+		String[][] lastRow = new String[mappings.length][];
+		int colIndex = 0;
+		for(int i=0; i<mappings.length; i++)
+		{
+			labels[i] = new String[mappings[i].cols];
+			row[i] = new String[mappings[i].cols];
+			lastRow[i] = new String[mappings[i].cols];
+			for(int j=0; j<mappings[i].cols; j++)
+			{
+				labels[i][j] = rsmd.getColumnLabel(colIndex+1);
+				colIndex++;
+			}
+		}
+		
 		Bean[] currentObjects = new Bean[mappings.length];
-		Bean[] newObjects = new Bean[mappings.length];
 		boolean hadResults = false;
 	
 		while(results.next())
 		{
-			if(!hadResults){
-				hadResults = true;
-			}
-			String[][] row = new String[mappings.length][];
-			
 			//retrieve the result row
-			int colIndex = 0;
+			colIndex = 0;
 			for(int i=0; i<mappings.length; i++)
 			{
-				row[i] = new String[numCols];
 				for(int j=0; j<mappings[i].cols; j++)
 				{
 					row[i][j] = results.getString(colIndex+1);
@@ -106,121 +155,93 @@ public class DatabaseUtils
 				}
 			}
 			
-			/*System.out.print("Row: ");
-			for(int i=0; i<mappings.length; i++)
+			//compare the row with the last row for changes - the first mapping to 
+			//change and every mapping below it start new objects
+			int changedFrom = hadResults ? mappings.length : 0;
+			for(int i=0; i<changedFrom; i++)
 			{
-				System.out.print("<");
+				//check each field for changes in this mapping
 				for(int j=0; j<mappings[i].cols; j++)
 				{
-					System.out.print("["+row[i][j]+"]");
+					//has changed value or null-ness
+					if((row[i][j]==null) != (lastRow[i][j]==null)
+							|| (row[i][j]!=null && !row[i][j].equals(lastRow[i][j])))
+					{
+						changedFrom = i;
+						break;
+					}
 				}
-				System.out.print(">");
 			}
-			System.out.println();*/
+			hadResults = true;
 			
-			int colIndexStart = 0;
-			boolean changed = false;
-			//compare the row with the last row for changes
-			for(int i=0; i<mappings.length; i++)
-			{		
-				if(!changed)
+			//store the finished objects
+			storeObjects(currentObjects, changedFrom, handler);
+			
+			for(int i=changedFrom; i<mappings.length; i++)
+			{
+				//check if the columns for the new object are null (left joined)
+				boolean allNull = true;
+				for(int j=0; j<mappings[i].cols; j++)
 				{
-					if(lastRow == null)
-					{
-						changed = true;
-					}
-					else
+					if(row[i][j] != null)
 					{
-						//check each field for changes in this mapping
-						for(int j=0; j<mappings[i].cols; j++)
-						{
-							//has changed value or null-ness
-							if((row[i][j]==null) != (lastRow[i][j]==null)
-									|| (row[i][j]!=null && !row[i][j].equals(lastRow[i][j])))
-							{
-								changed = true;
-							}
-						}
+						allNull = false;
+						break;
 					}
-				}
-				//System.out.println("Mapping "+i+" changed? "+changed);
-				// column values have changed for this mapping - create and store object
-				if(changed)
-				{
-					//store previous object
-					if(currentObjects[i]!=null)
+				}					
+				if(!allNull)
+				{				
+					// prepare field value map
+					Map<String,String> fields = new HashMap<String,String>();
+					for(int j=0; j<mappings[i].cols; j++)
 					{					
-						storeObject(currentObjects, i, returnVal);
+						fields.put(labels[i][j], row[i][j]);
 					}
 					
-					//check if the columns for the new object are null (left joined)
-					boolean allNull = true;
-					for(int j=0; j<mappings[i].cols; j++)
-					{
-						if(row[i][j] != null)
-						{
-							allNull = false;
-							break;
-						}
-					}					
-					if(!allNull)
-					{				
-						// prepare field value map
-						Map<String,String> fields = new HashMap<String,String>();
-						for(int j=0; j<mappings[i].cols; j++)
-						{					
-							int index = colIndexStart+j;
-							fields.put(rsmd.getColumnLabel(index+1), row[i][j]);
-						}
-						
-						// make new object
-						newObjects[i] = makeBeanAndSetFields(mappings[i].clazz, fields);
-					}
-					else
-					{
-						//set new object to null
-						newObjects[i] = null;
-					}
-				}	
-				
-				colIndexStart += mappings[i].cols;
-			}		
-			
-			// set last row to current row and current objects to new objects
-			lastRow = new String[mappings.length][];
-			for(int i=0; i<mappings.length; i++)
-			{
-				lastRow[i] = new String[mappings[i].cols];
-				for(int j=0; j<mappings[i].cols; j++)
+					// make new object
+					currentObjects[i] = makeBeanAndSetFields(mappings[i].clazz, fields);
+				}
+				else
 				{
-					lastRow[i][j] = row[i][j];
-				}					
-				currentObjects[i] = newObjects[i];
+					currentObjects[i] = null;
+				}
 			}
+			
+			// current row becomes the last row
+			String[][] swap = lastRow;
+			lastRow = row;
+			row = swap;
 		}
 		
 		//finished iterating over results, now store last objects
-		if(hadResults)
+		storeObjects(currentObjects, 0, handler);
+	}
+	
+	/*
+	 * Stores the current objects from the given mapping down, deepest first, so 
+	 * that a root object is complete by the time it reaches the handler
+	 */
+	private static <T> void storeObjects(Bean[] currentObjects, int fromMapping, 
+			ResultHandler<? super T> handler)
+		throws ColumnMappingException, SQLException
+	{
+		for(int i=currentObjects.length-1; i>=fromMapping; i--)
 		{
-			for(int i=0; i<mappings.length; i++)
+			if(currentObjects[i]!=null)
 			{
-				if(currentObjects[i]!=null)
-				{
-					storeObject(currentObjects, i, returnVal);
-				}
+				storeObject(currentObjects, i, handler);
 			}
 		}
-		
-		return returnVal;
 	}
 	
-	private static <T> void storeObject(Bean[] currentObjects, int mappingIndex, List<T> rootList)
-		throws ColumnMappingException
+	private static <T> void storeObject(Bean[] currentObjects, int mappingIndex, 
+			ResultHandler<? super T> handler)
+		throws ColumnMappingException, SQLException
 	{
 		if(mappingIndex==0)
 		{
-			//special case - the root object is stored in the result list
-			rootList.add((T)currentObjects[mappingIndex].getObject());
+			//special case - the root object goes to the handler
+			handler.handle((T)currentObjects[mappingIndex].getObject());
 		}
 		else
 		{
@@ -299,6 +320,32 @@ public class DatabaseUtils
 		throws SQLException
 	{
 		List<Object> paramList = new ArrayList<Object>();
+		PreparedStatement stmt = con.prepareStatement(expandParameters(query, parameters, paramList));
+		setParameters(stmt, paramList);
+		return stmt;
+	}
+	
+	/*
+	 * As prepareStatement, but the statement is forward-only and read-only with
+	 * the given fetch size, so that the driver can pass rows on as they arrive
+	 * instead of reading the whole result set first. Drivers differ in what they 
+	 * need - MySQL only streams with a fetch size of Integer.MIN_VALUE, and 
+	 * PostgreSQL only with auto-commit turned off.
+	 */
+	public static PreparedStatement prepareStreamingStatement(Connection con, int fetchSize, 
+			String query, Object... parameters)
+		throws SQLException
+	{
+		List<Object> paramList = new ArrayList<Object>();
+		PreparedStatement stmt = con.prepareStatement(expandParameters(query, parameters, paramList),
+				ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		stmt.setFetchSize(fetchSize);
+		setParameters(stmt, paramList);
+		return stmt;
+	}
+	
+	private static String expandParameters(String query, Object[] parameters, List<Object> paramList)
+	{
 		Pattern p = Pattern.compile("\\?");
 		Matcher m = p.matcher(query);
 		StringBuffer newQuery = new StringBuffer();
@@ -321,14 +368,16 @@ public class DatabaseUtils
 			}
 		}
 		m.appendTail(newQuery);
-		
-		PreparedStatement stmt = con.prepareStatement(newQuery.toString());
+		return newQuery.toString();
+	}
+	
+	private static void setParameters(PreparedStatement stmt, List<Object> paramList)
+		throws SQLException
+	{
 		for(int i=0; i<paramList.size(); i++)
 		{
 			stmt.setObject(i+1, paramList.get(i));
 		}
-		
-		return stmt;
 	}
 	
 	/*
@@ -0,0 +1,363 @@
+/*
+Copyright (c) 2008 Mark Frimston
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package uk.co.markfrimston.utils;
+
+import java.io.*;
+import java.util.*;
+
+/*
+ * Shortest edit script between two sequences, using Myers' O(ND) algorithm
+ * in its linear space form - the middle snake of each region is found by 
+ * searching from both ends, and the halves either side are then diffed in 
+ * turn. Besides the two sequences' element codes, storage is two diagonal
+ * arrays and one change flag per element.
+ */
+public class Diff
+{
+	public static enum Operation
+	{
+		KEEP, DELETE, INSERT
+	}
+	
+	/*
+	 * A run of elements kept, deleted from the first sequence or inserted from
+	 * the second, starting at the given positions in each
+	 */
+	public static class Edit implements StandardHashable
+	{
+		public Operation operation;
+		public int positionA;
+		public int positionB;
+		public int length;
+		
+		public Edit(Operation operation, int positionA, int positionB, int length)
+		{
+			this.operation = operation;
+			this.positionA = positionA;
+			this.positionB = positionB;
+			this.length = length;
+		}
+		
+		public Object[] getHashableValues()
+		{
+			return new Object[]{operation, positionA, positionB, length};
+		}
+		
+		public boolean equals(Object obj)
+		{
+			return ObjectUtils.standardEquals(this, obj);
+		}
+		
+		public int hashCode()
+		{
+			return ObjectUtils.standardHashCode(this);
+		}
+		
+		public String toString()
+		{
+			return operation+"["+positionA+", "+positionB+", "+length+"]";
+		}
+	}
+	
+	/*
+	 * Receives the edit script one run at a time, in order
+	 */
+	public static interface EditHandler
+	{
+		public void edit(Operation operation, int positionA, int positionB, int length);
+	}
+	
+	private static class EditCollector implements EditHandler
+	{
+		private List<Edit> edits = new ArrayList<Edit>();
+		
+		public void edit(Operation operation, int positionA, int positionB, int length)
+		{
+			edits.add(new Edit(operation, positionA, positionB, length));
+		}
+	}
+	
+	private int[] a;
+	private int[] b;
+	private boolean[] deleted;
+	private boolean[] inserted;
+	private int[] forward;
+	private int[] backward;
+	private int diagonalOffset;
+	
+	private Diff(int[] a, int lengthA, int[] b, int lengthB)
+	{
+		this.a = a;
+		this.b = b;
+		this.deleted = new boolean[lengthA];
+		this.inserted = new boolean[lengthB];
+		this.forward = new int[lengthA+lengthB+3];
+		this.backward = new int[lengthA+lengthB+3];
+		this.diagonalOffset = lengthB+1;
+	}
+	
+	public static <T> List<Edit> diff(Sequence<T> seqA, Sequence<T> seqB)
+	{
+		EditCollector collector = new EditCollector();
+		diff(seqA, seqB, collector);
+		return collector.edits;
+	}
+	
+	public static <T> void diff(Sequence<T> seqA, Sequence<T> seqB, EditHandler handler)
+	{
+		int[] a = new int[seqA.size()];
+		int[] b = new int[seqB.size()];
+		SequenceUtils.encode(seqA, seqB, a, b, new HashMap<Object,Integer>());
+		diff(a, a.length, b, b.length, handler);
+	}
+	
+	/*
+	 * Diffs the first lengthA codes of a against the first lengthB codes of b
+	 */
+	public static void diff(int[] a, int lengthA, int[] b, int lengthB, EditHandler handler)
+	{
+		Diff diff = new Diff(a, lengthA, b, lengthB);
+		diff.compare(0, lengthA, 0, lengthB);
+		diff.report(handler);
+	}
+	
+	public static List<Edit> diffLines(Reader readerA, Reader readerB)
+		throws IOException
+	{
+		EditCollector collector = new EditCollector();
+		diffLines(readerA, readerB, collector);
+		return collector.edits;
+	}
+	
+	/*
+	 * Diffs two texts line by line, positions being line numbers from 0. Each 
+	 * line is read and hashed once, being replaced by a number shared with
+	 * any identical line, and the numbers are then diffed. Only distinct lines
+	 * are kept in memory while this happens.
+	 */
+	public static void diffLines(Reader readerA, Reader readerB, EditHandler handler)
+		throws IOException
+	{
+		Map<String,Integer> lines = new HashMap<String,Integer>();
+		int[] codesA = readLines(readerA, lines);
+		int[] codesB = readLines(readerB, lines);
+		lines = null;
+		diff(codesA, codesA.length-1, codesB, codesB.length-1, handler);
+	}
+	
+	public static List<Edit> diffLines(String textA, String textB)
+	{
+		try
+		{
+			return diffLines(new StringReader(textA), new StringReader(textB));
+		}
+		catch(IOException e)
+		{
+			//not thrown by string readers
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/*
+	 * Returns the line codes, followed by an unused slot so that the array
+	 * can be returned as it has grown
+	 */
+	private static int[] readLines(Reader reader, Map<String,Integer> lines)
+		throws IOException
+	{
+		BufferedReader in = reader instanceof BufferedReader 
+			? (BufferedReader)reader : new BufferedReader(reader);
+		int[] codes = new int[256];
+		int count = 0;
+		String line;
+		while((line=in.readLine()) != null)
+		{
+			Integer code = lines.get(line);
+			if(code == null)
+			{
+				code = lines.size();
+				lines.put(line, code);
+			}
+			if(count+1 == codes.length){
+				codes = Arrays.copyOf(codes, codes.length*2);
+			}
+			codes[count++] = code;
+		}
+		return Arrays.copyOf(codes, count+1);
+	}
+	
+	/*
+	 * Marks the changes needed to turn a[aLo..aHi) into b[bLo..bHi)
+	 */
+	private void compare(int aLo, int aHi, int bLo, int bHi)
+	{
+		//common prefix and suffix need no searching
+		while(aLo < aHi && bLo < bHi && a[aLo] == b[bLo])
+		{
+			aLo++;
+			bLo++;
+		}
+		while(aLo < aHi && bLo < bHi && a[aHi-1] == b[bHi-1])
+		{
+			aHi--;
+			bHi--;
+		}
+		
+		if(aLo == aHi)
+		{
+			Arrays.fill(inserted, bLo, bHi, true);
+		}
+		else if(bLo == bHi)
+		{
+			Arrays.fill(deleted, aLo, aHi, true);
+		}
+		else
+		{
+			long split = middleSnake(aLo, aHi, bLo, bHi);
+			int x = (int)(split >>> 32);
+			int y = (int)split;
+			compare(aLo, x, bLo, y);
+			compare(x, aHi, y, bHi);
+		}
+	}
+	
+	/*
+	 * Finds a point on an optimal path through the given region, approximately
+	 * halfway along it in terms of edits, by searching forward from the top
+	 * left and backward from the bottom right until the two searches overlap.
+	 * Diagonal k holds the furthest position in a reached where x - y = k.
+	 * Returns the point with x in the high 32 bits and y in the low.
+	 */
+	private long middleSnake(int aLo, int aHi, int bLo, int bHi)
+	{
+		int[] fd = forward;
+		int[] bd = backward;
+		int off = diagonalOffset;
+		int dMin = aLo - bHi;
+		int dMax = aHi - bLo;
+		int fMid = aLo - bLo;
+		int bMid = aHi - bHi;
+		int fMin = fMid, fMax = fMid;
+		int bMin = bMid, bMax = bMid;
+		boolean odd = ((fMid - bMid) & 1) != 0;
+		fd[off+fMid] = aLo;
+		bd[off+bMid] = aHi;
+		
+		while(true)
+		{
+			//extend the forward search by one edit
+			if(fMin > dMin){
+				fd[off + --fMin - 1] = -1;
+			}else{
+				++fMin;
+			}
+			if(fMax < dMax){
+				fd[off + ++fMax + 1] = -1;
+			}else{
+				--fMax;
+			}
+			for(int d=fMax; d>=fMin; d-=2)
+			{
+				int low = fd[off+d-1];
+				int high = fd[off+d+1];
+				int x = low >= high ? low+1 : high;
+				int y = x - d;
+				while(x < aHi && y < bHi && a[x] == b[y])
+				{
+					x++;
+					y++;
+				}
+				fd[off+d] = x;
+				if(odd && bMin <= d && d <= bMax && bd[off+d] <= x){
+					return ((long)x << 32) | y;
+				}
+			}
+			
+			//extend the backward search by one edit
+			if(bMin > dMin){
+				bd[off + --bMin - 1] = Integer.MAX_VALUE;
+			}else{
+				++bMin;
+			}
+			if(bMax < dMax){
+				bd[off + ++bMax + 1] = Integer.MAX_VALUE;
+			}else{
+				--bMax;
+			}
+			for(int d=bMax; d>=bMin; d-=2)
+			{
+				int low = bd[off+d-1];
+				int high = bd[off+d+1];
+				int x = low < high ? low : high-1;
+				int y = x - d;
+				while(x > aLo && y > bLo && a[x-1] == b[y-1])
+				{
+					x--;
+					y--;
+				}
+				bd[off+d] = x;
+				if(!odd && fMin <= d && d <= fMax && x <= fd[off+d]){
+					return ((long)x << 32) | y;
+				}
+			}
+		}
+	}
+	
+	/*
+	 * Walks the change flags, passing on runs of each operation
+	 */
+	private void report(EditHandler handler)
+	{
+		int lengthA = deleted.length;
+		int lengthB = inserted.length;
+		int i = 0;
+		int j = 0;
+		while(i < lengthA || j < lengthB)
+		{
+			int startA = i;
+			int startB = j;
+			if(i < lengthA && deleted[i])
+			{
+				while(i < lengthA && deleted[i]) i++;
+				handler.edit(Operation.DELETE, startA, startB, i-startA);
+			}
+			else if(j < lengthB && inserted[j])
+			{
+				while(j < lengthB && inserted[j]) j++;
+				handler.edit(Operation.INSERT, startA, startB, j-startB);
+			}
+			else
+			{
+				while(i < lengthA && j < lengthB && !deleted[i] && !inserted[j])
+				{
+					i++;
+					j++;
+				}
+				handler.edit(Operation.KEEP, startA, startB, i-startA);
+			}
+		}
+	}
+}
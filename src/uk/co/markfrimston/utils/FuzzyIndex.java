@@ -0,0 +1,389 @@
+/*
+Copyright (c) 2008 Mark Frimston
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package uk.co.markfrimston.utils;
+
+import java.util.*;
+
+/*
+ * Index of sequence keys for finding every key within a given edit distance
+ * of a query. Keys are held in a trie and the query's edit distance table is
+ * extended one row per trie level, so a shared prefix is only compared once
+ * and whole subtrees are skipped as soon as every cell in a row exceeds the 
+ * limit. Keys may be added at any time. Any number of threads may search at 
+ * once, but adding keys must not overlap with any other call.
+ */
+public class FuzzyIndex<V>
+{
+	private static final int NONE = -1;
+	//code for an element that can't equal any label, which are all ints
+	private static final long NO_MATCH = Long.MIN_VALUE;
+	
+	//element type the keys are read as - null if they are compared as objects
+	private Class<?> codeType;
+	private boolean typeFixed = false;
+	private Map<Object,Integer> symbols = new HashMap<Object,Integer>();
+	
+	//trie nodes, four ints to a node so that a node is read from one place,
+	//node 0 being the root. A node's children are linked through NEXT_SIBLING.
+	private static final int LABEL = 0;
+	private static final int FIRST_CHILD = 1;
+	private static final int NEXT_SIBLING = 2;
+	private static final int ENTRY = 3;
+	private static final int NODE_SIZE = 4;
+	private int[] nodes = new int[64*NODE_SIZE];
+	private int numNodes = 0;
+	private int maxDepth = 0;
+	
+	private int size = 0;
+	private List<V> values = new ArrayList<V>();
+	
+	/*
+	 * Scratch arrays for encoding keys and searching, reused between calls
+	 */
+	private static class SearchBuffer
+	{
+		private long[] codes = new long[16];
+		private int[] rows = new int[0];
+		private int[] stack = new int[32];
+	}
+	
+	private static final ThreadLocal<SearchBuffer> SEARCH_BUFFER = new ThreadLocal<SearchBuffer>()
+	{
+		protected SearchBuffer initialValue()
+		{
+			return new SearchBuffer();
+		}
+	};
+	
+	public FuzzyIndex()
+	{
+		newNode(0);
+	}
+	
+	public static FuzzyIndex<String> ofStrings(Collection<String> strings)
+	{
+		FuzzyIndex<String> index = new FuzzyIndex<String>();
+		for(String string : strings)
+		{
+			index.put(string, string);
+		}
+		return index;
+	}
+	
+	public int size()
+	{
+		return size;
+	}
+	
+	public boolean isEmpty()
+	{
+		return size==0;
+	}
+	
+	/*
+	 * Returns the offset of the new node in the nodes array
+	 */
+	private int newNode(int code)
+	{
+		if((numNodes+1)*NODE_SIZE > nodes.length){
+			nodes = Arrays.copyOf(nodes, nodes.length*2);
+		}
+		int node = (numNodes++)*NODE_SIZE;
+		nodes[node+LABEL] = code;
+		nodes[node+FIRST_CHILD] = NONE;
+		nodes[node+NEXT_SIBLING] = NONE;
+		nodes[node+ENTRY] = NONE;
+		return node;
+	}
+	
+	/*
+	 * Reads the key into the buffer's codes, one per element, equal where the 
+	 * elements are equal. Keys are read through the primitive accessor the
+	 * first key added was read with, or as objects if it had none. Elements 
+	 * that can't equal any element added are given NO_MATCH when adding is 
+	 * false, and rejected when it is true.
+	 */
+	private int encode(Sequence<?> key, boolean adding, SearchBuffer buffer)
+	{
+		Class<?> type = key.getPrimitiveType();
+		if(!typeFixed && adding)
+		{
+			if(type == Character.TYPE || type == Integer.TYPE 
+					|| type == Short.TYPE || type == Byte.TYPE)
+			{
+				codeType = type;
+			}
+			typeFixed = true;
+		}
+		int length = key.size();
+		if(buffer.codes.length < length){
+			buffer.codes = new long[Math.max(length, buffer.codes.length*2)];
+		}
+		long[] codes = buffer.codes;
+		if(codeType != null && type == codeType)
+		{
+			for(int i=0; i<length; i++)
+			{
+				if(codeType == Character.TYPE){
+					codes[i] = key.getChar(i);
+				}else if(codeType == Integer.TYPE){
+					codes[i] = key.getInt(i);
+				}else if(codeType == Short.TYPE){
+					codes[i] = key.getShort(i);
+				}else{
+					codes[i] = key.getByte(i);
+				}
+			}
+		}
+		else if(codeType != null)
+		{
+			//a different kind of sequence - only elements of the index's own 
+			//type can match
+			for(int i=0; i<length; i++)
+			{
+				Object item = key.get(i);
+				long code = NO_MATCH;
+				if(codeType == Character.TYPE && item instanceof Character){
+					code = (Character)item;
+				}else if(codeType == Integer.TYPE && item instanceof Integer){
+					code = (Integer)item;
+				}else if(codeType == Short.TYPE && item instanceof Short){
+					code = (Short)item;
+				}else if(codeType == Byte.TYPE && item instanceof Byte){
+					code = (Byte)item;
+				}
+				if(code == NO_MATCH && adding)
+				{
+					throw new IllegalArgumentException("Key element "+item+" is not a "
+							+codeType.getName()+", as the keys already added are");
+				}
+				codes[i] = code;
+			}
+		}
+		else
+		{
+			for(int i=0; i<length; i++)
+			{
+				Object item = key.get(i);
+				Integer code = symbols.get(item);
+				if(code == null)
+				{
+					if(adding)
+					{
+						code = symbols.size();
+						symbols.put(item, code);
+					}
+					else
+					{
+						codes[i] = NO_MATCH;
+						continue;
+					}
+				}
+				codes[i] = code;
+			}
+		}
+		return length;
+	}
+	
+	/*
+	 * Adds the key with the given value, returning the value it replaces. 
+	 * Throws IllegalArgumentException if the index is keyed by chars, ints, 
+	 * shorts or bytes - the kind of the first key added - and the key has an 
+	 * element of another type.
+	 */
+	public V put(Sequence<?> key, V value)
+	{
+		SearchBuffer buffer = SEARCH_BUFFER.get();
+		int length = encode(key, true, buffer);
+		long[] codes = buffer.codes;
+		int node = 0;
+		for(int i=0; i<length; i++)
+		{
+			int child = nodes[node+FIRST_CHILD];
+			while(child != NONE && nodes[child+LABEL] != codes[i])
+			{
+				child = nodes[child+NEXT_SIBLING];
+			}
+			if(child == NONE)
+			{
+				child = newNode((int)codes[i]);
+				nodes[child+NEXT_SIBLING] = nodes[node+FIRST_CHILD];
+				nodes[node+FIRST_CHILD] = child;
+			}
+			node = child;
+		}
+		maxDepth = Math.max(maxDepth, length);
+		if(nodes[node+ENTRY] != NONE)
+		{
+			return values.set(nodes[node+ENTRY], value);
+		}
+		values.add(value);
+		nodes[node+ENTRY] = size++;
+		return null;
+	}
+	
+	public V put(CharSequence key, V value)
+	{
+		return put(Sequence.make(key), value);
+	}
+	
+	public List<V> search(Sequence<?> query, int max)
+	{
+		List<Pair<V,Integer>> found = searchWithDistances(query, max);
+		List<V> out = new ArrayList<V>(found.size());
+		for(Pair<V,Integer> item : found)
+		{
+			out.add(item.a);
+		}
+		return out;
+	}
+	
+	public List<V> search(CharSequence query, int max)
+	{
+		return search(Sequence.make(query), max);
+	}
+	
+	public List<Pair<V,Integer>> searchWithDistances(CharSequence query, int max)
+	{
+		return searchWithDistances(Sequence.make(query), max);
+	}
+	
+	/*
+	 * Returns the value of every key within edit distance max of the query, 
+	 * paired with that distance
+	 */
+	public List<Pair<V,Integer>> searchWithDistances(Sequence<?> query, int max)
+	{
+		List<Pair<V,Integer>> out = new ArrayList<Pair<V,Integer>>();
+		if(max < 0 || size == 0){
+			return out;
+		}
+		SearchBuffer buffer = SEARCH_BUFFER.get();
+		int m = encode(query, false, buffer);
+		int width = m+1;
+		//no key is further than this, and it keeps limit from overflowing
+		max = Math.min(max, Math.max(m, maxDepth));
+		int limit = max+1;
+		//a row deeper than m+max+1 is never reached, as the one above it is 
+		//already entirely over max
+		long tableSize = (Math.min((long)maxDepth, (long)m+max+1)+1) * width;
+		if(tableSize > Integer.MAX_VALUE){
+			throw new IllegalArgumentException("Query length and max distance need a table of "
+					+tableSize+" cells, more than the limit of "+Integer.MAX_VALUE);
+		}
+		if(buffer.rows.length < tableSize){
+			buffer.rows = new int[(int)tableSize];
+		}
+		int[] rows = buffer.rows;
+		long[] codes = buffer.codes;
+		
+		//row for the root is the distance from the empty key
+		for(int i=0; i<width; i++)
+		{
+			rows[i] = i<=max ? i : limit;
+		}
+		
+		//depth-first, holding node and depth pairs. The row for a node's parent 
+		//is always still in place when the node is reached.
+		int[] stack = buffer.stack;
+		int top = 0;
+		stack[top++] = 0;
+		stack[top++] = 0;
+		while(top > 0)
+		{
+			int depth = stack[--top];
+			int node = stack[--top];
+			int cur = depth*width;
+			int rowMin = 0;
+			int hi = Math.min(m, depth+max);
+			if(depth > 0)
+			{
+				//only cells within max of the diagonal can be within max
+				int prev = cur-width;
+				int lo = Math.max(1, depth-max);
+				int code = nodes[node+LABEL];
+				rows[cur+lo-1] = lo==1 ? depth : limit;
+				rowMin = rows[cur+lo-1];
+				for(int i=lo; i<=hi; i++)
+				{
+					//diagonal (substitution)
+					int cost = rows[prev+i-1] + (codes[i-1]==code ? 0 : 1);
+					//down (insertion)
+					int down = rows[prev+i] + 1;
+					if(down < cost) cost = down;
+					//right (deletion)
+					int right = rows[cur+i-1] + 1;
+					if(right < cost) cost = right;
+					rows[cur+i] = cost;
+					if(cost < rowMin) rowMin = cost;
+				}
+				if(hi < m){
+					rows[cur+hi+1] = limit;
+				}
+			}
+			if(nodes[node+ENTRY] != NONE && m <= hi && m >= depth-max && rows[cur+m] <= max){
+				out.add(new Pair<V,Integer>(values.get(nodes[node+ENTRY]), rows[cur+m]));
+			}
+			if(rowMin > max){
+				//no key beneath here can come back within max
+				continue;
+			}
+			for(int child=nodes[node+FIRST_CHILD]; child!=NONE; child=nodes[child+NEXT_SIBLING])
+			{
+				if(top+2 > stack.length){
+					stack = Arrays.copyOf(stack, stack.length*2);
+				}
+				stack[top++] = child;
+				stack[top++] = depth+1;
+			}
+		}
+		buffer.stack = stack;
+		return out;
+	}
+	
+	public V get(Sequence<?> key)
+	{
+		SearchBuffer buffer = SEARCH_BUFFER.get();
+		int length = encode(key, false, buffer);
+		long[] codes = buffer.codes;
+		int node = 0;
+		for(int i=0; i<length && node!=NONE; i++)
+		{
+			int child = nodes[node+FIRST_CHILD];
+			while(child != NONE && nodes[child+LABEL] != codes[i])
+			{
+				child = nodes[child+NEXT_SIBLING];
+			}
+			node = child;
+		}
+		return node==NONE || nodes[node+ENTRY]==NONE ? null : values.get(nodes[node+ENTRY]);
+	}
+	
+	public V get(CharSequence key)
+	{
+		return get(Sequence.make(key));
+	}
+}
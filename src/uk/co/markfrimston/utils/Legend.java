@@ -0,0 +1,100 @@
+/*
+Copyright (c) 2008 Mark Frimston
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package uk.co.markfrimston.utils;
+
+import java.util.*;
+
+/*
+ * The types along one side of a grid, in the order they were added, with a
+ * hash index from each type to its position so lookups don't scan the list
+ */
+class Legend<T>
+{
+	private List<T> types = new ArrayList<T>();
+	private HashMap<T,Integer> ordinals = new HashMap<T,Integer>();
+	private List<T> view = Collections.unmodifiableList(types);
+	
+	/*
+	 * Returns the position of the given type, or -1 if it isn't present
+	 */
+	public int indexOf(T type)
+	{
+		Integer ordinal = ordinals.get(type);
+		return ordinal != null ? ordinal : -1;
+	}
+	
+	/*
+	 * Adds the type if it isn't present, returning its position
+	 */
+	public int add(T type)
+	{
+		Integer ordinal = ordinals.get(type);
+		if(ordinal == null)
+		{
+			ordinal = types.size();
+			types.add(type);
+			ordinals.put(type, ordinal);
+		}
+		return ordinal;
+	}
+	
+	public boolean contains(T type)
+	{
+		return ordinals.containsKey(type);
+	}
+	
+	public T get(int ordinal)
+	{
+		return types.get(ordinal);
+	}
+	
+	public int size()
+	{
+		return types.size();
+	}
+	
+	public List<T> asList()
+	{
+		return view;
+	}
+	
+	/*
+	 * Returns a separate legend with the same types
+	 */
+	public Legend<T> copy()
+	{
+		Legend<T> copy = new Legend<T>();
+		copy.types.addAll(types);
+		copy.ordinals.putAll(ordinals);
+		return copy;
+	}
+	
+	public void clear()
+	{
+		types.clear();
+		ordinals.clear();
+	}
+}
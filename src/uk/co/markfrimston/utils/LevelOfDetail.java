@@ -0,0 +1,348 @@
+/*
+Copyright (c) 2008 Mark Frimston
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package uk.co.markfrimston.utils;
+
+import java.util.*;
+
+/*
+ * Progressively simplified versions of a WireframeModel, for drawing models
+ * which only cover a few pixels with fewer lines. Each level clusters the 
+ * points of the one before on a grid of twice the cell size, replacing each
+ * cluster with the mean of the original points in it. Every edge within a
+ * cluster collapses, and lines between the same two clusters are merged.
+ * 
+ * Each level records its error - the furthest any original point is from 
+ * the point standing in for it - so a level can be chosen by how large that
+ * error would appear on screen.
+ */
+public class LevelOfDetail
+{
+	private static final int DEFAULT_MIN_POINTS = 16;
+	//levels which don't remove at least this fraction of points are skipped
+	private static final double MIN_REDUCTION = 0.1;
+	private static final long EMPTY = -1L;
+	//cells along each axis, packed into 21 bits of a cluster key
+	private static final double MAX_CELLS = 1 << 21;
+	
+	private List<WireframeModel> levels = new ArrayList<WireframeModel>();
+	private List<Double> errors = new ArrayList<Double>();
+	private double minX, minY, minZ, maxX, maxY, maxZ;
+	
+	public LevelOfDetail(WireframeModel model)
+	{
+		this(model, DEFAULT_MIN_POINTS);
+	}
+	
+	/*
+	 * Builds levels until one has no more than the given number of points
+	 */
+	public LevelOfDetail(WireframeModel model, int minPoints)
+	{
+		levels.add(model);
+		errors.add(0.0);
+		
+		PointBuffer points = model.getPointBuffer();
+		int size = model.getNumPoints();
+		if(size == 0){
+			return;
+		}
+		minX = maxX = points.xs[0];
+		minY = maxY = points.ys[0];
+		minZ = maxZ = points.zs[0];
+		for(int i=1; i<size; i++)
+		{
+			minX = Math.min(minX, points.xs[i]);
+			minY = Math.min(minY, points.ys[i]);
+			minZ = Math.min(minZ, points.zs[i]);
+			maxX = Math.max(maxX, points.xs[i]);
+			maxY = Math.max(maxY, points.ys[i]);
+			maxZ = Math.max(maxZ, points.zs[i]);
+		}
+		double extent = Math.max(maxX-minX, Math.max(maxY-minY, maxZ-minZ));
+		if(extent == 0){
+			return;
+		}
+		
+		//current clusters, as sums of the original points in them and counts
+		Clusters current = new Clusters(size);
+		for(int i=0; i<size; i++)
+		{
+			current.add(points.xs[i], points.ys[i], points.zs[i], 1);
+		}
+		int[][] lines = model.getLines();
+		int[] ends = new int[lines.length*2];
+		double length = 0;
+		for(int i=0; i<lines.length; i++)
+		{
+			int a = lines[i][0], b = lines[i][1];
+			ends[i*2] = a;
+			ends[i*2+1] = b;
+			double dx = points.xs[b]-points.xs[a];
+			double dy = points.ys[b]-points.ys[a];
+			double dz = points.zs[b]-points.zs[a];
+			length += Math.sqrt(dx*dx + dy*dy + dz*dz);
+		}
+		
+		//start with cells about the size of a line, so neighbouring points 
+		//merge first, or about one point per cell without lines to go by
+		double cell = length > 0 ? length / lines.length 
+				: extent / Math.ceil(Math.cbrt(size));
+		//but never more cells across the model than its keys can hold
+		while(extent / cell >= MAX_CELLS)
+		{
+			cell *= 2;
+		}
+		//cluster each original point ended up in
+		int[] owners = new int[size];
+		for(int i=0; i<size; i++)
+		{
+			owners[i] = i;
+		}
+		while(current.size > minPoints && cell <= extent*2)
+		{
+			int[] mapping = new int[current.size];
+			Clusters next = current.cluster(cell, minX, minY, minZ, mapping);
+			if(next.size <= current.size*(1-MIN_REDUCTION))
+			{
+				ends = mapLines(ends, mapping);
+				current = next;
+				double error = 0;
+				for(int i=0; i<size; i++)
+				{
+					int owner = mapping[owners[i]];
+					owners[i] = owner;
+					error = Math.max(error, current.distanceSq(owner, 
+							points.xs[i], points.ys[i], points.zs[i]));
+				}
+				levels.add(current.toModel(ends));
+				errors.add(Math.sqrt(error));
+			}
+			cell *= 2;
+		}
+	}
+	
+	public int getNumLevels()
+	{
+		return levels.size();
+	}
+	
+	/*
+	 * Returns the given level, where level 0 is the original model and each
+	 * level after is simpler than the last
+	 */
+	public WireframeModel getLevel(int level)
+	{
+		return levels.get(level);
+	}
+	
+	/*
+	 * Returns the furthest any original point is from its stand-in at the 
+	 * given level
+	 */
+	public double getError(int level)
+	{
+		return errors.get(level);
+	}
+	
+	/*
+	 * Returns the simplest level whose error is within the given amount
+	 */
+	public WireframeModel select(double maxError)
+	{
+		int level = 0;
+		while(level+1 < levels.size() && errors.get(level+1) <= maxError)
+		{
+			level++;
+		}
+		return levels.get(level);
+	}
+	
+	/*
+	 * Returns the simplest level whose error would appear no bigger than the
+	 * given tolerance on screen, when the model is put through the given 4x4
+	 * transform and then ThreeDUtils.project with the given focal length, 
+	 * and projected coordinates are scaled by pixelsPerUnit. The error is 
+	 * judged at the nearest corner of the model's bounds. If the bounds reach 
+	 * behind the viewer, the original model is returned.
+	 */
+	public WireframeModel select(Matrix transform, double focalLength, double pixelsPerUnit, 
+			double tolerance)
+	{
+		Matrix4 m = new Matrix4(transform);
+		double nearest = Double.POSITIVE_INFINITY;
+		for(int corner=0; corner<8; corner++)
+		{
+			double x = (corner & 1)==0 ? minX : maxX;
+			double y = (corner & 2)==0 ? minY : maxY;
+			double z = (corner & 4)==0 ? minZ : maxZ;
+			nearest = Math.min(nearest, m.m20*x + m.m21*y + m.m22*z + m.m23);
+		}
+		if(!(nearest > 0)){
+			return levels.get(0);
+		}
+		//how much the transform stretches the model, which is exactly the
+		//largest column length for rotations and scalings made before them
+		double scale = 0;
+		scale = Math.max(scale, Math.sqrt(m.m00*m.m00 + m.m10*m.m10 + m.m20*m.m20));
+		scale = Math.max(scale, Math.sqrt(m.m01*m.m01 + m.m11*m.m11 + m.m21*m.m21));
+		scale = Math.max(scale, Math.sqrt(m.m02*m.m02 + m.m12*m.m12 + m.m22*m.m22));
+		
+		return select(tolerance * Math.abs(focalLength) * nearest / (pixelsPerUnit * scale));
+	}
+	
+	/*
+	 * Renumbers line ends through the cluster mapping, dropping those which
+	 * collapse to a point and repeats of the same pair
+	 */
+	private static int[] mapLines(int[] ends, int[] mapping)
+	{
+		int[] result = new int[ends.length];
+		int count = 0;
+		long[] seen = new long[Integer.highestOneBit(Math.max(ends.length, 8))*2];
+		Arrays.fill(seen, EMPTY);
+		int mask = seen.length-1;
+		for(int i=0; i<ends.length; i+=2)
+		{
+			int a = mapping[ends[i]];
+			int b = mapping[ends[i+1]];
+			if(a == b){
+				continue;
+			}
+			long key = a < b ? ((long)a << 32) | b : ((long)b << 32) | a;
+			int slot = hash(key) & mask;
+			while(seen[slot] != EMPTY && seen[slot] != key)
+			{
+				slot = (slot+1) & mask;
+			}
+			if(seen[slot] == EMPTY)
+			{
+				seen[slot] = key;
+				result[count++] = a;
+				result[count++] = b;
+			}
+		}
+		return Arrays.copyOf(result, count);
+	}
+	
+	private static int hash(long key)
+	{
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32));
+	}
+	
+	/*
+	 * Clusters of original points, as the sums of their coordinates and 
+	 * their counts
+	 */
+	private static class Clusters
+	{
+		double[] xs, ys, zs;
+		int[] counts;
+		int size;
+		
+		public Clusters(int capacity)
+		{
+			xs = new double[capacity];
+			ys = new double[capacity];
+			zs = new double[capacity];
+			counts = new int[capacity];
+		}
+		
+		public int add(double x, double y, double z, int count)
+		{
+			xs[size] = x;
+			ys[size] = y;
+			zs[size] = z;
+			counts[size] = count;
+			return size++;
+		}
+		
+		/*
+		 * Merges the clusters whose means fall in the same grid cell, filling
+		 * in the new cluster each old one went to
+		 */
+		public Clusters cluster(double cell, double minX, double minY, double minZ, int[] mapping)
+		{
+			Clusters result = new Clusters(size);
+			long[] keys = new long[Integer.highestOneBit(Math.max(size, 8))*4];
+			int[] values = new int[keys.length];
+			Arrays.fill(keys, EMPTY);
+			int mask = keys.length-1;
+			for(int i=0; i<size; i++)
+			{
+				long ix = (long)((xs[i]/counts[i] - minX) / cell);
+				long iy = (long)((ys[i]/counts[i] - minY) / cell);
+				long iz = (long)((zs[i]/counts[i] - minZ) / cell);
+				long key = (ix << 42) | (iy << 21) | iz;
+				int slot = hash(key) & mask;
+				while(keys[slot] != EMPTY && keys[slot] != key)
+				{
+					slot = (slot+1) & mask;
+				}
+				int target;
+				if(keys[slot] == EMPTY)
+				{
+					keys[slot] = key;
+					target = result.add(0, 0, 0, 0);
+					values[slot] = target;
+				}
+				else
+				{
+					target = values[slot];
+				}
+				result.xs[target] += xs[i];
+				result.ys[target] += ys[i];
+				result.zs[target] += zs[i];
+				result.counts[target] += counts[i];
+				mapping[i] = target;
+			}
+			return result;
+		}
+		
+		public double distanceSq(int cluster, double x, double y, double z)
+		{
+			double dx = xs[cluster]/counts[cluster] - x;
+			double dy = ys[cluster]/counts[cluster] - y;
+			double dz = zs[cluster]/counts[cluster] - z;
+			return dx*dx + dy*dy + dz*dz;
+		}
+		
+		public WireframeModel toModel(int[] ends)
+		{
+			double[][] points = new double[size][];
+			for(int i=0; i<size; i++)
+			{
+				points[i] = new double[]{xs[i]/counts[i], ys[i]/counts[i], zs[i]/counts[i]};
+			}
+			int[][] lines = new int[ends.length/2][];
+			for(int i=0; i<lines.length; i++)
+			{
+				lines[i] = new int[]{ends[i*2], ends[i*2+1]};
+			}
+			return new WireframeModel(points, lines);
+		}
+	}
+}
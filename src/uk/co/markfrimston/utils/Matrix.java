@@ -27,19 +27,61 @@ package uk.co.markfrimston.utils;
 
 import java.util.*;
 import java.lang.reflect.*;
+import java.util.concurrent.*;
 import uk.co.markfrimston.utils.*;
 
 public class Matrix
 {
+	/*
+	 * Products with no more multiply-adds than this are done with a plain
+	 * loop - tiling only pays once the operands outgrow the cache
+	 */
+	private static final int SMALL_PRODUCT = 32*32*32;
+	/*
+	 * Side of the square tiles large products are worked through, sized so
+	 * that a tile of each operand and of the result fit in cache together
+	 */
+	private static final int BLOCK = 64;
+	/*
+	 * Sizes, in elements and in multiply-adds, above which the work is worth
+	 * sharing between threads
+	 */
+	private static final int PARALLEL_ELEMENTS = 1 << 18;
+	private static final int PARALLEL_PRODUCT = 1 << 22;
+	private static final int TASKS_PER_THREAD = 16;
+	
 	private int rows;
 	private int cols;
-	private double[][] data;
+	//row-major: element i,j is at i*cols+j
+	private double[] data;
 	
 	public Matrix(double[][] data)
 	{
-		this.data = data;
 		this.rows = data.length;
 		this.cols = data[0].length;
+		this.data = new double[rows*cols];
+		for(int i=0; i<rows; i++)
+		{
+			System.arraycopy(data[i], 0, this.data, i*cols, cols);
+		}
+	}
+	
+	/*
+	 * Makes a matrix over the given row-major array, without copying it
+	 */
+	public Matrix(int rows, int cols, double[] data)
+	{
+		if(data.length != rows*cols){
+			throw new IllegalArgumentException("Data length must be rows * cols");
+		}
+		this.rows = rows;
+		this.cols = cols;
+		this.data = data;
+	}
+	
+	public Matrix(int rows, int cols)
+	{
+		this(rows, cols, new double[rows*cols]);
 	}
 	
 	public int getRows()
@@ -54,101 +96,567 @@ public class Matrix
 	
 	public double get(int i,int j)
 	{
-		return data[i][j];
+		return data[i*cols+j];
+	}
+	
+	public void set(int i, int j, double value)
+	{
+		data[i*cols+j] = value;
+	}
+	
+	/*
+	 * Returns the row-major array backing the matrix
+	 */
+	public double[] getData()
+	{
+		return data;
+	}
+	
+	public double[][] toArray()
+	{
+		double[][] out = new double[rows][cols];
+		for(int i=0; i<rows; i++)
+		{
+			System.arraycopy(data, i*cols, out[i], 0, cols);
+		}
+		return out;
+	}
+	
+	/*
+	 * Copies the elements of the given matrix, which must be the same size, 
+	 * into this one
+	 */
+	public Matrix copyFrom(Matrix oth)
+	{
+		checkSize(oth, rows, cols);
+		System.arraycopy(oth.data, 0, this.data, 0, data.length);
+		return this;
 	}
 	
 	public Matrix add(Matrix oth)
+	{
+		return add(oth, ForkJoinPool.commonPool());
+	}
+	
+	/*
+	 * As add(Matrix), with large matrices split between the threads of the 
+	 * given pool
+	 */
+	public Matrix add(Matrix oth, ForkJoinPool pool)
+	{
+		return addInto(oth, new Matrix(rows, cols), pool);
+	}
+	
+	public Matrix addInPlace(Matrix oth)
+	{
+		return addInto(oth, this);
+	}
+	
+	/*
+	 * Writes the sum of this matrix and the given one into dest, which must be
+	 * the same size and may be either of them. Returns dest.
+	 */
+	public Matrix addInto(Matrix oth, Matrix dest)
+	{
+		return addInto(oth, dest, ForkJoinPool.commonPool());
+	}
+	
+	public Matrix addInto(Matrix oth, Matrix dest, ForkJoinPool pool)
 	{
 		if(this.rows != oth.rows || this.cols != oth.cols){
 			throw new ArrayIndexOutOfBoundsException("Matrices must be same size");
 		}
+		checkSize(dest, rows, cols);
 		
-		double[][] result = new double[this.rows][this.cols];
-		for(int i=0; i<this.rows; i++)
+		if(isParallel(data.length, PARALLEL_ELEMENTS, pool)){
+			pool.invoke(new AddTask(this.data, oth.data, dest.data, 0, data.length, 
+					grainSize(data.length, PARALLEL_ELEMENTS, pool)));
+		}else{
+			add(this.data, oth.data, dest.data, 0, data.length);
+		}
+		return dest;
+	}
+	
+	public Matrix mult(double scalar)
+	{
+		return mult(scalar, ForkJoinPool.commonPool());
+	}
+	
+	/*
+	 * As mult(double), with large matrices split between the threads of the 
+	 * given pool
+	 */
+	public Matrix mult(double scalar, ForkJoinPool pool)
+	{
+		return multInto(scalar, new Matrix(rows, cols), pool);
+	}
+	
+	public Matrix multInPlace(double scalar)
+	{
+		return multInto(scalar, this);
+	}
+	
+	/*
+	 * Writes this matrix multiplied by the scalar into dest, which must be the
+	 * same size and may be this matrix. Returns dest.
+	 */
+	public Matrix multInto(double scalar, Matrix dest)
+	{
+		return multInto(scalar, dest, ForkJoinPool.commonPool());
+	}
+	
+	public Matrix multInto(double scalar, Matrix dest, ForkJoinPool pool)
+	{
+		checkSize(dest, rows, cols);
+		
+		if(isParallel(data.length, PARALLEL_ELEMENTS, pool)){
+			pool.invoke(new ScaleTask(this.data, scalar, dest.data, 0, data.length, 
+					grainSize(data.length, PARALLEL_ELEMENTS, pool)));
+		}else{
+			scale(this.data, scalar, dest.data, 0, data.length);
+		}
+		return dest;
+	}
+	
+	public Matrix transpose()
+	{
+		return transpose(ForkJoinPool.commonPool());
+	}
+	
+	/*
+	 * As transpose(), with large matrices split between the threads of the 
+	 * given pool
+	 */
+	public Matrix transpose(ForkJoinPool pool)
+	{
+		return transposeInto(new Matrix(cols, rows), pool);
+	}
+	
+	/*
+	 * Writes the transpose of this matrix into dest, which must have as many
+	 * rows as this has columns and vice versa, and must not be this matrix. 
+	 * Returns dest.
+	 */
+	public Matrix transposeInto(Matrix dest)
+	{
+		return transposeInto(dest, ForkJoinPool.commonPool());
+	}
+	
+	public Matrix transposeInto(Matrix dest, ForkJoinPool pool)
+	{
+		checkSize(dest, cols, rows);
+		checkNotShared(dest, this);
+		
+		if(isParallel(data.length, PARALLEL_ELEMENTS, pool)){
+			int rowGrain = Math.max(1, grainSize(data.length, PARALLEL_ELEMENTS, pool) / Math.max(1, cols));
+			pool.invoke(new TransposeTask(this.data, dest.data, rows, cols, 0, rows, rowGrain));
+		}else{
+			transpose(this.data, dest.data, rows, cols, 0, rows);
+		}
+		return dest;
+	}
+	
+	public Matrix mult(Matrix oth)
+	{
+		return mult(oth, ForkJoinPool.commonPool());
+	}
+	
+	/*
+	 * As mult(Matrix), with large products split into regions of the result
+	 * which are worked out by the threads of the given pool. Every element is
+	 * summed in the same order however the work is divided, so the result does
+	 * not depend on the pool.
+	 */
+	public Matrix mult(Matrix oth, ForkJoinPool pool)
+	{
+		if(this.cols != oth.rows){
+			throw new ArrayIndexOutOfBoundsException("Cols in first matrix must equal rows in second");
+		}
+		return multInto(oth, new Matrix(this.rows, oth.cols), pool);
+	}
+	
+	/*
+	 * Writes the product of this matrix and the given one into dest, which must
+	 * have this matrix's rows and the other's columns, and must not be either
+	 * operand. Returns dest.
+	 */
+	public Matrix multInto(Matrix oth, Matrix dest)
+	{
+		return multInto(oth, dest, ForkJoinPool.commonPool());
+	}
+	
+	public Matrix multInto(Matrix oth, Matrix dest, ForkJoinPool pool)
+	{
+		if(this.cols != oth.rows){
+			throw new ArrayIndexOutOfBoundsException("Cols in first matrix must equal rows in second");
+		}
+		checkSize(dest, this.rows, oth.cols);
+		checkNotShared(dest, this);
+		checkNotShared(dest, oth);
+		
+		double[] result = dest.data;
+		Arrays.fill(result, 0.0);
+		long work = (long)this.rows*this.cols*oth.cols;
+		if(work <= SMALL_PRODUCT)
 		{
-			for(int j=0; j<this.cols; j++)
+			multiply(this.data, oth.data, result, 0, this.rows, 0, this.cols, 0, oth.cols, 
+					this.cols, oth.cols);
+		}
+		else if(isParallel(work, PARALLEL_PRODUCT, pool))
+		{
+			pool.invoke(new MultTask(this.data, oth.data, result, this.cols, oth.cols,
+					0, this.rows, 0, oth.cols, grainSize(work, PARALLEL_PRODUCT, pool)));
+		}
+		else
+		{
+			multiplyBlocked(this.data, oth.data, result, 0, this.rows, 0, oth.cols, 
+					this.cols, oth.cols);
+		}
+		return dest;
+	}
+	
+	private static void checkSize(Matrix m, int rows, int cols)
+	{
+		if(m.rows != rows || m.cols != cols){
+			throw new ArrayIndexOutOfBoundsException("Expected a "+rows+"x"+cols+" matrix");
+		}
+	}
+	
+	private static void checkNotShared(Matrix dest, Matrix operand)
+	{
+		if(dest.data == operand.data){
+			throw new IllegalArgumentException("Destination must not be an operand");
+		}
+	}
+	
+	private static void add(double[] a, double[] b, double[] out, int from, int to)
+	{
+		for(int i=from; i<to; i++)
+		{
+			out[i] = a[i] + b[i];
+		}
+	}
+	
+	private static void scale(double[] a, double scalar, double[] out, int from, int to)
+	{
+		for(int i=from; i<to; i++)
+		{
+			out[i] = a[i] * scalar;
+		}
+	}
+	
+	/*
+	 * Transposes a range of the source's rows
+	 */
+	private static void transpose(double[] src, double[] out, int rows, int cols, int from, int to)
+	{
+		for(int i=from; i<to; i++)
+		{
+			for(int j=0; j<cols; j++)
 			{
-				result[i][j] = this.data[i][j]+oth.data[i][j];
+				out[j*rows+i] = src[i*cols+j];
 			}
 		}
-		return new Matrix(result);
 	}
 	
-	public Matrix mult(double scalar)
+	/*
+	 * Adds the product of the given region of a and b into c, in i-k-j order so
+	 * that the inner loop runs along rows of b and c. Each element of c 
+	 * receives its terms in increasing k, as the textbook loop would give them.
+	 */
+	private static void multiply(double[] a, double[] b, double[] c, 
+			int iFrom, int iTo, int kFrom, int kTo, int jFrom, int jTo, int n, int m)
 	{
-		double[][] result = new double[this.rows][this.cols];
-		for(int i=0; i<this.rows; i++)
+		for(int i=iFrom; i<iTo; i++)
 		{
-			for(int j=0; j<this.cols; j++)
+			int aRow = i*n;
+			int cRow = i*m;
+			for(int k=kFrom; k<kTo; k++)
 			{
-				result[i][j] = this.data[i][j] * scalar;
+				double aik = a[aRow+k];
+				int bRow = k*m;
+				for(int j=jFrom; j<jTo; j++)
+				{
+					c[cRow+j] += aik * b[bRow+j];
+				}
 			}
 		}
-		return new Matrix(result);
 	}
 	
-	public Matrix transpose()
+	/*
+	 * Works out the given rows and columns of the product of ? x n matrix a 
+	 * and n x m matrix b into c, a tile at a time
+	 */
+	private static void multiplyBlocked(double[] a, double[] b, double[] c, 
+			int iFrom, int iTo, int jFrom, int jTo, int n, int m)
 	{
-		double[][] result = new double[this.cols][this.rows];
-		for(int i=0; i<this.rows; i++)
+		for(int ii=iFrom; ii<iTo; ii+=BLOCK)
 		{
-			for(int j=0; j<this.cols; j++)
+			int iEnd = Math.min(ii+BLOCK, iTo);
+			for(int kk=0; kk<n; kk+=BLOCK)
 			{
-				result[i][j] = this.data[j][i];
+				int kEnd = Math.min(kk+BLOCK, n);
+				for(int jj=jFrom; jj<jTo; jj+=BLOCK)
+				{
+					multiply(a, b, c, ii, iEnd, kk, kEnd, jj, Math.min(jj+BLOCK, jTo), n, m);
+				}
 			}
 		}
-		return new Matrix(result);
 	}
 	
-	public Matrix mult(Matrix oth)
+	private static boolean isParallel(long work, int threshold, ForkJoinPool pool)
 	{
-		if(this.cols != oth.rows){
-			throw new ArrayIndexOutOfBoundsException("Cols in first matrix must equal rows in second");
+		return work > threshold && pool.getParallelism() > 1;
+	}
+	
+	private static int grainSize(long work, int minimum, ForkJoinPool pool)
+	{
+		//a product's multiply-adds can exceed an int
+		long grain = Math.max(minimum/4, work / (pool.getParallelism()*TASKS_PER_THREAD));
+		return (int)Math.min(grain, Integer.MAX_VALUE);
+	}
+	
+	/*
+	 * Splits a range of indices in half until pieces are no larger than the
+	 * grain size, then runs them
+	 */
+	@SuppressWarnings("serial")
+	private static abstract class RangeTask extends RecursiveAction
+	{
+		protected int from;
+		protected int to;
+		protected int grain;
+		
+		public RangeTask(int from, int to, int grain)
+		{
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
 		}
 		
-		double[][] result = new double[this.rows][oth.cols];
-		for(int i=0; i<this.rows; i++)
+		protected void compute()
 		{
-			for(int j=0; j<oth.cols; j++)
+			if(to-from <= grain)
 			{
-				double val = 0;
-				for(int k=0; k<this.cols; k++)
-				{
-					val += this.data[i][k] * oth.data[k][j];
-				}
-				result[i][j] = val;
+				run(from, to);
 			}
-		}		
-		return new Matrix(result);
+			else
+			{
+				int mid = (from+to) >>> 1;
+				invokeAll(slice(from, mid), slice(mid, to));
+			}
+		}
+		
+		protected abstract RangeTask slice(int from, int to);
+		
+		protected abstract void run(int from, int to);
 	}
 	
-	public boolean equals(Object obj)
+	@SuppressWarnings("serial")
+	private static class AddTask extends RangeTask
 	{
-		if(obj==null) return false;
-		if(!obj.getClass().equals(this.getClass())) return false;
+		private double[] a, b, out;
 		
-		Matrix m = (Matrix)obj;
-		if((this.data==null) != (m.data==null)) return false;
+		public AddTask(double[] a, double[] b, double[] out, int from, int to, int grain)
+		{
+			super(from, to, grain);
+			this.a = a;
+			this.b = b;
+			this.out = out;
+		}
+		
+		protected RangeTask slice(int from, int to)
+		{
+			return new AddTask(a, b, out, from, to, grain);
+		}
+		
+		protected void run(int from, int to)
+		{
+			add(a, b, out, from, to);
+		}
+	}
+	
+	@SuppressWarnings("serial")
+	private static class ScaleTask extends RangeTask
+	{
+		private double[] a, out;
+		private double scalar;
 		
-		if(this.data!=null)
+		public ScaleTask(double[] a, double scalar, double[] out, int from, int to, int grain)
 		{
-			if(data.length != m.data.length) return false;
-			if(data.length > 0)
+			super(from, to, grain);
+			this.a = a;
+			this.scalar = scalar;
+			this.out = out;
+		}
+		
+		protected RangeTask slice(int from, int to)
+		{
+			return new ScaleTask(a, scalar, out, from, to, grain);
+		}
+		
+		protected void run(int from, int to)
+		{
+			scale(a, scalar, out, from, to);
+		}
+	}
+	
+	@SuppressWarnings("serial")
+	private static class TransposeTask extends RangeTask
+	{
+		private double[] src, out;
+		private int rows, cols;
+		
+		public TransposeTask(double[] src, double[] out, int rows, int cols, 
+				int from, int to, int grain)
+		{
+			super(from, to, grain);
+			this.src = src;
+			this.out = out;
+			this.rows = rows;
+			this.cols = cols;
+		}
+		
+		protected RangeTask slice(int from, int to)
+		{
+			return new TransposeTask(src, out, rows, cols, from, to, grain);
+		}
+		
+		protected void run(int from, int to)
+		{
+			transpose(src, out, rows, cols, from, to);
+		}
+	}
+	
+	/*
+	 * Works out a region of a product, halving the longer side of the region 
+	 * until its share of the multiply-adds is within the grain size. Splitting 
+	 * by columns as well as rows lets a product with few rows, such as a 4x4
+	 * transform applied to a model's points, still be shared out.
+	 */
+	@SuppressWarnings("serial")
+	private static class MultTask extends RecursiveAction
+	{
+		private double[] a, b, c;
+		private int n, m;
+		private int iFrom, iTo, jFrom, jTo;
+		private int grain;
+		
+		public MultTask(double[] a, double[] b, double[] c, int n, int m, 
+				int iFrom, int iTo, int jFrom, int jTo, int grain)
+		{
+			this.a = a;
+			this.b = b;
+			this.c = c;
+			this.n = n;
+			this.m = m;
+			this.iFrom = iFrom;
+			this.iTo = iTo;
+			this.jFrom = jFrom;
+			this.jTo = jTo;
+			this.grain = grain;
+		}
+		
+		protected void compute()
+		{
+			int height = iTo-iFrom;
+			int width = jTo-jFrom;
+			if((long)height*width*n <= grain || (height<=1 && width<=1))
 			{
-				if(data[0].length != m.data[0].length) return false;
-				for(int i=0; i<this.rows; i++)
+				multiplyBlocked(a, b, c, iFrom, iTo, jFrom, jTo, n, m);
+			}
+			else if(height >= width)
+			{
+				int mid = splitPoint(iFrom, iTo);
+				invokeAll(new MultTask(a, b, c, n, m, iFrom, mid, jFrom, jTo, grain),
+						new MultTask(a, b, c, n, m, mid, iTo, jFrom, jTo, grain));
+			}
+			else
+			{
+				int mid = splitPoint(jFrom, jTo);
+				invokeAll(new MultTask(a, b, c, n, m, iFrom, iTo, jFrom, mid, grain),
+						new MultTask(a, b, c, n, m, iFrom, iTo, mid, jTo, grain));
+			}
+		}
+		
+		/*
+		 * Halves the range, keeping to tile boundaries where it's wide enough
+		 */
+		private int splitPoint(int from, int to)
+		{
+			int half = (to-from)/2;
+			if(half >= BLOCK){
+				half -= half % BLOCK;
+			}
+			return from+half;
+		}
+	}
+	
+	/*
+	 * Returns this matrix multiplied by the transpose of the given one. Both
+	 * operands are then read along their rows, which suits a right hand side 
+	 * that is already held transposed.
+	 */
+	public Matrix multTransposed(Matrix oth)
+	{
+		if(this.cols != oth.cols){
+			throw new ArrayIndexOutOfBoundsException("Cols in first matrix must equal cols in second");
+		}
+		return multTransposedInto(oth, new Matrix(this.rows, oth.rows));
+	}
+	
+	/*
+	 * Writes this matrix multiplied by the transpose of the given one into 
+	 * dest, which must not be either operand. Returns dest.
+	 */
+	public Matrix multTransposedInto(Matrix oth, Matrix dest)
+	{
+		if(this.cols != oth.cols){
+			throw new ArrayIndexOutOfBoundsException("Cols in first matrix must equal cols in second");
+		}
+		checkSize(dest, this.rows, oth.rows);
+		checkNotShared(dest, this);
+		checkNotShared(dest, oth);
+		
+		int n = this.cols;
+		double[] result = dest.data;
+		for(int ii=0; ii<this.rows; ii+=BLOCK)
+		{
+			int iTo = Math.min(ii+BLOCK, this.rows);
+			for(int jj=0; jj<oth.rows; jj+=BLOCK)
+			{
+				int jTo = Math.min(jj+BLOCK, oth.rows);
+				for(int i=ii; i<iTo; i++)
 				{
-					if(!Arrays.equals(data[i], m.data[i])) return false; 
+					int aRow = i*n;
+					for(int j=jj; j<jTo; j++)
+					{
+						int bRow = j*n;
+						double val = 0;
+						for(int k=0; k<n; k++)
+						{
+							val += this.data[aRow+k] * oth.data[bRow+k];
+						}
+						result[i*oth.rows+j] = val;
+					}
 				}
 			}
 		}
+		return dest;
+	}
+	
+	public boolean equals(Object obj)
+	{
+		if(obj==null) return false;
+		if(!obj.getClass().equals(this.getClass())) return false;
 		
-		return true;
+		Matrix m = (Matrix)obj;
+		return this.rows==m.rows && this.cols==m.cols && Arrays.equals(this.data, m.data);
 	}
 	
 	public int hashCode()
 	{
-		return ("matrix"+Arrays.hashCode(this.data)).hashCode();
+		return ("matrix"+rows+"x"+cols+Arrays.hashCode(this.data)).hashCode();
 	}
 	
 	public String toString()
@@ -160,7 +668,7 @@ public class Matrix
 			sb.append("[");
 			for(int j=0; j<this.cols; j++)
 			{
-				sb.append(StringUtils.fixedLength(String.valueOf(data[i][j]), 4));
+				sb.append(StringUtils.fixedLength(String.valueOf(get(i,j)), 4));
 				sb.append(" ");
 			}
 			sb.append("]\n");
@@ -0,0 +1,297 @@
+/*
+Copyright (c) 2008 Mark Frimston
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package uk.co.markfrimston.utils;
+
+/*
+ * A 4x4 transform held in sixteen fields, for the 3D path where a general
+ * Matrix's array indexing and loops cost more than the arithmetic. Element
+ * mij is at row i, column j. Operations which write to a destination give
+ * the right result when it is one of the operands.
+ */
+public final class Matrix4 implements StandardHashable
+{
+	/*
+	 * Ways of transforming a point buffer. SCALAR works out each point in 
+	 * turn. VECTORISED goes through the buffer in strips with one plain loop 
+	 * per output coordinate, which HotSpot's loop vectoriser turns into SIMD
+	 * code. Both give identical results.
+	 */
+	public static enum Kernel
+	{
+		SCALAR, VECTORISED
+	}
+	
+	//points per strip for the vectorised kernel, small enough to stay in cache
+	private static final int STRIP = 1024;
+	private static final ThreadLocal<double[]> STRIP_BUFFER = new ThreadLocal<double[]>()
+	{
+		protected double[] initialValue()
+		{
+			return new double[STRIP*3];
+		}
+	};
+	
+	public double m00, m01, m02, m03;
+	public double m10, m11, m12, m13;
+	public double m20, m21, m22, m23;
+	public double m30, m31, m32, m33;
+	
+	/*
+	 * Makes an identity transform
+	 */
+	public Matrix4()
+	{
+		setIdentity();
+	}
+	
+	public Matrix4(Matrix matrix)
+	{
+		set(matrix);
+	}
+	
+	public Matrix4 setIdentity()
+	{
+		m00 = 1; m01 = 0; m02 = 0; m03 = 0;
+		m10 = 0; m11 = 1; m12 = 0; m13 = 0;
+		m20 = 0; m21 = 0; m22 = 1; m23 = 0;
+		m30 = 0; m31 = 0; m32 = 0; m33 = 1;
+		return this;
+	}
+	
+	public Matrix4 set(Matrix4 oth)
+	{
+		m00 = oth.m00; m01 = oth.m01; m02 = oth.m02; m03 = oth.m03;
+		m10 = oth.m10; m11 = oth.m11; m12 = oth.m12; m13 = oth.m13;
+		m20 = oth.m20; m21 = oth.m21; m22 = oth.m22; m23 = oth.m23;
+		m30 = oth.m30; m31 = oth.m31; m32 = oth.m32; m33 = oth.m33;
+		return this;
+	}
+	
+	/*
+	 * Copies the elements of the given 4x4 matrix
+	 */
+	public Matrix4 set(Matrix matrix)
+	{
+		if(matrix.getRows() != 4 || matrix.getCols() != 4){
+			throw new ArrayIndexOutOfBoundsException("Matrix must be 4x4");
+		}
+		double[] d = matrix.getData();
+		m00 = d[0]; m01 = d[1]; m02 = d[2]; m03 = d[3];
+		m10 = d[4]; m11 = d[5]; m12 = d[6]; m13 = d[7];
+		m20 = d[8]; m21 = d[9]; m22 = d[10]; m23 = d[11];
+		m30 = d[12]; m31 = d[13]; m32 = d[14]; m33 = d[15];
+		return this;
+	}
+	
+	public Matrix toMatrix()
+	{
+		return new Matrix(4, 4, new double[]{
+				m00, m01, m02, m03,
+				m10, m11, m12, m13,
+				m20, m21, m22, m23,
+				m30, m31, m32, m33
+		});
+	}
+	
+	public Matrix4 mult(Matrix4 oth)
+	{
+		return multInto(oth, new Matrix4());
+	}
+	
+	/*
+	 * Writes this transform multiplied by the given one - that is, the given 
+	 * transform followed by this one - into dest. Returns dest.
+	 */
+	public Matrix4 multInto(Matrix4 oth, Matrix4 dest)
+	{
+		double r00 = m00*oth.m00 + m01*oth.m10 + m02*oth.m20 + m03*oth.m30;
+		double r01 = m00*oth.m01 + m01*oth.m11 + m02*oth.m21 + m03*oth.m31;
+		double r02 = m00*oth.m02 + m01*oth.m12 + m02*oth.m22 + m03*oth.m32;
+		double r03 = m00*oth.m03 + m01*oth.m13 + m02*oth.m23 + m03*oth.m33;
+		double r10 = m10*oth.m00 + m11*oth.m10 + m12*oth.m20 + m13*oth.m30;
+		double r11 = m10*oth.m01 + m11*oth.m11 + m12*oth.m21 + m13*oth.m31;
+		double r12 = m10*oth.m02 + m11*oth.m12 + m12*oth.m22 + m13*oth.m32;
+		double r13 = m10*oth.m03 + m11*oth.m13 + m12*oth.m23 + m13*oth.m33;
+		double r20 = m20*oth.m00 + m21*oth.m10 + m22*oth.m20 + m23*oth.m30;
+		double r21 = m20*oth.m01 + m21*oth.m11 + m22*oth.m21 + m23*oth.m31;
+		double r22 = m20*oth.m02 + m21*oth.m12 + m22*oth.m22 + m23*oth.m32;
+		double r23 = m20*oth.m03 + m21*oth.m13 + m22*oth.m23 + m23*oth.m33;
+		double r30 = m30*oth.m00 + m31*oth.m10 + m32*oth.m20 + m33*oth.m30;
+		double r31 = m30*oth.m01 + m31*oth.m11 + m32*oth.m21 + m33*oth.m31;
+		double r32 = m30*oth.m02 + m31*oth.m12 + m32*oth.m22 + m33*oth.m32;
+		double r33 = m30*oth.m03 + m31*oth.m13 + m32*oth.m23 + m33*oth.m33;
+		dest.m00 = r00; dest.m01 = r01; dest.m02 = r02; dest.m03 = r03;
+		dest.m10 = r10; dest.m11 = r11; dest.m12 = r12; dest.m13 = r13;
+		dest.m20 = r20; dest.m21 = r21; dest.m22 = r22; dest.m23 = r23;
+		dest.m30 = r30; dest.m31 = r31; dest.m32 = r32; dest.m33 = r33;
+		return dest;
+	}
+	
+	public Vector4 transform(Vector4 point)
+	{
+		return transformInto(point, new Vector4());
+	}
+	
+	public Vector4 transformInto(Vector4 point, Vector4 dest)
+	{
+		double x = point.x, y = point.y, z = point.z, w = point.w;
+		dest.x = m00*x + m01*y + m02*z + m03*w;
+		dest.y = m10*x + m11*y + m12*z + m13*w;
+		dest.z = m20*x + m21*y + m22*z + m23*w;
+		dest.w = m30*x + m31*y + m32*z + m33*w;
+		return dest;
+	}
+	
+	public PointBuffer transform(PointBuffer points)
+	{
+		return transformInto(points, new PointBuffer(points.size()));
+	}
+	
+	/*
+	 * Transforms the given points into dest, which must hold at least as many
+	 * and may be the same buffer, using the vectorised kernel. Returns dest.
+	 */
+	public PointBuffer transformInto(PointBuffer points, PointBuffer dest)
+	{
+		return transformInto(points, dest, Kernel.VECTORISED);
+	}
+	
+	public PointBuffer transformInto(PointBuffer points, PointBuffer dest, Kernel kernel)
+	{
+		int size = points.size();
+		if(dest.size() < size){
+			throw new ArrayIndexOutOfBoundsException("Destination holds too few points");
+		}
+		if(kernel == Kernel.SCALAR){
+			transformScalar(points, dest, size);
+		}else{
+			transformVectorised(points, dest, size);
+		}
+		return dest;
+	}
+	
+	private void transformScalar(PointBuffer points, PointBuffer dest, int size)
+	{
+		double a00 = m00, a01 = m01, a02 = m02, a03 = m03;
+		double a10 = m10, a11 = m11, a12 = m12, a13 = m13;
+		double a20 = m20, a21 = m21, a22 = m22, a23 = m23;
+		double a30 = m30, a31 = m31, a32 = m32, a33 = m33;
+		double[] xs = points.xs, ys = points.ys, zs = points.zs, ws = points.ws;
+		double[] dxs = dest.xs, dys = dest.ys, dzs = dest.zs, dws = dest.ws;
+		for(int i=0; i<size; i++)
+		{
+			double x = xs[i], y = ys[i], z = zs[i], w = ws[i];
+			dxs[i] = a00*x + a01*y + a02*z + a03*w;
+			dys[i] = a10*x + a11*y + a12*z + a13*w;
+			dzs[i] = a20*x + a21*y + a22*z + a23*w;
+			dws[i] = a30*x + a31*y + a32*z + a33*w;
+		}
+	}
+	
+	/*
+	 * Works through the points a strip at a time, producing each output 
+	 * coordinate for the strip in its own loop. When the buffers overlap, the
+	 * first three are held back in a scratch strip until the inputs they're 
+	 * worked out from have all been read.
+	 */
+	private void transformVectorised(PointBuffer points, PointBuffer dest, int size)
+	{
+		double[] xs = points.xs, ys = points.ys, zs = points.zs, ws = points.ws;
+		boolean shared = shares(dest.xs, points) || shares(dest.ys, points) 
+				|| shares(dest.zs, points) || shares(dest.ws, points);
+		double[] scratch = shared ? STRIP_BUFFER.get() : null;
+		for(int from=0; from<size; from+=STRIP)
+		{
+			int to = Math.min(from+STRIP, size);
+			if(!shared)
+			{
+				transformRow(m00, m01, m02, m03, xs, ys, zs, ws, dest.xs, 0, from, to);
+				transformRow(m10, m11, m12, m13, xs, ys, zs, ws, dest.ys, 0, from, to);
+				transformRow(m20, m21, m22, m23, xs, ys, zs, ws, dest.zs, 0, from, to);
+				transformRow(m30, m31, m32, m33, xs, ys, zs, ws, dest.ws, 0, from, to);
+			}
+			else
+			{
+				transformRow(m00, m01, m02, m03, xs, ys, zs, ws, scratch, -from, from, to);
+				transformRow(m10, m11, m12, m13, xs, ys, zs, ws, scratch, STRIP-from, from, to);
+				transformRow(m20, m21, m22, m23, xs, ys, zs, ws, scratch, STRIP*2-from, from, to);
+				//each point's w is only read before its own result is written
+				transformRow(m30, m31, m32, m33, xs, ys, zs, ws, dest.ws, 0, from, to);
+				System.arraycopy(scratch, 0, dest.xs, from, to-from);
+				System.arraycopy(scratch, STRIP, dest.ys, from, to-from);
+				System.arraycopy(scratch, STRIP*2, dest.zs, from, to-from);
+			}
+		}
+	}
+	
+	/*
+	 * Works out one coordinate for a range of points, writing point i's to 
+	 * out[i+shift]. Kept to a single expression over arrays so that the JIT 
+	 * compiles it into SIMD instructions.
+	 */
+	private static void transformRow(double a, double b, double c, double d, 
+			double[] xs, double[] ys, double[] zs, double[] ws, double[] out, 
+			int shift, int from, int to)
+	{
+		for(int i=from; i<to; i++)
+		{
+			out[i+shift] = a*xs[i] + b*ys[i] + c*zs[i] + d*ws[i];
+		}
+	}
+	
+	private static boolean shares(double[] array, PointBuffer points)
+	{
+		return array==points.xs || array==points.ys || array==points.zs || array==points.ws;
+	}
+	
+	public Object[] getHashableValues() 
+	{
+		return new Object[]{
+				m00, m01, m02, m03,
+				m10, m11, m12, m13,
+				m20, m21, m22, m23,
+				m30, m31, m32, m33
+		};
+	}
+	
+	public boolean equals(Object obj)
+	{
+		return ObjectUtils.standardEquals(this, obj);
+	}
+	
+	public int hashCode()
+	{
+		return ObjectUtils.standardHashCode(this);
+	}
+	
+	public String toString()
+	{
+		return "\n["+m00+" "+m01+" "+m02+" "+m03+"]\n"
+			+"["+m10+" "+m11+" "+m12+" "+m13+"]\n"
+			+"["+m20+" "+m21+" "+m22+" "+m23+"]\n"
+			+"["+m30+" "+m31+" "+m32+" "+m33+"]\n";
+	}
+}
@@ -0,0 +1,645 @@
+/*
+Copyright (c) 2008 Mark Frimston
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package uk.co.markfrimston.utils;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.nio.channels.*;
+
+/*
+ * Reads the vertices and face edges of a Wavefront OBJ model straight from
+ * bytes. Lines are tokenised in place and numbers parsed without creating 
+ * strings, points and edges go into growing primitive arrays, and edges 
+ * shared between faces are only kept once.
+ */
+class ObjParser
+{
+	private static final int READ_SIZE = 1 << 16;
+	//largest region of a file mapped at once
+	private static final long MAP_SIZE = 1L << 30;
+	//significant digits that always fit in a long
+	private static final int MAX_DIGITS = 18;
+	//powers of ten which are exact as doubles
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+	private static final long EMPTY = -1L;
+	//smallest part of a file worth parsing on its own thread
+	private static final long MIN_PART = 1L << 22;
+	private static final int PARTS_PER_THREAD = 4;
+	
+	private double scaling;
+	//points in the file before those this parser sees
+	private int pointOffset;
+	private boolean countOnly;
+	//bytes read but not yet parsed
+	private byte[] chunk = new byte[READ_SIZE];
+	private int chunkLength = 0;
+	
+	//x, y and z of each point in turn
+	private double[] coords = new double[3*1024];
+	private int numPoints = 0;
+	//start and end point of each line in turn
+	private int[] ends = new int[2*1024];
+	private int numLines = 0;
+	
+	//open addressed set of edges seen, as lower point in the high half and
+	//higher point in the low half
+	private long[] edgeSet;
+	private int edgeMask;
+	
+	public ObjParser(double scaling)
+	{
+		this(scaling, 0, false);
+	}
+	
+	/*
+	 * Makes a parser for part of a file, preceded by the given number of 
+	 * points. A counting parser only counts the points in its part.
+	 */
+	private ObjParser(double scaling, int pointOffset, boolean countOnly)
+	{
+		this.scaling = scaling;
+		this.pointOffset = pointOffset;
+		this.countOnly = countOnly;
+		edgeSet = new long[1024];
+		edgeMask = edgeSet.length-1;
+		Arrays.fill(edgeSet, EMPTY);
+	}
+	
+	public void parse(InputStream input) throws IOException, ModelFormatException
+	{
+		int read;
+		while((read = input.read(chunk, chunkLength, chunk.length-chunkLength)) >= 0)
+		{
+			chunkLength += read;
+			consume(false);
+		}
+		consume(true);
+	}
+	
+	public void parse(FileChannel channel) throws IOException, ModelFormatException
+	{
+		parse(channel, 0, channel.size());
+	}
+	
+	/*
+	 * Reads the given part of a file a region at a time through memory mapping
+	 */
+	public void parse(FileChannel channel, long from, long to) throws IOException, ModelFormatException
+	{
+		for(long start=from; start<to; start+=MAP_SIZE)
+		{
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, 
+					Math.min(to-start, MAP_SIZE));
+			while(buffer.hasRemaining())
+			{
+				int length = Math.min(buffer.remaining(), chunk.length-chunkLength);
+				buffer.get(chunk, chunkLength, length);
+				chunkLength += length;
+				consume(false);
+			}
+		}
+		consume(true);
+	}
+	
+	/*
+	 * Parses a file on the threads of the given pool. The file is split at
+	 * line boundaries into parts whose points are counted first, so that each
+	 * part knows how many points come before it and can be parsed on its own.
+	 * The parts' edges are then merged in file order.
+	 */
+	public static Pair<double[][],int[][]> parse(final FileChannel channel, final double scaling, 
+			ForkJoinPool pool) throws IOException, ModelFormatException
+	{
+		long size = channel.size();
+		int parts = (int)Math.max(1, Math.min(size/MIN_PART, pool.getParallelism()*PARTS_PER_THREAD));
+		final long[] bounds = new long[parts+1];
+		for(int i=1; i<parts; i++)
+		{
+			bounds[i] = lineStart(channel, Math.max(bounds[i-1], size*i/parts));
+		}
+		bounds[parts] = size;
+		
+		List<Callable<ObjParser>> tasks = new ArrayList<Callable<ObjParser>>();
+		for(int i=0; i<parts; i++)
+		{
+			final int part = i;
+			tasks.add(new Callable<ObjParser>(){
+				public ObjParser call() throws Exception
+				{
+					ObjParser parser = new ObjParser(scaling, 0, true);
+					parser.parse(channel, bounds[part], bounds[part+1]);
+					return parser;
+				}
+			});
+		}
+		List<ObjParser> counted = invokeAll(pool, tasks);
+		final int[] offsets = new int[parts+1];
+		for(int i=0; i<parts; i++)
+		{
+			long total = (long)offsets[i] + counted.get(i).numPoints;
+			if(total > Integer.MAX_VALUE){
+				throw new ModelFormatException("Too many points");
+			}
+			offsets[i+1] = (int)total;
+		}
+		
+		final double[][] points = new double[offsets[parts]][];
+		tasks.clear();
+		for(int i=0; i<parts; i++)
+		{
+			final int part = i;
+			tasks.add(new Callable<ObjParser>(){
+				public ObjParser call() throws Exception
+				{
+					ObjParser parser = new ObjParser(scaling, offsets[part], false);
+					parser.parse(channel, bounds[part], bounds[part+1]);
+					parser.copyPoints(points, offsets[part]);
+					parser.coords = null;
+					return parser;
+				}
+			});
+		}
+		List<ObjParser> parsed = invokeAll(pool, tasks);
+		
+		ObjParser merged = new ObjParser(scaling);
+		for(ObjParser parser : parsed)
+		{
+			for(int i=0; i<parser.numLines; i++)
+			{
+				merged.addLine(parser.ends[i*2], parser.ends[i*2+1]);
+			}
+			parser.ends = null;
+		}
+		return new Pair<double[][],int[][]>(points, merged.getLines());
+	}
+	
+	/*
+	 * Runs the tasks and returns their results in order, rethrowing the 
+	 * first failure
+	 */
+	private static <T> List<T> invokeAll(ForkJoinPool pool, List<Callable<T>> tasks) 
+		throws IOException, ModelFormatException
+	{
+		List<T> results = new ArrayList<T>();
+		for(Future<T> future : pool.invokeAll(tasks))
+		{
+			try
+			{
+				results.add(future.get());
+			}
+			catch(InterruptedException e)
+			{
+				throw new InterruptedIOException();
+			}
+			catch(ExecutionException e)
+			{
+				Throwable cause = e.getCause();
+				//the pool wraps checked exceptions from callables
+				while(cause.getClass() == RuntimeException.class && cause.getCause() != null)
+				{
+					cause = cause.getCause();
+				}
+				if(cause instanceof IOException) throw (IOException)cause;
+				if(cause instanceof ModelFormatException) throw (ModelFormatException)cause;
+				if(cause instanceof RuntimeException) throw (RuntimeException)cause;
+				if(cause instanceof Error) throw (Error)cause;
+				throw new RuntimeException(cause);
+			}
+		}
+		return results;
+	}
+	
+	/*
+	 * Returns the position of the first line to start at or after the given 
+	 * one
+	 */
+	private static long lineStart(FileChannel channel, long pos) throws IOException
+	{
+		if(pos <= 0){
+			return 0;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(READ_SIZE);
+		for(long start=pos-1; ; start+=buffer.position())
+		{
+			buffer.clear();
+			if(channel.read(buffer, start) <= 0){
+				return channel.size();
+			}
+			for(int i=0; i<buffer.position(); i++)
+			{
+				if(buffer.get(i) == '\n'){
+					return start+i+1;
+				}
+			}
+		}
+	}
+	
+	/*
+	 * Parses the complete lines in the chunk and moves any partial line at 
+	 * the end to the start, making room for more if it fills the chunk
+	 */
+	private void consume(boolean end) throws ModelFormatException
+	{
+		int consumed = parse(chunk, 0, chunkLength, end);
+		System.arraycopy(chunk, consumed, chunk, 0, chunkLength-consumed);
+		chunkLength -= consumed;
+		if(chunkLength == chunk.length){
+			chunk = Arrays.copyOf(chunk, chunk.length*2);
+		}
+	}
+	
+	/*
+	 * Parses the lines between the given positions. Unless this is the end of 
+	 * the input, an unterminated line at the end is left alone. Returns the 
+	 * position up to which lines were parsed.
+	 */
+	private int parse(byte[] buffer, int from, int to, boolean end) throws ModelFormatException
+	{
+		int pos = from;
+		while(pos < to)
+		{
+			int eol = pos;
+			while(eol < to && buffer[eol] != '\n')
+			{
+				eol++;
+			}
+			if(eol == to && !end){
+				break;
+			}
+			parseLine(buffer, pos, eol);
+			pos = eol+1;
+		}
+		return Math.min(pos, to);
+	}
+	
+	public int getNumPoints()
+	{
+		return numPoints;
+	}
+	
+	public int getNumLines()
+	{
+		return numLines;
+	}
+	
+	public double[][] getPoints()
+	{
+		double[][] points = new double[numPoints][];
+		copyPoints(points, 0);
+		return points;
+	}
+	
+	/*
+	 * Fills in the points parsed, from the given index of the array onwards
+	 */
+	public void copyPoints(double[][] points, int offset)
+	{
+		for(int i=0; i<numPoints; i++)
+		{
+			double[] p = new double[4];
+			p[0] = coords[i*3];
+			p[1] = coords[i*3+1];
+			p[2] = coords[i*3+2];
+			points[offset+i] = p;
+		}
+	}
+	
+	public int[][] getLines()
+	{
+		int[][] lines = new int[numLines][2];
+		for(int i=0; i<numLines; i++)
+		{
+			lines[i][0] = ends[i*2];
+			lines[i][1] = ends[i*2+1];
+		}
+		return lines;
+	}
+	
+	private void parseLine(byte[] buffer, int from, int to) throws ModelFormatException
+	{
+		int pos = skipSpace(buffer, from, to);
+		if(pos >= to || (pos+1 < to && !isSpace(buffer[pos+1]))){
+			return;
+		}
+		byte keyword = buffer[pos];
+		if(keyword == 'v' && countOnly)
+		{
+			numPoints++;
+		}
+		else if(keyword == 'v')
+		{
+			//vertex with x,y,z - anything after is ignored
+			if(numPoints*3 == coords.length){
+				coords = Arrays.copyOf(coords, coords.length*2);
+			}
+			pos++;
+			for(int i=0; i<3; i++)
+			{
+				pos = skipSpace(buffer, pos, to);
+				int tokenEnd = skipToken(buffer, pos, to);
+				if(pos == tokenEnd){
+					throw new ModelFormatException("Expected 3 values for vertex");
+				}
+				coords[numPoints*3+i] = parseNumber(buffer, pos, tokenEnd) * scaling;
+				pos = tokenEnd;
+			}
+			numPoints++;
+		}
+		else if(keyword == 'f' && !countOnly)
+		{
+			//face with list of vertices
+			int first = -1;
+			int prev = -1;
+			pos = skipSpace(buffer, pos+1, to);
+			while(pos < to)
+			{
+				int tokenEnd = skipToken(buffer, pos, to);
+				int vertex = parseVertex(buffer, pos, tokenEnd);
+				if(first == -1){
+					first = vertex;
+				}else{
+					addLine(prev, vertex);
+				}
+				prev = vertex;
+				pos = skipSpace(buffer, tokenEnd, to);
+			}
+			if(prev != first){
+				addLine(prev, first);
+			}
+		}
+	}
+	
+	/*
+	 * Parses a face vertex of the form v, v/t, v//n or v/t/n, returning the 
+	 * zero based point index. Negative indices count back from the latest 
+	 * point.
+	 */
+	private int parseVertex(byte[] buffer, int from, int to) throws ModelFormatException
+	{
+		boolean relative = from < to && buffer[from] == '-';
+		if(relative){
+			from++;
+		}
+		int pos = from;
+		long index = 0;
+		while(pos < to && isDigit(buffer[pos]))
+		{
+			index = index*10 + (buffer[pos]-'0');
+			if(index > Integer.MAX_VALUE){
+				throw new ModelFormatException("Bad vertex index for face");
+			}
+			pos++;
+		}
+		if(pos == from){
+			throw new ModelFormatException("Bad vertex format for face");
+		}
+		if(relative && index != 0){
+			index = pointOffset + numPoints + 1 - index;
+		}
+		if(index <= 0){
+			throw new ModelFormatException("Bad vertex index for face");
+		}
+		//texture and normal indices are unused, but may also be relative
+		int slashes = 0;
+		boolean sign = false;
+		for(; pos<to; pos++)
+		{
+			byte b = buffer[pos];
+			if(b == '/' && !sign){
+				slashes++;
+			}else if(b == '-' && buffer[pos-1] == '/'){
+				sign = true;
+			}else if(isDigit(b)){
+				sign = false;
+			}else{
+				slashes = 3;
+			}
+			if(slashes > 2){
+				throw new ModelFormatException("Bad vertex format for face");
+			}
+		}
+		if(sign){
+			throw new ModelFormatException("Bad vertex format for face");
+		}
+		return (int)index-1;
+	}
+	
+	private void addLine(int a, int b)
+	{
+		long key = a < b ? ((long)a << 32) | b : ((long)b << 32) | a;
+		int slot = hash(key) & edgeMask;
+		while(edgeSet[slot] != EMPTY)
+		{
+			if(edgeSet[slot] == key){
+				return;
+			}
+			slot = (slot+1) & edgeMask;
+		}
+		edgeSet[slot] = key;
+		
+		if(numLines*2 == ends.length){
+			ends = Arrays.copyOf(ends, ends.length*2);
+		}
+		ends[numLines*2] = a;
+		ends[numLines*2+1] = b;
+		numLines++;
+		
+		//keep the set at most half full
+		if(numLines*2 > edgeSet.length){
+			growEdgeSet();
+		}
+	}
+	
+	private void growEdgeSet()
+	{
+		long[] old = edgeSet;
+		edgeSet = new long[old.length*2];
+		edgeMask = edgeSet.length-1;
+		Arrays.fill(edgeSet, EMPTY);
+		for(long key : old)
+		{
+			if(key != EMPTY)
+			{
+				int slot = hash(key) & edgeMask;
+				while(edgeSet[slot] != EMPTY)
+				{
+					slot = (slot+1) & edgeMask;
+				}
+				edgeSet[slot] = key;
+			}
+		}
+	}
+	
+	private static int hash(long key)
+	{
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32));
+	}
+	
+	/*
+	 * Parses a decimal number. Where the digits fit in a long and the power 
+	 * of ten is exact, one multiply or divide gives the correctly rounded 
+	 * value; anything else is left to Double.parseDouble.
+	 */
+	private static double parseNumber(byte[] buffer, int from, int to) throws ModelFormatException
+	{
+		int pos = from;
+		boolean negative = false;
+		byte b = buffer[pos];
+		if(b == '-' || b == '+')
+		{
+			negative = b == '-';
+			pos++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int scale = 0;
+		boolean any = false;
+		boolean point = false;
+		for(; pos<to; pos++)
+		{
+			b = buffer[pos];
+			if(isDigit(b))
+			{
+				any = true;
+				if(mantissa != 0 || b != '0')
+				{
+					if(++digits > MAX_DIGITS){
+						return parseSlowly(buffer, from, to);
+					}
+					mantissa = mantissa*10 + (b-'0');
+				}
+				if(point){
+					scale--;
+				}
+			}
+			else if(b == '.' && !point)
+			{
+				point = true;
+			}
+			else
+			{
+				break;
+			}
+		}
+		if(pos < to)
+		{
+			//exponent
+			if(!any || (b != 'e' && b != 'E')){
+				return parseSlowly(buffer, from, to);
+			}
+			pos++;
+			boolean negativeExponent = false;
+			if(pos < to && (buffer[pos] == '-' || buffer[pos] == '+'))
+			{
+				negativeExponent = buffer[pos] == '-';
+				pos++;
+			}
+			int exponent = 0;
+			int start = pos;
+			for(; pos<to && isDigit(buffer[pos]); pos++)
+			{
+				if(exponent > 1000){
+					return parseSlowly(buffer, from, to);
+				}
+				exponent = exponent*10 + (buffer[pos]-'0');
+			}
+			if(pos == start || pos < to){
+				return parseSlowly(buffer, from, to);
+			}
+			scale += negativeExponent ? -exponent : exponent;
+		}
+		if(!any){
+			return parseSlowly(buffer, from, to);
+		}
+		
+		double value;
+		if(mantissa == 0){
+			value = 0.0;
+		}else if(mantissa < (1L << 53) && scale >= 0 && scale < POWERS_OF_TEN.length){
+			value = mantissa * POWERS_OF_TEN[scale];
+		}else if(mantissa < (1L << 53) && scale < 0 && -scale < POWERS_OF_TEN.length){
+			value = mantissa / POWERS_OF_TEN[-scale];
+		}else{
+			return parseSlowly(buffer, from, to);
+		}
+		return negative ? -value : value;
+	}
+	
+	private static double parseSlowly(byte[] buffer, int from, int to) throws ModelFormatException
+	{
+		byte[] bytes = new byte[to-from];
+		for(int i=0; i<bytes.length; i++)
+		{
+			bytes[i] = buffer[from+i];
+		}
+		try
+		{
+			return Double.parseDouble(new String(bytes, "US-ASCII"));
+		}
+		catch(NumberFormatException e)
+		{
+			throw new ModelFormatException("Bad coordinate value for vertex",e);
+		}
+		catch(UnsupportedEncodingException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private static int skipSpace(byte[] buffer, int pos, int to)
+	{
+		while(pos < to && isSpace(buffer[pos]))
+		{
+			pos++;
+		}
+		return pos;
+	}
+	
+	private static int skipToken(byte[] buffer, int pos, int to)
+	{
+		while(pos < to && !isSpace(buffer[pos]))
+		{
+			pos++;
+		}
+		return pos;
+	}
+	
+	private static boolean isSpace(byte b)
+	{
+		return b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == 0x0b;
+	}
+	
+	private static boolean isDigit(byte b)
+	{
+		return b >= '0' && b <= '9';
+	}
+}
@@ -0,0 +1,132 @@
+/*
+Copyright (c) 2008 Mark Frimston
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package uk.co.markfrimston.utils;
+
+/*
+ * A set of homogeneous 3D points stored as structure-of-arrays - one array
+ * for each coordinate - so that a transform can run straight down them.
+ * The arrays may be longer than the number of points.
+ */
+public final class PointBuffer
+{
+	public double[] xs;
+	public double[] ys;
+	public double[] zs;
+	public double[] ws;
+	private int size;
+	
+	public PointBuffer(int size)
+	{
+		this.xs = new double[size];
+		this.ys = new double[size];
+		this.zs = new double[size];
+		this.ws = new double[size];
+		this.size = size;
+	}
+	
+	/*
+	 * Makes a buffer of the given points, each of which is x,y,z with an 
+	 * optional w. Missing w values are taken to be 1.
+	 */
+	public PointBuffer(double[][] points)
+	{
+		this(points.length);
+		for(int i=0; i<size; i++)
+		{
+			double[] p = points[i];
+			xs[i] = p[0];
+			ys[i] = p[1];
+			zs[i] = p[2];
+			ws[i] = p.length > 3 ? p[3] : 1;
+		}
+	}
+	
+	/*
+	 * Makes a buffer of the columns of the given 4 x n matrix
+	 */
+	public PointBuffer(Matrix matrix)
+	{
+		this(matrix.getCols());
+		if(matrix.getRows() != 4){
+			throw new ArrayIndexOutOfBoundsException("Matrix must have 4 rows");
+		}
+		double[] data = matrix.getData();
+		System.arraycopy(data, 0, xs, 0, size);
+		System.arraycopy(data, size, ys, 0, size);
+		System.arraycopy(data, size*2, zs, 0, size);
+		System.arraycopy(data, size*3, ws, 0, size);
+	}
+	
+	public int size()
+	{
+		return size;
+	}
+	
+	public Vector4 get(int index)
+	{
+		return get(index, new Vector4());
+	}
+	
+	public Vector4 get(int index, Vector4 dest)
+	{
+		checkIndex(index);
+		return dest.set(xs[index], ys[index], zs[index], ws[index]);
+	}
+	
+	public void set(int index, double x, double y, double z, double w)
+	{
+		checkIndex(index);
+		xs[index] = x;
+		ys[index] = y;
+		zs[index] = z;
+		ws[index] = w;
+	}
+	
+	public void set(int index, Vector4 point)
+	{
+		set(index, point.x, point.y, point.z, point.w);
+	}
+	
+	/*
+	 * Returns the points as the columns of a 4 x n matrix
+	 */
+	public Matrix toMatrix()
+	{
+		double[] data = new double[size*4];
+		System.arraycopy(xs, 0, data, 0, size);
+		System.arraycopy(ys, 0, data, size, size);
+		System.arraycopy(zs, 0, data, size*2, size);
+		System.arraycopy(ws, 0, data, size*3, size);
+		return new Matrix(4, size, data);
+	}
+	
+	private void checkIndex(int index)
+	{
+		if(index < 0 || index >= size){
+			throw new ArrayIndexOutOfBoundsException(index);
+		}
+	}
+}
@@ -25,6 +25,7 @@ OTHER DEALINGS IN THE SOFTWARE.
 
 package uk.co.markfrimston.utils;
 
+import java.io.*;
 import java.util.*;
 import java.util.regex.*;
 
@@ -37,13 +38,41 @@ public class RegexUtils
 	
 	public static String allOrders(String[] sequence)
 	{
-		List<Sequence<Object>> result = SequenceUtils.combinations(Sequence.make(sequence));
-		List<String> result2 = new ArrayList<String>();
-		for(Sequence<Object> seq : result)
+		StringBuffer sb = new StringBuffer();
+		try
 		{
-			result2.add(SequenceUtils.toString(seq));
+			allOrders(sequence, sb);
 		}
-		return "("+StringUtils.implode(result2, "|")+")";
+		catch(IOException e)
+		{
+			//not thrown by string buffers
+			throw new RuntimeException(e);
+		}
+		return sb.toString();
+	}
+	
+	/*
+	 * Writes an alternation of every ordering of the sequence to out, one
+	 * ordering at a time
+	 */
+	public static void allOrders(String[] sequence, Appendable out)
+		throws IOException
+	{
+		out.append("(");
+		boolean first = true;
+		for(Sequence<Object> seq : SequenceUtils.permutations(Sequence.make(sequence)))
+		{
+			if(first){
+				first = false;
+			}else{
+				out.append("|");
+			}
+			for(Object item : seq)
+			{
+				out.append(String.valueOf(item));
+			}
+		}
+		out.append(")");
 	}
 	
 	/*
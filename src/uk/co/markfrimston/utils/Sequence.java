@@ -33,49 +33,68 @@ public abstract class Sequence<T> implements Collection<T>
 	private static class IntArraySequence extends Sequence<Integer>
 	{
 		private int[] array;
+		private int offset;
+		private int length;
 		
 		public IntArraySequence(int[] intArray)
+		{
+			this(intArray, 0, intArray.length);
+		}
+		
+		public IntArraySequence(int[] intArray, int offset, int length)
 		{
 			this.array = intArray;
+			this.offset = offset;
+			this.length = length;
 		}
 		
 		public Integer get(int i)
 		{
-			return array[i];
+			return array[offset+checkIndex(i, length)];
+		}
+		
+		public int getInt(int i)
+		{
+			return array[offset+checkIndex(i, length)];
+		}
+		
+		public Class<?> getPrimitiveType()
+		{
+			return Integer.TYPE;
+		}
+		
+		public int[] toIntArray()
+		{
+			return Arrays.copyOfRange(array, offset, offset+length);
 		}
 		
 		public int size()
 		{
-			return array.length;
+			return length;
 		}
 
 		public Sequence<Integer> append(Sequence<Integer> seq)
 		{
-			int[] out = new int[array.length+seq.size()];
-			System.arraycopy(array, 0, out, 0, array.length);
-			for(int i=0; i<seq.size(); i++)
-			{
-				out[array.length+i] = seq.get(i);
-			}
-			return Sequence.make(out);
+			return concat(this, seq);
 		}
 
 		public Sequence<Integer> subSequence(int beginIndex, int endIndex)
 		{
-			int[] out = new int[endIndex-beginIndex];
-			System.arraycopy(array, beginIndex, out, 0, endIndex-beginIndex);
-			return Sequence.make(out);
+			checkRange(beginIndex, endIndex, length);
+			return new IntArraySequence(array, offset+beginIndex, endIndex-beginIndex);
 		}
 
 		public Sequence<Integer> subSequence(int beginIndex)
 		{
 			return subSequence(beginIndex, this.size());
 		}
-
-		@Override
-		public int hashCode()
+		
+		public Sequence<Integer> compact()
 		{
-			return Arrays.hashCode(array);
+			if(offset==0 && length==array.length){
+				return this;
+			}
+			return new IntArraySequence(toIntArray());
 		}
 	}
 	
@@ -87,48 +106,68 @@ public abstract class Sequence<T> implements Collection<T>
 	private static class CharArraySequence extends Sequence<Character>
 	{
 		private char[] array;
+		private int offset;
+		private int length;
 		
 		public CharArraySequence(char[] charArray)
+		{
+			this(charArray, 0, charArray.length);
+		}
+		
+		public CharArraySequence(char[] charArray, int offset, int length)
 		{
 			this.array = charArray;
+			this.offset = offset;
+			this.length = length;
 		}
 		
 		public Character get(int i)
 		{
-			return array[i];
+			return array[offset+checkIndex(i, length)];
+		}
+		
+		public char getChar(int i)
+		{
+			return array[offset+checkIndex(i, length)];
+		}
+		
+		public Class<?> getPrimitiveType()
+		{
+			return Character.TYPE;
+		}
+		
+		public char[] toCharArray()
+		{
+			return Arrays.copyOfRange(array, offset, offset+length);
 		}
 		
 		public int size()
 		{
-			return array.length;
+			return length;
 		}
 
 		public Sequence<Character> append(Sequence<Character> seq)
 		{
-			char[] out = new char[array.length+seq.size()];
-			System.arraycopy(array, 0, out, 0, array.length);
-			for(int i=0; i<seq.size(); i++)
-			{
-				out[array.length+i] = seq.get(i);
-			}
-			return Sequence.make(out);
+			return concat(this, seq);
 		}
 
 		public Sequence<Character> subSequence(int beginIndex, int endIndex)
 		{
-			char[] out = new char[endIndex-beginIndex];
-			System.arraycopy(array, beginIndex, out, 0, endIndex-beginIndex);
-			return Sequence.make(out);
+			checkRange(beginIndex, endIndex, length);
+			return new CharArraySequence(array, offset+beginIndex, endIndex-beginIndex);
 		}
 
 		public Sequence<Character> subSequence(int beginIndex)
 		{
 			return subSequence(beginIndex, this.size());
-		}	
+		}
 		
-		public int hashCode()
+		public Sequence<Character> compact()
 		{
-			return Arrays.hashCode(array);
+			if(offset==0 && length==array.length){
+				return this;
+			}
+			return new CharArraySequence(toCharArray());
 		}
 	}
 	
@@ -140,48 +179,68 @@ public abstract class Sequence<T> implements Collection<T>
 	private static class ShortArraySequence extends Sequence<Short>
 	{
 		private short[] array;
+		private int offset;
+		private int length;
 		
 		public ShortArraySequence(short[] shortArray)
+		{
+			this(shortArray, 0, shortArray.length);
+		}
+		
+		public ShortArraySequence(short[] shortArray, int offset, int length)
 		{
 			this.array = shortArray;
+			this.offset = offset;
+			this.length = length;
 		}
 		
 		public Short get(int i)
 		{
-			return array[i];
+			return array[offset+checkIndex(i, length)];
 		}
 		
-		public int size()
+		public short getShort(int i)
+		{
+			return array[offset+checkIndex(i, length)];
+		}
+		
+		public Class<?> getPrimitiveType()
+		{
+			return Short.TYPE;
+		}
+		
+		public short[] toShortArray()
 		{
-			return array.length;
+			return Arrays.copyOfRange(array, offset, offset+length);
 		}
 		
+		public int size()
+		{
+			return length;
+		}
+
 		public Sequence<Short> append(Sequence<Short> seq)
 		{
-			short[] out = new short[array.length+seq.size()];
-			System.arraycopy(array, 0, out, 0, array.length);
-			for(int i=0; i<seq.size(); i++)
-			{
-				out[array.length+i] = seq.get(i);
-			}
-			return Sequence.make(out);
+			return concat(this, seq);
 		}
 
 		public Sequence<Short> subSequence(int beginIndex, int endIndex)
 		{
-			short[] out = new short[endIndex-beginIndex];
-			System.arraycopy(array, beginIndex, out, 0, endIndex-beginIndex);
-			return Sequence.make(out);
+			checkRange(beginIndex, endIndex, length);
+			return new ShortArraySequence(array, offset+beginIndex, endIndex-beginIndex);
 		}
 
 		public Sequence<Short> subSequence(int beginIndex)
 		{
 			return subSequence(beginIndex, this.size());
-		}	
+		}
 		
-		public int hashCode()
+		public Sequence<Short> compact()
 		{
-			return Arrays.hashCode(array);
+			if(offset==0 && length==array.length){
+				return this;
+			}
+			return new ShortArraySequence(toShortArray());
 		}
 	}
 	
@@ -193,48 +252,68 @@ public abstract class Sequence<T> implements Collection<T>
 	private static class ByteArraySequence extends Sequence<Byte>
 	{
 		private byte[] array;
+		private int offset;
+		private int length;
 		
 		public ByteArraySequence(byte[] byteArray)
+		{
+			this(byteArray, 0, byteArray.length);
+		}
+		
+		public ByteArraySequence(byte[] byteArray, int offset, int length)
 		{
 			this.array = byteArray;
+			this.offset = offset;
+			this.length = length;
 		}
 		
 		public Byte get(int i)
 		{
-			return array[i];
+			return array[offset+checkIndex(i, length)];
 		}
 		
-		public int size()
+		public byte getByte(int i)
+		{
+			return array[offset+checkIndex(i, length)];
+		}
+		
+		public Class<?> getPrimitiveType()
+		{
+			return Byte.TYPE;
+		}
+		
+		public byte[] toByteArray()
 		{
-			return array.length;
+			return Arrays.copyOfRange(array, offset, offset+length);
 		}
 		
+		public int size()
+		{
+			return length;
+		}
+
 		public Sequence<Byte> append(Sequence<Byte> seq)
 		{
-			byte[] out = new byte[array.length+seq.size()];
-			System.arraycopy(array, 0, out, 0, array.length);
-			for(int i=0; i<seq.size(); i++)
-			{
-				out[array.length+i] = seq.get(i);
-			}
-			return Sequence.make(out);
+			return concat(this, seq);
 		}
 
 		public Sequence<Byte> subSequence(int beginIndex, int endIndex)
 		{
-			byte[] out = new byte[endIndex-beginIndex];
-			System.arraycopy(array, beginIndex, out, 0, endIndex-beginIndex);
-			return Sequence.make(out);
+			checkRange(beginIndex, endIndex, length);
+			return new ByteArraySequence(array, offset+beginIndex, endIndex-beginIndex);
 		}
 
 		public Sequence<Byte> subSequence(int beginIndex)
 		{
 			return subSequence(beginIndex, this.size());
-		}	
+		}
 		
-		public int hashCode()
+		public Sequence<Byte> compact()
 		{
-			return Arrays.hashCode(array);
+			if(offset==0 && length==array.length){
+				return this;
+			}
+			return new ByteArraySequence(toByteArray());
 		}
 	}
 	
@@ -246,48 +325,68 @@ public abstract class Sequence<T> implements Collection<T>
 	private static class LongArraySequence extends Sequence<Long>
 	{
 		private long[] array;
+		private int offset;
+		private int length;
 		
 		public LongArraySequence(long[] longArray)
+		{
+			this(longArray, 0, longArray.length);
+		}
+		
+		public LongArraySequence(long[] longArray, int offset, int length)
 		{
 			this.array = longArray;
+			this.offset = offset;
+			this.length = length;
 		}
 		
 		public Long get(int i)
 		{
-			return array[i];
+			return array[offset+checkIndex(i, length)];
 		}
 		
-		public int size()
+		public long getLong(int i)
+		{
+			return array[offset+checkIndex(i, length)];
+		}
+		
+		public Class<?> getPrimitiveType()
 		{
-			return array.length;
+			return Long.TYPE;
 		}
 		
+		public long[] toLongArray()
+		{
+			return Arrays.copyOfRange(array, offset, offset+length);
+		}
+		
+		public int size()
+		{
+			return length;
+		}
+
 		public Sequence<Long> append(Sequence<Long> seq)
 		{
-			long[] out = new long[array.length+seq.size()];
-			System.arraycopy(array, 0, out, 0, array.length);
-			for(int i=0; i<seq.size(); i++)
-			{
-				out[array.length+i] = seq.get(i);
-			}
-			return Sequence.make(out);
+			return concat(this, seq);
 		}
 
 		public Sequence<Long> subSequence(int beginIndex, int endIndex)
 		{
-			long[] out = new long[endIndex-beginIndex];
-			System.arraycopy(array, beginIndex, out, 0, endIndex-beginIndex);
-			return Sequence.make(out);
+			checkRange(beginIndex, endIndex, length);
+			return new LongArraySequence(array, offset+beginIndex, endIndex-beginIndex);
 		}
 
 		public Sequence<Long> subSequence(int beginIndex)
 		{
 			return subSequence(beginIndex, this.size());
-		}	
+		}
 		
-		public int hashCode()
+		public Sequence<Long> compact()
 		{
-			return Arrays.hashCode(array);
+			if(offset==0 && length==array.length){
+				return this;
+			}
+			return new LongArraySequence(toLongArray());
 		}
 	}
 	
@@ -299,48 +398,68 @@ public abstract class Sequence<T> implements Collection<T>
 	private static class FloatArraySequence extends Sequence<Float>
 	{
 		private float[] array;
+		private int offset;
+		private int length;
 		
 		public FloatArraySequence(float[] floatArray)
+		{
+			this(floatArray, 0, floatArray.length);
+		}
+		
+		public FloatArraySequence(float[] floatArray, int offset, int length)
 		{
 			this.array = floatArray;
+			this.offset = offset;
+			this.length = length;
 		}
 		
 		public Float get(int i)
 		{
-			return array[i];
+			return array[offset+checkIndex(i, length)];
 		}
 		
-		public int size()
+		public float getFloat(int i)
 		{
-			return array.length;
+			return array[offset+checkIndex(i, length)];
 		}
 		
+		public Class<?> getPrimitiveType()
+		{
+			return Float.TYPE;
+		}
+		
+		public float[] toFloatArray()
+		{
+			return Arrays.copyOfRange(array, offset, offset+length);
+		}
+		
+		public int size()
+		{
+			return length;
+		}
+
 		public Sequence<Float> append(Sequence<Float> seq)
 		{
-			float[] out = new float[array.length+seq.size()];
-			System.arraycopy(array, 0, out, 0, array.length);
-			for(int i=0; i<seq.size(); i++)
-			{
-				out[array.length+i] = seq.get(i);
-			}
-			return Sequence.make(out);
+			return concat(this, seq);
 		}
 
 		public Sequence<Float> subSequence(int beginIndex, int endIndex)
 		{
-			float[] out = new float[endIndex-beginIndex];
-			System.arraycopy(array, beginIndex, out, 0, endIndex-beginIndex);
-			return Sequence.make(out);
+			checkRange(beginIndex, endIndex, length);
+			return new FloatArraySequence(array, offset+beginIndex, endIndex-beginIndex);
 		}
 
 		public Sequence<Float> subSequence(int beginIndex)
 		{
 			return subSequence(beginIndex, this.size());
-		}	
+		}
 		
-		public int hashCode()
+		public Sequence<Float> compact()
 		{
-			return Arrays.hashCode(array);
+			if(offset==0 && length==array.length){
+				return this;
+			}
+			return new FloatArraySequence(toFloatArray());
 		}
 	}
 	
@@ -352,48 +471,68 @@ public abstract class Sequence<T> implements Collection<T>
 	private static class DoubleArraySequence extends Sequence<Double>
 	{
 		private double[] array;
+		private int offset;
+		private int length;
 		
 		public DoubleArraySequence(double[] doubleArray)
+		{
+			this(doubleArray, 0, doubleArray.length);
+		}
+		
+		public DoubleArraySequence(double[] doubleArray, int offset, int length)
 		{
 			this.array = doubleArray;
+			this.offset = offset;
+			this.length = length;
 		}
 		
 		public Double get(int i)
 		{
-			return array[i];
+			return array[offset+checkIndex(i, length)];
 		}
 		
-		public int size()
+		public double getDouble(int i)
 		{
-			return array.length;
+			return array[offset+checkIndex(i, length)];
 		}
 		
+		public Class<?> getPrimitiveType()
+		{
+			return Double.TYPE;
+		}
+		
+		public double[] toDoubleArray()
+		{
+			return Arrays.copyOfRange(array, offset, offset+length);
+		}
+		
+		public int size()
+		{
+			return length;
+		}
+
 		public Sequence<Double> append(Sequence<Double> seq)
 		{
-			double[] out = new double[array.length+seq.size()];
-			System.arraycopy(array, 0, out, 0, array.length);
-			for(int i=0; i<seq.size(); i++)
-			{
-				out[array.length+i] = seq.get(i);
-			}
-			return Sequence.make(out);
+			return concat(this, seq);
 		}
 
 		public Sequence<Double> subSequence(int beginIndex, int endIndex)
 		{
-			double[] out = new double[endIndex-beginIndex];
-			System.arraycopy(array, beginIndex, out, 0, endIndex-beginIndex);
-			return Sequence.make(out);
+			checkRange(beginIndex, endIndex, length);
+			return new DoubleArraySequence(array, offset+beginIndex, endIndex-beginIndex);
 		}
 
 		public Sequence<Double> subSequence(int beginIndex)
 		{
 			return subSequence(beginIndex, this.size());
-		}	
+		}
 		
-		public int hashCode()
+		public Sequence<Double> compact()
 		{
-			return Arrays.hashCode(array);
+			if(offset==0 && length==array.length){
+				return this;
+			}
+			return new DoubleArraySequence(toDoubleArray());
 		}
 	}
 	
@@ -405,48 +544,68 @@ public abstract class Sequence<T> implements Collection<T>
 	private static class BooleanArraySequence extends Sequence<Boolean>
 	{
 		private boolean[] array;
+		private int offset;
+		private int length;
 		
 		public BooleanArraySequence(boolean[] booleanArray)
+		{
+			this(booleanArray, 0, booleanArray.length);
+		}
+		
+		public BooleanArraySequence(boolean[] booleanArray, int offset, int length)
 		{
 			this.array = booleanArray;
+			this.offset = offset;
+			this.length = length;
 		}
 		
 		public Boolean get(int i)
 		{
-			return array[i];
+			return array[offset+checkIndex(i, length)];
 		}
 		
-		public int size()
+		public boolean getBoolean(int i)
+		{
+			return array[offset+checkIndex(i, length)];
+		}
+		
+		public Class<?> getPrimitiveType()
+		{
+			return Boolean.TYPE;
+		}
+		
+		public boolean[] toBooleanArray()
 		{
-			return array.length;
+			return Arrays.copyOfRange(array, offset, offset+length);
 		}
 		
+		public int size()
+		{
+			return length;
+		}
+
 		public Sequence<Boolean> append(Sequence<Boolean> seq)
 		{
-			boolean[] out = new boolean[array.length+seq.size()];
-			System.arraycopy(array, 0, out, 0, array.length);
-			for(int i=0; i<seq.size(); i++)
-			{
-				out[array.length+i] = seq.get(i);
-			}
-			return Sequence.make(out);
+			return concat(this, seq);
 		}
 
 		public Sequence<Boolean> subSequence(int beginIndex, int endIndex)
 		{
-			boolean[] out = new boolean[endIndex-beginIndex];
-			System.arraycopy(array, beginIndex, out, 0, endIndex-beginIndex);
-			return Sequence.make(out);
+			checkRange(beginIndex, endIndex, length);
+			return new BooleanArraySequence(array, offset+beginIndex, endIndex-beginIndex);
 		}
 
 		public Sequence<Boolean> subSequence(int beginIndex)
 		{
 			return subSequence(beginIndex, this.size());
-		}	
+		}
 		
-		public int hashCode()
+		public Sequence<Boolean> compact()
 		{
-			return Arrays.hashCode(array);
+			if(offset==0 && length==array.length){
+				return this;
+			}
+			return new BooleanArraySequence(toBooleanArray());
 		}
 	}
 	
@@ -458,48 +617,53 @@ public abstract class Sequence<T> implements Collection<T>
 	private static class ObjectArraySequence extends Sequence<Object>
 	{
 		private Object[] array;
+		private int offset;
+		private int length;
 		
 		public ObjectArraySequence(Object[] objectArray)
+		{
+			this(objectArray, 0, objectArray.length);
+		}
+		
+		public ObjectArraySequence(Object[] objectArray, int offset, int length)
 		{
 			this.array = objectArray;
+			this.offset = offset;
+			this.length = length;
 		}
 		
 		public Object get(int i)
 		{
-			return array[i];
+			return array[offset+checkIndex(i, length)];
 		}
 		
 		public int size()
 		{
-			return array.length;
+			return length;
 		}
-		
+
 		public Sequence<Object> append(Sequence<Object> seq)
 		{
-			Object[] out = new Object[array.length+seq.size()];
-			System.arraycopy(array, 0, out, 0, array.length);
-			for(int i=0; i<seq.size(); i++)
-			{
-				out[array.length+i] = seq.get(i);
-			}
-			return Sequence.make(out);
+			return concat(this, seq);
 		}
 
 		public Sequence<Object> subSequence(int beginIndex, int endIndex)
 		{
-			Object[] out = new Object[endIndex-beginIndex];
-			System.arraycopy(array, beginIndex, out, 0, endIndex-beginIndex);
-			return Sequence.make(out);
+			checkRange(beginIndex, endIndex, length);
+			return new ObjectArraySequence(array, offset+beginIndex, endIndex-beginIndex);
 		}
 
 		public Sequence<Object> subSequence(int beginIndex)
 		{
 			return subSequence(beginIndex, this.size());
-		}	
+		}
 		
-		public int hashCode()
+		public Sequence<Object> compact()
 		{
-			return Arrays.hashCode(array);
+			if(offset==0 && length==array.length){
+				return this;
+			}
+			return new ObjectArraySequence(Arrays.copyOfRange(array, offset, offset+length));
 		}
 	}
 	
@@ -508,6 +672,11 @@ public abstract class Sequence<T> implements Collection<T>
 		return new ObjectArraySequence(objectArray);
 	}
 	
+	/*
+	 * Reads through to the list it was made from, so changes to the list show
+	 * through. Appending copies the list, as a view over it would go stale as
+	 * soon as the list changed size.
+	 */
 	private static class ListSequence<T> extends Sequence<T>
 	{
 		private List<T> list;
@@ -529,13 +698,7 @@ public abstract class Sequence<T> implements Collection<T>
 		
 		public Sequence<T> append(Sequence<T> seq)
 		{
-			List<T> newList = new ArrayList<T>();
-			newList.addAll(list);
-			for(int i=0; i<seq.size(); i++)
-			{
-				newList.add(seq.get(i));
-			}
-			return Sequence.make(newList);
+			return concat(this, seq);
 		}
 
 		public Sequence<T> subSequence(int beginIndex, int endIndex)
@@ -562,36 +725,50 @@ public abstract class Sequence<T> implements Collection<T>
 	private static class StringSequence extends Sequence<Character>
 	{
 		private CharSequence chars;
+		private int offset;
+		private int length;
 		
 		public StringSequence(CharSequence chars)
+		{
+			this(chars, 0, chars.length());
+		}
+		
+		public StringSequence(CharSequence chars, int offset, int length)
 		{
 			this.chars = chars;
+			this.offset = offset;
+			this.length = length;
 		}
 		
 		public Character get(int i)
 		{
-			return chars.charAt(i);
+			return chars.charAt(offset+checkIndex(i, length));
+		}
+		
+		public char getChar(int i)
+		{
+			return chars.charAt(offset+checkIndex(i, length));
+		}
+		
+		public Class<?> getPrimitiveType()
+		{
+			return Character.TYPE;
 		}
 		
 		public int size()
 		{
-			return chars.length();
+			return length;
 		}
 		
 		public Sequence<Character> append(Sequence<Character> seq)
 		{
-			StringBuffer sb = new StringBuffer();
-			sb.append(chars);
-			for(int i=0; i<seq.size(); i++)
-			{
-				sb.append(seq.get(i));
-			}
-			return Sequence.make(sb.toString());
+			return concat(this, seq);
 		}
 
 		public Sequence<Character> subSequence(int beginIndex, int endIndex)
 		{
-			return Sequence.make(chars.subSequence(beginIndex, endIndex));
+			checkRange(beginIndex, endIndex, length);
+			return new StringSequence(chars, offset+beginIndex, endIndex-beginIndex);
 		}
 
 		public Sequence<Character> subSequence(int beginIndex)
@@ -599,9 +776,12 @@ public abstract class Sequence<T> implements Collection<T>
 			return subSequence(beginIndex, size());
 		}	
 		
-		public int hashCode()
+		public Sequence<Character> compact()
 		{
-			return chars.hashCode();
+			if(offset==0 && length==chars.length()){
+				return this;
+			}
+			return Sequence.make(chars.subSequence(offset, offset+length).toString());
 		}
 	}
 	
@@ -610,6 +790,196 @@ public abstract class Sequence<T> implements Collection<T>
 		return new StringSequence(chars);
 	}
 	
+	/*
+	 * Result of appending one sequence to another - reads through to the two
+	 * halves rather than copying them. Nesting is limited by compacting once
+	 * the tree gets too deep, and short results are compacted straight away.
+	 */
+	private static class ConcatSequence<T> extends Sequence<T>
+	{
+		private static final int MAX_DEPTH = 32;
+		private static final int MIN_SIZE = 16;
+		
+		private Sequence<T> left;
+		private Sequence<T> right;
+		private int leftSize;
+		private int size;
+		private int depth;
+		
+		public ConcatSequence(Sequence<T> left, Sequence<T> right)
+		{
+			this.left = left;
+			this.right = right;
+			this.leftSize = left.size();
+			this.size = leftSize + right.size();
+			this.depth = Math.max(depthOf(left), depthOf(right)) + 1;
+		}
+		
+		private static int depthOf(Sequence<?> seq)
+		{
+			return seq instanceof ConcatSequence<?> ? ((ConcatSequence<?>)seq).depth : 0;
+		}
+		
+		public T get(int i)
+		{
+			checkIndex(i, size);
+			return i < leftSize ? left.get(i) : right.get(i-leftSize);
+		}
+		
+		public int getInt(int i)
+		{
+			checkIndex(i, size);
+			return i < leftSize ? left.getInt(i) : right.getInt(i-leftSize);
+		}
+		
+		public char getChar(int i)
+		{
+			checkIndex(i, size);
+			return i < leftSize ? left.getChar(i) : right.getChar(i-leftSize);
+		}
+		
+		public short getShort(int i)
+		{
+			checkIndex(i, size);
+			return i < leftSize ? left.getShort(i) : right.getShort(i-leftSize);
+		}
+		
+		public byte getByte(int i)
+		{
+			checkIndex(i, size);
+			return i < leftSize ? left.getByte(i) : right.getByte(i-leftSize);
+		}
+		
+		public long getLong(int i)
+		{
+			checkIndex(i, size);
+			return i < leftSize ? left.getLong(i) : right.getLong(i-leftSize);
+		}
+		
+		public float getFloat(int i)
+		{
+			checkIndex(i, size);
+			return i < leftSize ? left.getFloat(i) : right.getFloat(i-leftSize);
+		}
+		
+		public double getDouble(int i)
+		{
+			checkIndex(i, size);
+			return i < leftSize ? left.getDouble(i) : right.getDouble(i-leftSize);
+		}
+		
+		public boolean getBoolean(int i)
+		{
+			checkIndex(i, size);
+			return i < leftSize ? left.getBoolean(i) : right.getBoolean(i-leftSize);
+		}
+		
+		public Class<?> getPrimitiveType()
+		{
+			Class<?> type = left.getPrimitiveType();
+			return type == right.getPrimitiveType() ? type : null;
+		}
+		
+		public int size()
+		{
+			return size;
+		}
+		
+		public Sequence<T> append(Sequence<T> seq)
+		{
+			return concat(this, seq);
+		}
+		
+		public Sequence<T> subSequence(int beginIndex, int endIndex)
+		{
+			checkRange(beginIndex, endIndex, size);
+			if(endIndex <= leftSize)
+			{
+				return left.subSequence(beginIndex, endIndex);
+			}
+			else if(beginIndex >= leftSize)
+			{
+				return right.subSequence(beginIndex-leftSize, endIndex-leftSize);
+			}
+			else
+			{
+				return concat(left.subSequence(beginIndex), 
+						right.subSequence(0, endIndex-leftSize));
+			}
+		}
+		
+		public Sequence<T> subSequence(int beginIndex)
+		{
+			return subSequence(beginIndex, size());
+		}
+		
+		@SuppressWarnings("unchecked")
+		public Sequence<T> compact()
+		{
+			//materialise as the type of the left hand side, as appending to an
+			//array sequence used to. A primitive type here is always the boxed T.
+			Class<?> type = left.getPrimitiveType();
+			Sequence<?> out;
+			if(type == Integer.TYPE){
+				out = Sequence.make(toIntArray());
+			}else if(type == Character.TYPE){
+				out = Sequence.make(toCharArray());
+			}else if(type == Short.TYPE){
+				out = Sequence.make(toShortArray());
+			}else if(type == Byte.TYPE){
+				out = Sequence.make(toByteArray());
+			}else if(type == Long.TYPE){
+				out = Sequence.make(toLongArray());
+			}else if(type == Float.TYPE){
+				out = Sequence.make(toFloatArray());
+			}else if(type == Double.TYPE){
+				out = Sequence.make(toDoubleArray());
+			}else if(type == Boolean.TYPE){
+				out = Sequence.make(toBooleanArray());
+			}else{
+				List<T> list = new ArrayList<T>(size);
+				for(int i=0; i<size; i++)
+				{
+					list.add(get(i));
+				}
+				out = Sequence.make(list);
+			}
+			return (Sequence<T>)out;
+		}
+	}
+	
+	protected static <T> Sequence<T> concat(Sequence<T> left, Sequence<T> right)
+	{
+		//halves are held with their sizes, so a list that may change is copied
+		if(left instanceof ListSequence<?>){
+			left = new ListSequence<T>(new ArrayList<T>(((ListSequence<T>)left).list));
+		}
+		if(right instanceof ListSequence<?>){
+			right = new ListSequence<T>(new ArrayList<T>(((ListSequence<T>)right).list));
+		}
+		ConcatSequence<T> seq = new ConcatSequence<T>(left, right);
+		if(seq.size <= ConcatSequence.MIN_SIZE || seq.depth > ConcatSequence.MAX_DEPTH)
+		{
+			return seq.compact();
+		}
+		return seq;
+	}
+	
+	protected static int checkIndex(int i, int size)
+	{
+		if(i < 0 || i >= size){
+			throw new IndexOutOfBoundsException("Index: "+i+", Size: "+size);
+		}
+		return i;
+	}
+	
+	protected static void checkRange(int beginIndex, int endIndex, int size)
+	{
+		if(beginIndex < 0 || endIndex > size || beginIndex > endIndex){
+			throw new IndexOutOfBoundsException("Range: "+beginIndex+"-"+endIndex+", Size: "+size);
+		}
+	}
+	
 	private static class SequenceIterator<T> implements Iterator<T>
 	{
 		private int pos = 0;
@@ -641,6 +1011,87 @@ public abstract class Sequence<T> implements Collection<T>
 		}	
 	}
 	
+	/*
+	 * Forward-only position over a sequence whose next methods read elements
+	 * through the primitive accessors, so iterating a primitive-backed sequence
+	 * doesn't box each element as the standard iterator must.
+	 */
+	public static class Cursor
+	{
+		private int pos = 0;
+		private int size;
+		private Sequence<?> seq;
+		
+		public Cursor(Sequence<?> seq)
+		{
+			this.seq = seq;
+			this.size = seq.size();
+		}
+		
+		public boolean hasNext()
+		{
+			return pos < size;
+		}
+		
+		public int position()
+		{
+			return pos;
+		}
+		
+		public void reset()
+		{
+			pos = 0;
+		}
+		
+		private int advance()
+		{
+			if(!hasNext()){
+				throw new NoSuchElementException();
+			}
+			return pos++;
+		}
+		
+		public int nextInt()
+		{
+			return seq.getInt(advance());
+		}
+		
+		public char nextChar()
+		{
+			return seq.getChar(advance());
+		}
+		
+		public short nextShort()
+		{
+			return seq.getShort(advance());
+		}
+		
+		public byte nextByte()
+		{
+			return seq.getByte(advance());
+		}
+		
+		public long nextLong()
+		{
+			return seq.getLong(advance());
+		}
+		
+		public float nextFloat()
+		{
+			return seq.getFloat(advance());
+		}
+		
+		public double nextDouble()
+		{
+			return seq.getDouble(advance());
+		}
+		
+		public boolean nextBoolean()
+		{
+			return seq.getBoolean(advance());
+		}
+	}
+	
 	public static boolean isSequenceable(Object o)
 	{
 		if(o instanceof Object[] || o instanceof byte[] || o instanceof char[] 
@@ -709,7 +1160,184 @@ public abstract class Sequence<T> implements Collection<T>
 	public abstract Sequence<T> subSequence(int beginIndex);
 	public abstract Sequence<T> subSequence(int beginIndex, int endIndex);
 	public abstract Sequence<T> append(Sequence<T> seq);
-	public abstract int hashCode();
+	
+	/*
+	 * Sub-sequences and appended sequences are views onto the sequences they
+	 * were made from, other than list-backed halves of an append, which are 
+	 * copied. Returns a sequence with the same content held in its own
+	 * contiguous storage, which may be this sequence if it is already compact.
+	 */
+	public Sequence<T> compact()
+	{
+		return this;
+	}
+	
+	/*
+	 * Hashes as List does, reading elements through the primitive accessors
+	 * where possible
+	 */
+	public int hashCode()
+	{
+		int size = size();
+		int hash = 1;
+		Class<?> type = getPrimitiveType();
+		if(type == Integer.TYPE)
+		{
+			for(int i=0; i<size; i++){
+				hash = 31*hash + getInt(i);
+			}
+		}
+		else if(type == Character.TYPE)
+		{
+			for(int i=0; i<size; i++){
+				hash = 31*hash + getChar(i);
+			}
+		}
+		else if(type == Short.TYPE)
+		{
+			for(int i=0; i<size; i++){
+				hash = 31*hash + getShort(i);
+			}
+		}
+		else if(type == Byte.TYPE)
+		{
+			for(int i=0; i<size; i++){
+				hash = 31*hash + getByte(i);
+			}
+		}
+		else if(type == Long.TYPE)
+		{
+			for(int i=0; i<size; i++){
+				long value = getLong(i);
+				hash = 31*hash + (int)(value^(value>>>32));
+			}
+		}
+		else if(type == Float.TYPE)
+		{
+			for(int i=0; i<size; i++){
+				hash = 31*hash + Float.floatToIntBits(getFloat(i));
+			}
+		}
+		else if(type == Double.TYPE)
+		{
+			for(int i=0; i<size; i++){
+				long bits = Double.doubleToLongBits(getDouble(i));
+				hash = 31*hash + (int)(bits^(bits>>>32));
+			}
+		}
+		else if(type == Boolean.TYPE)
+		{
+			for(int i=0; i<size; i++){
+				hash = 31*hash + (getBoolean(i) ? 1231 : 1237);
+			}
+		}
+		else
+		{
+			for(int i=0; i<size; i++){
+				T item = get(i);
+				hash = 31*hash + (item==null ? 0 : item.hashCode());
+			}
+		}
+		return hash;
+	}
+	
+	/*
+	 * Primitive accessors. Sequences backed by primitive values override the
+	 * accessor for their own type to avoid boxing - the defaults here unbox
+	 * the result of get.
+	 */
+	public int getInt(int i)
+	{
+		return ((Number)get(i)).intValue();
+	}
+	
+	public char getChar(int i)
+	{
+		return ((Character)get(i)).charValue();
+	}
+	
+	public short getShort(int i)
+	{
+		return ((Number)get(i)).shortValue();
+	}
+	
+	public byte getByte(int i)
+	{
+		return ((Number)get(i)).byteValue();
+	}
+	
+	public long getLong(int i)
+	{
+		return ((Number)get(i)).longValue();
+	}
+	
+	public float getFloat(int i)
+	{
+		return ((Number)get(i)).floatValue();
+	}
+	
+	public double getDouble(int i)
+	{
+		return ((Number)get(i)).doubleValue();
+	}
+	
+	public boolean getBoolean(int i)
+	{
+		return ((Boolean)get(i)).booleanValue();
+	}
+	
+	/*
+	 * Returns the primitive type (e.g. Integer.TYPE) whose accessor reads this
+	 * sequence without boxing, or null if elements are only available as objects
+	 */
+	public Class<?> getPrimitiveType()
+	{
+		return null;
+	}
+	
+	public Cursor cursor()
+	{
+		return new Cursor(this);
+	}
+	
+	/*
+	 * Compares element i of sequence a with element j of sequence b, reading
+	 * both through the primitive accessors when they share a primitive type.
+	 * Floating point values compare as their boxed equals would.
+	 */
+	public static boolean elementsEqual(Sequence<?> a, int i, Sequence<?> b, int j)
+	{
+		Class<?> type = a.getPrimitiveType();
+		if(type != null && type == b.getPrimitiveType())
+		{
+			return elementsEqual(type, a, i, b, j);
+		}
+		Object itemA = a.get(i);
+		return itemA==null ? b.get(j)==null : itemA.equals(b.get(j));
+	}
+	
+	private static boolean elementsEqual(Class<?> type, Sequence<?> a, int i, Sequence<?> b, int j)
+	{
+		if(type == Integer.TYPE){
+			return a.getInt(i) == b.getInt(j);
+		}else if(type == Character.TYPE){
+			return a.getChar(i) == b.getChar(j);
+		}else if(type == Short.TYPE){
+			return a.getShort(i) == b.getShort(j);
+		}else if(type == Byte.TYPE){
+			return a.getByte(i) == b.getByte(j);
+		}else if(type == Long.TYPE){
+			return a.getLong(i) == b.getLong(j);
+		}else if(type == Float.TYPE){
+			return Float.floatToIntBits(a.getFloat(i)) == Float.floatToIntBits(b.getFloat(j));
+		}else if(type == Double.TYPE){
+			return Double.doubleToLongBits(a.getDouble(i)) == Double.doubleToLongBits(b.getDouble(j));
+		}else if(type == Boolean.TYPE){
+			return a.getBoolean(i) == b.getBoolean(j);
+		}else{
+			return a.get(i).equals(b.get(j));
+		}
+	}
 	
 	public boolean equals(Object obj)
 	{
@@ -724,6 +1352,11 @@ public abstract class Sequence<T> implements Collection<T>
 		if(size() != seq.size()){
 			return false;
 		}
+		Class<?> type = getPrimitiveType();
+		if(type != null && type == seq.getPrimitiveType())
+		{
+			return primitiveEquals(type, seq);
+		}
 		for(int i=0; i<size(); i++)
 		{
 			if(!get(i).equals(seq.get(i))){
@@ -733,6 +1366,145 @@ public abstract class Sequence<T> implements Collection<T>
 		return true;
 	}
 	
+	private boolean primitiveEquals(Class<?> type, Sequence<?> seq)
+	{
+		int size = size();
+		if(type == Integer.TYPE)
+		{
+			for(int i=0; i<size; i++){
+				if(getInt(i) != seq.getInt(i)) return false;
+			}
+		}
+		else if(type == Character.TYPE)
+		{
+			for(int i=0; i<size; i++){
+				if(getChar(i) != seq.getChar(i)) return false;
+			}
+		}
+		else if(type == Short.TYPE)
+		{
+			for(int i=0; i<size; i++){
+				if(getShort(i) != seq.getShort(i)) return false;
+			}
+		}
+		else if(type == Byte.TYPE)
+		{
+			for(int i=0; i<size; i++){
+				if(getByte(i) != seq.getByte(i)) return false;
+			}
+		}
+		else if(type == Long.TYPE)
+		{
+			for(int i=0; i<size; i++){
+				if(getLong(i) != seq.getLong(i)) return false;
+			}
+		}
+		else if(type == Float.TYPE)
+		{
+			for(int i=0; i<size; i++){
+				if(Float.floatToIntBits(getFloat(i)) != Float.floatToIntBits(seq.getFloat(i))) return false;
+			}
+		}
+		else if(type == Double.TYPE)
+		{
+			for(int i=0; i<size; i++){
+				if(Double.doubleToLongBits(getDouble(i)) != Double.doubleToLongBits(seq.getDouble(i))) return false;
+			}
+		}
+		else if(type == Boolean.TYPE)
+		{
+			for(int i=0; i<size; i++){
+				if(getBoolean(i) != seq.getBoolean(i)) return false;
+			}
+		}
+		return true;
+	}
+	
+	/*
+	 * Returns the index of the first element equal to o, or -1 if there is none
+	 */
+	public int indexOf(Object o)
+	{
+		int size = size();
+		Class<?> type = getPrimitiveType();
+		if(type == Integer.TYPE && o instanceof Integer)
+		{
+			int value = (Integer)o;
+			for(int i=0; i<size; i++){
+				if(getInt(i) == value) return i;
+			}
+			return -1;
+		}
+		else if(type == Character.TYPE && o instanceof Character)
+		{
+			char value = (Character)o;
+			for(int i=0; i<size; i++){
+				if(getChar(i) == value) return i;
+			}
+			return -1;
+		}
+		else if(type == Short.TYPE && o instanceof Short)
+		{
+			short value = (Short)o;
+			for(int i=0; i<size; i++){
+				if(getShort(i) == value) return i;
+			}
+			return -1;
+		}
+		else if(type == Byte.TYPE && o instanceof Byte)
+		{
+			byte value = (Byte)o;
+			for(int i=0; i<size; i++){
+				if(getByte(i) == value) return i;
+			}
+			return -1;
+		}
+		else if(type == Long.TYPE && o instanceof Long)
+		{
+			long value = (Long)o;
+			for(int i=0; i<size; i++){
+				if(getLong(i) == value) return i;
+			}
+			return -1;
+		}
+		else if(type == Float.TYPE && o instanceof Float)
+		{
+			int bits = Float.floatToIntBits((Float)o);
+			for(int i=0; i<size; i++){
+				if(Float.floatToIntBits(getFloat(i)) == bits) return i;
+			}
+			return -1;
+		}
+		else if(type == Double.TYPE && o instanceof Double)
+		{
+			long bits = Double.doubleToLongBits((Double)o);
+			for(int i=0; i<size; i++){
+				if(Double.doubleToLongBits(getDouble(i)) == bits) return i;
+			}
+			return -1;
+		}
+		else if(type == Boolean.TYPE && o instanceof Boolean)
+		{
+			boolean value = (Boolean)o;
+			for(int i=0; i<size; i++){
+				if(getBoolean(i) == value) return i;
+			}
+			return -1;
+		}
+		else if(type != null)
+		{
+			//primitive elements can never equal an object of another type
+			return -1;
+		}
+		for(int i=0; i<size; i++)
+		{
+			if(o.equals(get(i))){
+				return i;
+			}
+		}
+		return -1;
+	}
+	
 	public String toString()
 	{
 		return "Seq["+StringUtils.implode(this)+"]";		
@@ -800,13 +1572,90 @@ public abstract class Sequence<T> implements Collection<T>
 	
 	public boolean contains(Object o)
 	{
-		for(Object i : this)
+		return indexOf(o) != -1;
+	}
+	
+	/*
+	 * Primitive array copies, read through the primitive accessors
+	 */
+	public int[] toIntArray()
+	{
+		int[] out = new int[size()];
+		for(int i=0; i<out.length; i++)
 		{
-			if(o.equals(i)){
-				return true;
-			}
+			out[i] = getInt(i);
+		}
+		return out;
+	}
+	
+	public char[] toCharArray()
+	{
+		char[] out = new char[size()];
+		for(int i=0; i<out.length; i++)
+		{
+			out[i] = getChar(i);
+		}
+		return out;
+	}
+	
+	public short[] toShortArray()
+	{
+		short[] out = new short[size()];
+		for(int i=0; i<out.length; i++)
+		{
+			out[i] = getShort(i);
+		}
+		return out;
+	}
+	
+	public byte[] toByteArray()
+	{
+		byte[] out = new byte[size()];
+		for(int i=0; i<out.length; i++)
+		{
+			out[i] = getByte(i);
+		}
+		return out;
+	}
+	
+	public long[] toLongArray()
+	{
+		long[] out = new long[size()];
+		for(int i=0; i<out.length; i++)
+		{
+			out[i] = getLong(i);
+		}
+		return out;
+	}
+	
+	public float[] toFloatArray()
+	{
+		float[] out = new float[size()];
+		for(int i=0; i<out.length; i++)
+		{
+			out[i] = getFloat(i);
+		}
+		return out;
+	}
+	
+	public double[] toDoubleArray()
+	{
+		double[] out = new double[size()];
+		for(int i=0; i<out.length; i++)
+		{
+			out[i] = getDouble(i);
+		}
+		return out;
+	}
+	
+	public boolean[] toBooleanArray()
+	{
+		boolean[] out = new boolean[size()];
+		for(int i=0; i<out.length; i++)
+		{
+			out[i] = getBoolean(i);
 		}
-		return false;
+		return out;
 	}
 	
 	public boolean containsAll(Collection<?> c)
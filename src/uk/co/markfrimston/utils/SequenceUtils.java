@@ -26,118 +26,564 @@ OTHER DEALINGS IN THE SOFTWARE.
 package uk.co.markfrimston.utils;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.lang.reflect.*;
 
 public class SequenceUtils
 {
-	public static <T> int distance(Sequence<T> strA, Sequence<T> strB, int max)
+	/*
+	 * Fills codesA and codesB with ints which are equal wherever the 
+	 * corresponding sequence elements are equal. Elements are read through the
+	 * primitive accessors where both sequences allow it, otherwise numbered by
+	 * equality using the given map.
+	 */
+	static void encode(Sequence<?> seqA, Sequence<?> seqB, int[] codesA, int[] codesB, 
+			Map<Object,Integer> symbols)
 	{
-		int lastRowStart = 0;
-		List<Integer> lastRow = new ArrayList<Integer>();
-		for(int j=0; j<=strB.size(); j++)
+		Class<?> type = seqA.getPrimitiveType();
+		if(type != seqB.getPrimitiveType()){
+			type = null;
+		}
+		if(type == Character.TYPE || type == Integer.TYPE 
+				|| type == Short.TYPE || type == Byte.TYPE)
+		{
+			encodePrimitive(type, seqA, codesA);
+			encodePrimitive(type, seqB, codesB);
+		}
+		else
 		{
-			List<Integer> row = new ArrayList<Integer>();
-			int rowStart = -1;
-			for(int i=lastRowStart; i<=strA.size(); i++)
+			symbols.clear();
+			encodeSymbols(seqA, codesA, symbols);
+			encodeSymbols(seqB, codesB, symbols);
+			symbols.clear();
+		}
+	}
+	
+	private static void encodePrimitive(Class<?> type, Sequence<?> seq, int[] codes)
+	{
+		int size = seq.size();
+		if(type == Character.TYPE){
+			for(int i=0; i<size; i++) codes[i] = seq.getChar(i);
+		}else if(type == Integer.TYPE){
+			for(int i=0; i<size; i++) codes[i] = seq.getInt(i);
+		}else if(type == Short.TYPE){
+			for(int i=0; i<size; i++) codes[i] = seq.getShort(i);
+		}else{
+			for(int i=0; i<size; i++) codes[i] = seq.getByte(i);
+		}
+	}
+	
+	private static void encodeSymbols(Sequence<?> seq, int[] codes, Map<Object,Integer> symbols)
+	{
+		for(int i=0; i<seq.size(); i++)
+		{
+			Object item = seq.get(i);
+			Integer code = symbols.get(item);
+			if(code == null)
 			{
-				List<Integer> options = new ArrayList<Integer>();
-				//down (insertion)
-				if(j>0 && i<lastRowStart+lastRow.size())
-				{					
-					options.add(lastRow.get(i-lastRowStart)+1);
-				}
-				//right (deletion)
-				if(i>0 && rowStart!=-1)
+				code = symbols.size();
+				symbols.put(item, code);
+			}
+			codes[i] = code;
+		}
+	}
+	
+	/*
+	 * Working storage for edit distance calculations, kept between calls so
+	 * that repeated comparisons don't allocate. Not thread safe - each thread
+	 * must use its own.
+	 */
+	public static class DistanceBuffer
+	{
+		private int[] codesA = new int[16];
+		private int[] codesB = new int[16];
+		private int[] lastRow = new int[16];
+		private int[] row = new int[16];
+		private Map<Object,Integer> symbols = new HashMap<Object,Integer>();
+		
+		private static int[] ensure(int[] array, int size)
+		{
+			return array.length >= size ? array : new int[Math.max(size, array.length*2)];
+		}
+		
+		private void encode(Sequence<?> strA, Sequence<?> strB)
+		{
+			codesA = ensure(codesA, strA.size());
+			codesB = ensure(codesB, strB.size());
+			SequenceUtils.encode(strA, strB, codesA, codesB, symbols);
+		}
+		
+		public int distance(Sequence<?> strA, Sequence<?> strB, int max)
+		{
+			encode(strA, strB);
+			return distance(codesA, strA.size(), codesB, strB.size(), max);
+		}
+		
+		/*
+		 * Levenshtein distance between the first lenA codes of a and the first
+		 * lenB codes of b, or -1 if it exceeds max. Only cells within max of the 
+		 * diagonal are evaluated, and evaluation stops as soon as a whole row
+		 * exceeds max.
+		 */
+		public int distance(int[] a, int lenA, int[] b, int lenB, int max)
+		{
+			if(max < 0 || Math.abs(lenA-lenB) > max){
+				return -1;
+			}
+			//no distance can exceed the longer length, and this keeps limit from overflowing
+			max = Math.min(max, Math.max(lenA, lenB));
+			int limit = max+1;
+			
+			lastRow = ensure(lastRow, lenA+1);
+			row = ensure(row, lenA+1);
+			int[] prev = lastRow;
+			int[] cur = row;
+			for(int i=0; i<=lenA; i++)
+			{
+				prev[i] = i<=max ? i : limit;
+			}
+			for(int j=1; j<=lenB; j++)
+			{
+				int lo = Math.max(1, j-max);
+				int hi = Math.min(lenA, j+max);
+				int rowMin = limit;
+				if(lo == 1)
 				{
-					options.add(row.get(i-rowStart-1)+1);
+					cur[0] = j<=max ? j : limit;
+					rowMin = cur[0];
 				}
-				//diagonal (substitution)
-				if(j>0 && i>0 && i-1>=lastRowStart && i-1<lastRowStart+lastRow.size())
+				else
 				{
-					options.add(lastRow.get(i-1-lastRowStart) 
-							+ (strA.get(i-1).equals(strB.get(j-1))?0:1));
+					cur[lo-1] = limit;
 				}
-				int cost = 0;
-				if(options.size()>0)
+				int code = b[j-1];
+				for(int i=lo; i<=hi; i++)
 				{
-					cost = ListUtils.getBest(options, ListUtils.COMPARE_MIN_INT);
+					//diagonal (substitution)
+					int cost = prev[i-1] + (a[i-1]==code ? 0 : 1);
+					//down (insertion)
+					int down = prev[i] + 1;
+					if(down < cost) cost = down;
+					//right (deletion)
+					int right = cur[i-1] + 1;
+					if(right < cost) cost = right;
+					if(cost > limit) cost = limit;
+					cur[i] = cost;
+					if(cost < rowMin) rowMin = cost;
 				}
-				else
+				if(hi < lenA)
 				{
-					if(i>0 && j>0){
-						//no options means costs are now too high - stop row
-						break;
-					}
+					cur[hi+1] = limit;
 				}
-				
-				if(cost <= max)
+				if(rowMin > max)
 				{
-					row.add(cost);
-					//if first, record row start
-					if(rowStart==-1){
-						rowStart = i;
-					}
+					//every path through this row is already too costly
+					return -1;
 				}
-				else
+				int[] temp = prev;
+				prev = cur;
+				cur = temp;
+			}
+			return prev[lenA] <= max ? prev[lenA] : -1;
+		}
+	}
+	
+	private static final ThreadLocal<DistanceBuffer> DISTANCE_BUFFER = new ThreadLocal<DistanceBuffer>()
+	{
+		protected DistanceBuffer initialValue()
+		{
+			return new DistanceBuffer();
+		}
+	};
+	
+	/*
+	 * Returns the edit distance between the two sequences, or -1 if it is
+	 * greater than max
+	 */
+	public static <T> int distance(Sequence<T> strA, Sequence<T> strB, int max)
+	{
+		return DISTANCE_BUFFER.get().distance(strA, strB, max);
+	}
+	
+	/*
+	 * Number of tasks per worker thread that batch calculations are split into,
+	 * so that uneven candidates still balance out between threads
+	 */
+	private static final int TASKS_PER_THREAD = 16;
+	
+	private static int grainSize(int items, ForkJoinPool pool)
+	{
+		return Math.max(1, items / (pool.getParallelism()*TASKS_PER_THREAD));
+	}
+	
+	@SuppressWarnings("serial")
+	private static class DistancesTask<T> extends RecursiveAction
+	{
+		private Sequence<T> query;
+		private List<Sequence<T>> candidates;
+		private int max;
+		private int[] out;
+		private int from;
+		private int to;
+		private int grain;
+		
+		public DistancesTask(Sequence<T> query, List<Sequence<T>> candidates, int max,
+				int[] out, int from, int to, int grain)
+		{
+			this.query = query;
+			this.candidates = candidates;
+			this.max = max;
+			this.out = out;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+		}
+		
+		protected void compute()
+		{
+			if(to-from <= grain)
+			{
+				DistanceBuffer buffer = DISTANCE_BUFFER.get();
+				for(int i=from; i<to; i++)
 				{
-					//into too high costs - stop calculating row
-					if(rowStart!=-1){
-						break;
-					}
+					out[i] = buffer.distance(query, candidates.get(i), max);
 				}
 			}
-			lastRow = row;
-			lastRowStart = rowStart;
-			//check that a cost lower than threshold was actually found
-			if(rowStart==-1)
+			else
 			{
-				//no distance found below threshold
-				return -1;
+				int mid = (from+to) >>> 1;
+				invokeAll(new DistancesTask<T>(query, candidates, max, out, from, mid, grain),
+						new DistancesTask<T>(query, candidates, max, out, mid, to, grain));
 			}
 		}
-		if(lastRow.size() > strA.size()-lastRowStart)
+	}
+	
+	public static <T> int[] distances(Sequence<T> query, List<? extends Sequence<T>> candidates, 
+			int max)
+	{
+		return distances(query, candidates, max, ForkJoinPool.commonPool());
+	}
+	
+	/*
+	 * Returns the distance from the query to each candidate, as distance() 
+	 * would, calculated in parallel on the given pool
+	 */
+	public static <T> int[] distances(Sequence<T> query, List<? extends Sequence<T>> candidates, 
+			int max, ForkJoinPool pool)
+	{
+		//copied for random access
+		List<Sequence<T>> items = new ArrayList<Sequence<T>>(candidates);
+		int[] out = new int[items.size()];
+		pool.invoke(new DistancesTask<T>(query, items, max, out, 0, items.size(), 
+				grainSize(items.size(), pool)));
+		return out;
+	}
+	
+	/*
+	 * Position in the result of pairwiseDistances of the distance between 
+	 * sequences i and j, where i < j
+	 */
+	public static int pairIndex(int i, int j, int count)
+	{
+		return (int)((long)i*(2*count-i-1)/2) + (j-i-1);
+	}
+	
+	@SuppressWarnings("serial")
+	private static class PairwiseTask<T> extends RecursiveAction
+	{
+		private List<Sequence<T>> items;
+		private int max;
+		private int[] out;
+		private int from;
+		private int to;
+		private int grain;
+		
+		public PairwiseTask(List<Sequence<T>> items, int max, int[] out, int from, int to, 
+				int grain)
 		{
-			return lastRow.get(strA.size()-lastRowStart);
+			this.items = items;
+			this.max = max;
+			this.out = out;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
 		}
-		else
+		
+		protected void compute()
 		{
-			//the last row didn't reach all the way to result in the corner
-			//possibly because stringB was empty.
-			return -1;
+			if(from == to)
+			{
+				return;
+			}
+			else if(to-from <= grain)
+			{
+				//find the pair the range starts at, then walk the triangle from there
+				int n = items.size();
+				int i = 0;
+				while(pairIndex(i, n-1, n) < from)
+				{
+					i++;
+				}
+				int j = from - pairIndex(i, i+1, n) + i+1;
+				DistanceBuffer buffer = DISTANCE_BUFFER.get();
+				for(int p=from; p<to; p++)
+				{
+					out[p] = buffer.distance(items.get(i), items.get(j), max);
+					j++;
+					if(j == n)
+					{
+						i++;
+						j = i+1;
+					}
+				}
+			}
+			else
+			{
+				int mid = (from+to) >>> 1;
+				invokeAll(new PairwiseTask<T>(items, max, out, from, mid, grain),
+						new PairwiseTask<T>(items, max, out, mid, to, grain));
+			}
 		}
 	}
 	
-	public static <I> List<Sequence<I>> combinations(Sequence<I> input)
+	public static <T> int[] pairwiseDistances(List<? extends Sequence<T>> sequences, int max)
 	{
-		List<Sequence<I>> out = new ArrayList<Sequence<I>>();
+		return pairwiseDistances(sequences, max, ForkJoinPool.commonPool());
+	}
+	
+	/*
+	 * Returns the distance between every pair of the given sequences, as
+	 * distance() would, in a triangular array indexed by pairIndex. Calculated
+	 * in parallel on the given pool.
+	 */
+	public static <T> int[] pairwiseDistances(List<? extends Sequence<T>> sequences, int max,
+			ForkJoinPool pool)
+	{
+		//copied for random access
+		List<Sequence<T>> items = new ArrayList<Sequence<T>>(sequences);
+		int n = items.size();
+		long pairCount = (long)n*(n-1)/2;
+		if(pairCount > Integer.MAX_VALUE){
+			throw new IllegalArgumentException("Number of pairs must be at most "
+					+Integer.MAX_VALUE+", was "+pairCount);
+		}
+		int pairs = (int)pairCount;
+		int[] out = new int[pairs];
+		pool.invoke(new PairwiseTask<T>(items, max, out, 0, pairs, grainSize(pairs, pool)));
+		return out;
+	}
+	
+	@SuppressWarnings("serial")
+	private static class NearestTask<T> extends RecursiveTask<List<Long>>
+	{
+		private Sequence<T> query;
+		private List<Sequence<T>> candidates;
+		private int count;
+		private AtomicInteger bound;
+		private int from;
+		private int to;
+		private int grain;
 		
-		if(input.size()<=1)
-		{			
-			out.add(input);
+		public NearestTask(Sequence<T> query, List<Sequence<T>> candidates, int count,
+				AtomicInteger bound, int from, int to, int grain)
+		{
+			this.query = query;
+			this.candidates = candidates;
+			this.count = count;
+			this.bound = bound;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
 		}
-		else
+		
+		protected List<Long> compute()
 		{
-			for(int i=0; i<input.size(); i++)
+			if(to-from <= grain)
 			{
-				List<I> hat = new ArrayList<I>();
-				for(int j=0; j<input.size(); j++)
+				//matches are packed as distance then index, so they order by both.
+				//Largest first, to drop the worst once there are enough.
+				PriorityQueue<Long> best = new PriorityQueue<Long>(count+1, 
+						Collections.reverseOrder());
+				DistanceBuffer buffer = DISTANCE_BUFFER.get();
+				for(int i=from; i<to; i++)
 				{
-					hat.add(input.get(j));
-				}
-				hat.remove(i);
-				
-				List<Sequence<I>> combs = combinations(Sequence.make(hat));
-				for(Sequence<I> comb : combs)
-				{
-					comb = input.subSequence(i,i+1).append(comb);
-					if(!out.contains(comb))
+					int distance = buffer.distance(query, candidates.get(i), bound.get());
+					if(distance == -1){
+						continue;
+					}
+					best.add(((long)distance << 32) | i);
+					if(best.size() > count){
+						best.poll();
+					}
+					if(best.size() == count)
 					{
-						out.add(comb);
+						//nothing further than our worst can make the overall list
+						int worst = (int)(best.peek() >>> 32);
+						int current;
+						while(worst < (current = bound.get()) 
+								&& !bound.compareAndSet(current, worst));
 					}
 				}
+				return new ArrayList<Long>(best);
+			}
+			else
+			{
+				int mid = (from+to) >>> 1;
+				NearestTask<T> left = new NearestTask<T>(query, candidates, count, bound, 
+						from, mid, grain);
+				NearestTask<T> right = new NearestTask<T>(query, candidates, count, bound, 
+						mid, to, grain);
+				left.fork();
+				List<Long> out = right.compute();
+				out.addAll(left.join());
+				return out;
+			}
+		}
+	}
+	
+	public static <T> List<Pair<Integer,Integer>> nearest(Sequence<T> query, 
+			List<? extends Sequence<T>> candidates, int count, int max)
+	{
+		return nearest(query, candidates, count, max, ForkJoinPool.commonPool());
+	}
+	
+	/*
+	 * Returns up to count candidates nearest to the query and no further than
+	 * max, as pairs of candidate index and distance. Ordered by distance, then 
+	 * by index. Candidates are skipped as soon as they are further than the 
+	 * worst of the best found so far.
+	 */
+	public static <T> List<Pair<Integer,Integer>> nearest(Sequence<T> query, 
+			List<? extends Sequence<T>> candidates, int count, int max, ForkJoinPool pool)
+	{
+		List<Pair<Integer,Integer>> out = new ArrayList<Pair<Integer,Integer>>();
+		if(count <= 0 || max < 0 || candidates.isEmpty()){
+			return out;
+		}
+		//copied for random access
+		List<Sequence<T>> items = new ArrayList<Sequence<T>>(candidates);
+		List<Long> found = pool.invoke(new NearestTask<T>(query, items, count, 
+				new AtomicInteger(max), 0, items.size(), grainSize(items.size(), pool)));
+		Collections.sort(found);
+		for(int i=0; i<found.size() && i<count; i++)
+		{
+			long match = found.get(i);
+			out.add(new Pair<Integer,Integer>((int)match, (int)(match >>> 32)));
+		}
+		return out;
+	}
+	
+	/*
+	 * Generates the distinct orderings of a sequence's elements one at a time, 
+	 * by stepping through them in lexicographic order of each element's first 
+	 * appearance. Equal elements are given the same number, so repeated
+	 * orderings never come up rather than having to be filtered out.
+	 */
+	private static class PermutationIterator<I> implements Iterator<Sequence<I>>
+	{
+		private List<I> elements = new ArrayList<I>();
+		private int[] order;
+		private boolean more = true;
+		
+		public PermutationIterator(Sequence<I> input)
+		{
+			Map<I,Integer> numbers = new HashMap<I,Integer>();
+			order = new int[input.size()];
+			for(int i=0; i<order.length; i++)
+			{
+				I item = input.get(i);
+				Integer number = numbers.get(item);
+				if(number == null)
+				{
+					number = elements.size();
+					numbers.put(item, number);
+					elements.add(item);
+				}
+				order[i] = number;
+			}
+			Arrays.sort(order);
+		}
+		
+		public boolean hasNext()
+		{
+			return more;
+		}
+		
+		public Sequence<I> next()
+		{
+			if(!more){
+				throw new NoSuchElementException();
+			}
+			List<I> out = new ArrayList<I>(order.length);
+			for(int i=0; i<order.length; i++)
+			{
+				out.add(elements.get(order[i]));
+			}
+			more = advance();
+			return Sequence.make(out);
+		}
+		
+		/*
+		 * Steps order to the next permutation, returning false if it was the last
+		 */
+		private boolean advance()
+		{
+			//find the last place where the order ascends
+			int i = order.length-2;
+			while(i >= 0 && order[i] >= order[i+1])
+			{
+				i--;
+			}
+			if(i < 0){
+				return false;
+			}
+			//swap with the last larger number, then reverse the tail
+			int j = order.length-1;
+			while(order[j] <= order[i])
+			{
+				j--;
+			}
+			int temp = order[i];
+			order[i] = order[j];
+			order[j] = temp;
+			for(int lo=i+1, hi=order.length-1; lo<hi; lo++, hi--)
+			{
+				temp = order[lo];
+				order[lo] = order[hi];
+				order[hi] = temp;
 			}
+			return true;
 		}
 		
+		public void remove()
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+	
+	/*
+	 * Lazily generates each distinct ordering of the input's elements. Only the
+	 * current ordering is held between steps.
+	 */
+	public static <I> Iterable<Sequence<I>> permutations(final Sequence<I> input)
+	{
+		return new Iterable<Sequence<I>>()
+		{
+			public Iterator<Sequence<I>> iterator()
+			{
+				return new PermutationIterator<I>(input);
+			}
+		};
+	}
+	
+	public static <I> List<Sequence<I>> combinations(Sequence<I> input)
+	{
+		List<Sequence<I>> out = new ArrayList<Sequence<I>>();
+		for(Sequence<I> permutation : permutations(input))
+		{
+			out.add(permutation);
+		}
 		return out;
 	}
 	
@@ -0,0 +1,173 @@
+/*
+Copyright (c) 2008 Mark Frimston
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package uk.co.markfrimston.utils;
+
+import java.util.*;
+
+/*
+ * A fixed length array of objects or longs, split into blocks which can be
+ * shared between copies. share() hands out a copy in constant time, after 
+ * which neither side owns any block, and each copies a block the first time
+ * it writes to it.
+ */
+final class SharedBlocks
+{
+	static final int BLOCK_BITS = 8;
+	static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+	static final int BLOCK_MASK = BLOCK_SIZE-1;
+	
+	private final boolean longs;
+	private final long fill;
+	private int length;
+	//each an Object[] or long[] of BLOCK_SIZE
+	private Object[] blocks;
+	//which blocks may be written in place, or null for none
+	private boolean[] owned;
+	
+	/*
+	 * Makes an array of the given length, of nulls
+	 */
+	public SharedBlocks(int length)
+	{
+		this(false, 0, length);
+	}
+	
+	/*
+	 * Makes an array of the given length, of longs set to the given value
+	 */
+	public static SharedBlocks ofLongs(int length, long fill)
+	{
+		return new SharedBlocks(true, fill, length);
+	}
+	
+	private SharedBlocks(boolean longs, long fill, int length)
+	{
+		this.longs = longs;
+		this.fill = fill;
+		this.blocks = new Object[0];
+		this.owned = new boolean[0];
+		grow(length);
+	}
+	
+	private SharedBlocks(SharedBlocks oth)
+	{
+		this.longs = oth.longs;
+		this.fill = oth.fill;
+		this.length = oth.length;
+		this.blocks = oth.blocks;
+	}
+	
+	public int length()
+	{
+		return length;
+	}
+	
+	public Object get(int index)
+	{
+		return ((Object[])blocks[index >>> BLOCK_BITS])[index & BLOCK_MASK];
+	}
+	
+	public long getLong(int index)
+	{
+		return ((long[])blocks[index >>> BLOCK_BITS])[index & BLOCK_MASK];
+	}
+	
+	/*
+	 * Returns the given block of longs, for reading only
+	 */
+	public long[] longBlock(int block)
+	{
+		return (long[])blocks[block];
+	}
+	
+	public void set(int index, Object value)
+	{
+		((Object[])writable(index >>> BLOCK_BITS))[index & BLOCK_MASK] = value;
+	}
+	
+	public void setLong(int index, long value)
+	{
+		((long[])writable(index >>> BLOCK_BITS))[index & BLOCK_MASK] = value;
+	}
+	
+	private Object writable(int block)
+	{
+		if(owned == null)
+		{
+			blocks = blocks.clone();
+			owned = new boolean[blocks.length];
+		}
+		if(!owned[block])
+		{
+			Object data = blocks[block];
+			blocks[block] = longs ? ((long[])data).clone() : ((Object[])data).clone();
+			owned[block] = true;
+		}
+		return blocks[block];
+	}
+	
+	/*
+	 * Returns a copy sharing this array's blocks
+	 */
+	public SharedBlocks share()
+	{
+		owned = null;
+		return new SharedBlocks(this);
+	}
+	
+	/*
+	 * Lengthens the array to at least the given length, filling the new part
+	 * with nulls or the fill value
+	 */
+	public void grow(int newLength)
+	{
+		int numBlocks = (newLength+BLOCK_MASK) >>> BLOCK_BITS;
+		if(numBlocks > blocks.length)
+		{
+			int oldBlocks = blocks.length;
+			if(owned == null){
+				owned = new boolean[oldBlocks];
+			}
+			blocks = Arrays.copyOf(blocks, numBlocks);
+			owned = Arrays.copyOf(owned, numBlocks);
+			for(int i=oldBlocks; i<numBlocks; i++)
+			{
+				if(longs)
+				{
+					long[] block = new long[BLOCK_SIZE];
+					Arrays.fill(block, fill);
+					blocks[i] = block;
+				}
+				else
+				{
+					blocks[i] = new Object[BLOCK_SIZE];
+				}
+				owned[i] = true;
+			}
+		}
+		length = Math.max(length, newLength);
+	}
+}
@@ -0,0 +1,609 @@
+/*
+Copyright (c) 2008 Mark Frimston
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package uk.co.markfrimston.utils;
+
+import java.util.*;
+
+/*
+ * Bounding volume hierarchies over the points and lines of a WireframeModel,
+ * for picking the nearest points and culling to a view without scanning the
+ * whole model. Each hierarchy is built in one go by splitting its items at 
+ * the median along their widest axis, and its nodes are stored depth first
+ * in flat arrays, so children always come after their parents.
+ * 
+ * The index holds its own copy of the model's points. After they move - 
+ * through apply() or refit() - node bounds are recomputed from the bottom up
+ * without rebuilding, which keeps queries correct though they may slow if
+ * points move a long way relative to each other.
+ */
+public class SpatialIndex
+{
+	private static final int LEAF_SIZE = 8;
+	
+	private PointBuffer points;
+	private int[][] lines;
+	private Hierarchy pointTree;
+	private Hierarchy lineTree;
+	
+	public SpatialIndex(WireframeModel model)
+	{
+		PointBuffer source = model.getPointBuffer();
+		int size = model.getNumPoints();
+		points = new PointBuffer(size);
+		System.arraycopy(source.xs, 0, points.xs, 0, size);
+		System.arraycopy(source.ys, 0, points.ys, 0, size);
+		System.arraycopy(source.zs, 0, points.zs, 0, size);
+		System.arraycopy(source.ws, 0, points.ws, 0, size);
+		lines = model.getLines();
+		
+		//points are boxes with no size
+		pointTree = new Hierarchy(points.xs, points.ys, points.zs, 
+				points.xs, points.ys, points.zs, size);
+		int numLines = lines.length;
+		lineTree = new Hierarchy(new double[numLines], new double[numLines], 
+				new double[numLines], new double[numLines], new double[numLines], 
+				new double[numLines], numLines);
+		lineBounds();
+		pointTree.build();
+		lineTree.build();
+	}
+	
+	/*
+	 * Returns the indexed points, as moved by apply() or refit()
+	 */
+	public PointBuffer getPoints()
+	{
+		return points;
+	}
+	
+	/*
+	 * Moves the indexed points by the given 4x4 affine transform, such as 
+	 * one built with ThreeDUtils or Transform (without a projection), and 
+	 * refits the hierarchies to them
+	 */
+	public void apply(Matrix transform)
+	{
+		new Matrix4(transform).transformInto(points, points);
+		refit();
+	}
+	
+	/*
+	 * Takes new positions for the indexed points from the given buffer, 
+	 * which must hold as many, and refits the hierarchies to them
+	 */
+	public void refit(PointBuffer moved)
+	{
+		int size = points.size();
+		if(moved.size() != size){
+			throw new ArrayIndexOutOfBoundsException("Buffer holds a different number of points");
+		}
+		System.arraycopy(moved.xs, 0, points.xs, 0, size);
+		System.arraycopy(moved.ys, 0, points.ys, 0, size);
+		System.arraycopy(moved.zs, 0, points.zs, 0, size);
+		System.arraycopy(moved.ws, 0, points.ws, 0, size);
+		refit();
+	}
+	
+	private void refit()
+	{
+		lineBounds();
+		pointTree.refit();
+		lineTree.refit();
+	}
+	
+	private void lineBounds()
+	{
+		double[] xs = points.xs, ys = points.ys, zs = points.zs;
+		Hierarchy t = lineTree;
+		for(int i=0; i<lines.length; i++)
+		{
+			int a = lines[i][0], b = lines[i][1];
+			t.loX[i] = Math.min(xs[a], xs[b]);
+			t.loY[i] = Math.min(ys[a], ys[b]);
+			t.loZ[i] = Math.min(zs[a], zs[b]);
+			t.hiX[i] = Math.max(xs[a], xs[b]);
+			t.hiY[i] = Math.max(ys[a], ys[b]);
+			t.hiZ[i] = Math.max(zs[a], zs[b]);
+		}
+	}
+	
+	/*
+	 * Returns the index of the point nearest the given position, or -1 if 
+	 * there are no points
+	 */
+	public int nearest(double x, double y, double z)
+	{
+		int[] result = nearest(x, y, z, 1);
+		return result.length > 0 ? result[0] : -1;
+	}
+	
+	/*
+	 * Returns the indices of the k points nearest the given position, 
+	 * nearest first. Fewer are returned if there are fewer points.
+	 */
+	public int[] nearest(double x, double y, double z, int k)
+	{
+		Hierarchy t = pointTree;
+		k = Math.min(k, points.size());
+		if(k <= 0){
+			return new int[0];
+		}
+		//max-heap of the best found so far
+		double[] heapDist = new double[k];
+		int[] heapItems = new int[k];
+		int found = 0;
+		
+		int[] stack = new int[64];
+		int top = 0;
+		stack[top++] = 0;
+		while(top > 0)
+		{
+			int node = stack[--top];
+			if(found == k && t.distanceSq(node, x, y, z) >= heapDist[0]){
+				continue;
+			}
+			if(t.counts[node] > 0)
+			{
+				for(int i=t.starts[node], end=i+t.counts[node]; i<end; i++)
+				{
+					int item = t.order[i];
+					double dx = points.xs[item]-x, dy = points.ys[item]-y, dz = points.zs[item]-z;
+					double dist = dx*dx + dy*dy + dz*dz;
+					if(found < k){
+						heapPush(heapDist, heapItems, found++, dist, item);
+					}else if(dist < heapDist[0]){
+						heapReplace(heapDist, heapItems, k, dist, item);
+					}
+				}
+			}
+			else
+			{
+				//push the further child first so the nearer is searched first
+				int left = node+1, right = t.rights[node];
+				if(top+2 > stack.length){
+					stack = Arrays.copyOf(stack, stack.length*2);
+				}
+				if(t.distanceSq(left, x, y, z) < t.distanceSq(right, x, y, z)){
+					stack[top++] = right;
+					stack[top++] = left;
+				}else{
+					stack[top++] = left;
+					stack[top++] = right;
+				}
+			}
+		}
+		
+		//empty the heap from the back, furthest first
+		int[] result = new int[k];
+		for(int i=k-1; i>=0; i--)
+		{
+			result[i] = heapItems[0];
+			heapReplace(heapDist, heapItems, i, heapDist[i], heapItems[i]);
+		}
+		return result;
+	}
+	
+	private static void heapPush(double[] dists, int[] items, int size, double dist, int item)
+	{
+		int i = size;
+		while(i > 0)
+		{
+			int parent = (i-1)/2;
+			if(dists[parent] >= dist){
+				break;
+			}
+			dists[i] = dists[parent];
+			items[i] = items[parent];
+			i = parent;
+		}
+		dists[i] = dist;
+		items[i] = item;
+	}
+	
+	/*
+	 * Replaces the top of a heap of the given size and sifts it down
+	 */
+	private static void heapReplace(double[] dists, int[] items, int size, double dist, int item)
+	{
+		int i = 0;
+		while(true)
+		{
+			int child = i*2+1;
+			if(child >= size){
+				break;
+			}
+			if(child+1 < size && dists[child+1] > dists[child]){
+				child++;
+			}
+			if(dists[child] <= dist){
+				break;
+			}
+			dists[i] = dists[child];
+			items[i] = items[child];
+			i = child;
+		}
+		dists[i] = dist;
+		items[i] = item;
+	}
+	
+	/*
+	 * Returns the indices of all the points within the given distance of the
+	 * given position, in no particular order
+	 */
+	public int[] withinRadius(double x, double y, double z, double radius)
+	{
+		Hierarchy t = pointTree;
+		double radiusSq = radius*radius;
+		int[] result = new int[16];
+		int count = 0;
+		if(points.size() == 0){
+			return new int[0];
+		}
+		int[] stack = new int[64];
+		int top = 0;
+		stack[top++] = 0;
+		while(top > 0)
+		{
+			int node = stack[--top];
+			if(t.distanceSq(node, x, y, z) > radiusSq){
+				continue;
+			}
+			if(t.counts[node] > 0)
+			{
+				for(int i=t.starts[node], end=i+t.counts[node]; i<end; i++)
+				{
+					int item = t.order[i];
+					double dx = points.xs[item]-x, dy = points.ys[item]-y, dz = points.zs[item]-z;
+					if(dx*dx + dy*dy + dz*dz <= radiusSq)
+					{
+						if(count == result.length){
+							result = Arrays.copyOf(result, count*2);
+						}
+						result[count++] = item;
+					}
+				}
+			}
+			else
+			{
+				if(top+2 > stack.length){
+					stack = Arrays.copyOf(stack, stack.length*2);
+				}
+				stack[top++] = node+1;
+				stack[top++] = t.rights[node];
+			}
+		}
+		return Arrays.copyOf(result, count);
+	}
+	
+	/*
+	 * Finds the points which may be on screen when put through the given 4x4
+	 * transform, ending in ThreeDUtils.project, where the screen area is 
+	 * given in projected x/w, y/w coordinates as for ThreeDUtils.cullLines. 
+	 * Their indices are written to visible, which must be large enough for
+	 * all the points, and their number returned.
+	 */
+	public int visiblePoints(Matrix transform, double minX, double minY, double maxX, 
+			double maxY, int[] visible)
+	{
+		return pointTree.frustum(planes(transform, minX, minY, maxX, maxY), visible);
+	}
+	
+	/*
+	 * As visiblePoints, finding the lines whose bounds may be on screen. The
+	 * lines found are a superset of those on screen - pass them through 
+	 * ThreeDUtils.cullLines to drop the rest.
+	 */
+	public int visibleLines(Matrix transform, double minX, double minY, double maxX, 
+			double maxY, int[] visible)
+	{
+		return lineTree.frustum(planes(transform, minX, minY, maxX, maxY), visible);
+	}
+	
+	/*
+	 * Planes a point must be on the positive side of to be on screen, from 
+	 * X >= minX*W and so on in projected coordinates, plus W >= 0
+	 */
+	private static double[][] planes(Matrix transform, double minX, double minY, 
+			double maxX, double maxY)
+	{
+		Matrix4 m = new Matrix4(transform);
+		double[] rx = {m.m00, m.m01, m.m02, m.m03};
+		double[] ry = {m.m10, m.m11, m.m12, m.m13};
+		double[] rw = {m.m30, m.m31, m.m32, m.m33};
+		double[][] planes = new double[5][4];
+		for(int i=0; i<4; i++)
+		{
+			planes[0][i] = rx[i] - minX*rw[i];
+			planes[1][i] = maxX*rw[i] - rx[i];
+			planes[2][i] = ry[i] - minY*rw[i];
+			planes[3][i] = maxY*rw[i] - ry[i];
+			planes[4][i] = rw[i];
+		}
+		return planes;
+	}
+	
+	/*
+	 * A hierarchy over items with the given bounds, which are read again 
+	 * when refitting
+	 */
+	private static class Hierarchy
+	{
+		final double[] loX, loY, loZ, hiX, hiY, hiZ;
+		final int size;
+		//items in leaf order
+		int[] order;
+		//6 bounds per node, min x,y,z then max x,y,z
+		double[] bounds;
+		//leaves have a run of order, others have a right child - the left 
+		//child is the next node
+		int[] starts, counts, rights;
+		int numNodes;
+		
+		public Hierarchy(double[] loX, double[] loY, double[] loZ, double[] hiX, 
+				double[] hiY, double[] hiZ, int size)
+		{
+			this.loX = loX; this.loY = loY; this.loZ = loZ;
+			this.hiX = hiX; this.hiY = hiY; this.hiZ = hiZ;
+			this.size = size;
+		}
+		
+		public void build()
+		{
+			order = new int[size];
+			for(int i=0; i<size; i++)
+			{
+				order[i] = i;
+			}
+			//median splits leave at least half a leaf in each
+			int maxNodes = 2*(size/(LEAF_SIZE/2)+1);
+			bounds = new double[maxNodes*6];
+			starts = new int[maxNodes];
+			counts = new int[maxNodes];
+			rights = new int[maxNodes];
+			numNodes = 0;
+			if(size == 0)
+			{
+				//a single empty leaf with bounds nothing can reach
+				numNodes = 1;
+				Arrays.fill(bounds, 0, 3, Double.POSITIVE_INFINITY);
+				Arrays.fill(bounds, 3, 6, Double.NEGATIVE_INFINITY);
+				return;
+			}
+			build(0, size);
+		}
+		
+		private int build(int start, int end)
+		{
+			int node = numNodes++;
+			if(end-start <= LEAF_SIZE)
+			{
+				starts[node] = start;
+				counts[node] = end-start;
+				fitLeaf(node);
+				return node;
+			}
+			
+			//split at the median along the widest spread of centres
+			double minX = Double.POSITIVE_INFINITY, minY = minX, minZ = minX;
+			double maxX = Double.NEGATIVE_INFINITY, maxY = maxX, maxZ = maxX;
+			for(int i=start; i<end; i++)
+			{
+				int item = order[i];
+				double x = loX[item]+hiX[item], y = loY[item]+hiY[item], z = loZ[item]+hiZ[item];
+				minX = Math.min(minX, x); maxX = Math.max(maxX, x);
+				minY = Math.min(minY, y); maxY = Math.max(maxY, y);
+				minZ = Math.min(minZ, z); maxZ = Math.max(maxZ, z);
+			}
+			int axis = 0;
+			if(maxY-minY > maxX-minX) axis = 1;
+			if(maxZ-minZ > Math.max(maxX-minX, maxY-minY)) axis = 2;
+			int middle = (start+end) >>> 1;
+			select(start, end, middle, axis);
+			
+			build(start, middle);
+			rights[node] = build(middle, end);
+			fitInner(node);
+			return node;
+		}
+		
+		private double centre(int item, int axis)
+		{
+			switch(axis)
+			{
+				case 0: return loX[item]+hiX[item];
+				case 1: return loY[item]+hiY[item];
+				default: return loZ[item]+hiZ[item];
+			}
+		}
+		
+		/*
+		 * Partially sorts order[start,end) by centre so the item at the given
+		 * position is in place, with none above it before and none below it
+		 * after
+		 */
+		private void select(int start, int end, int nth, int axis)
+		{
+			int lo = start, hi = end-1;
+			while(lo < hi)
+			{
+				double pivot = centre(order[(lo+hi) >>> 1], axis);
+				int i = lo, j = hi;
+				while(i <= j)
+				{
+					while(centre(order[i], axis) < pivot) i++;
+					while(centre(order[j], axis) > pivot) j--;
+					if(i <= j)
+					{
+						int swap = order[i];
+						order[i] = order[j];
+						order[j] = swap;
+						i++;
+						j--;
+					}
+				}
+				if(nth <= j){
+					hi = j;
+				}else if(nth >= i){
+					lo = i;
+				}else{
+					return;
+				}
+			}
+		}
+		
+		public void refit()
+		{
+			if(size == 0){
+				return;
+			}
+			//children come after parents
+			for(int node=numNodes-1; node>=0; node--)
+			{
+				if(counts[node] > 0){
+					fitLeaf(node);
+				}else{
+					fitInner(node);
+				}
+			}
+		}
+		
+		private void fitLeaf(int node)
+		{
+			double minX = Double.POSITIVE_INFINITY, minY = minX, minZ = minX;
+			double maxX = Double.NEGATIVE_INFINITY, maxY = maxX, maxZ = maxX;
+			for(int i=starts[node], end=i+counts[node]; i<end; i++)
+			{
+				int item = order[i];
+				minX = Math.min(minX, loX[item]); maxX = Math.max(maxX, hiX[item]);
+				minY = Math.min(minY, loY[item]); maxY = Math.max(maxY, hiY[item]);
+				minZ = Math.min(minZ, loZ[item]); maxZ = Math.max(maxZ, hiZ[item]);
+			}
+			int b = node*6;
+			bounds[b] = minX; bounds[b+1] = minY; bounds[b+2] = minZ;
+			bounds[b+3] = maxX; bounds[b+4] = maxY; bounds[b+5] = maxZ;
+		}
+		
+		private void fitInner(int node)
+		{
+			int b = node*6, l = (node+1)*6, r = rights[node]*6;
+			for(int i=0; i<3; i++)
+			{
+				bounds[b+i] = Math.min(bounds[l+i], bounds[r+i]);
+				bounds[b+3+i] = Math.max(bounds[l+3+i], bounds[r+3+i]);
+			}
+		}
+		
+		/*
+		 * Squared distance from the given position to a node's bounds
+		 */
+		public double distanceSq(int node, double x, double y, double z)
+		{
+			int b = node*6;
+			double dx = Math.max(0, Math.max(bounds[b]-x, x-bounds[b+3]));
+			double dy = Math.max(0, Math.max(bounds[b+1]-y, y-bounds[b+4]));
+			double dz = Math.max(0, Math.max(bounds[b+2]-z, z-bounds[b+5]));
+			return dx*dx + dy*dy + dz*dz;
+		}
+		
+		/*
+		 * Writes the items whose bounds are not wholly behind any of the 
+		 * planes to visible, returning their number. Once a node is wholly in
+		 * front of a plane, its descendants aren't tested against it again.
+		 */
+		public int frustum(double[][] planes, int[] visible)
+		{
+			if(visible.length < size){
+				throw new ArrayIndexOutOfBoundsException("Visible array smaller than items");
+			}
+			int all = (1 << planes.length)-1;
+			int count = 0;
+			int[] stack = new int[128];
+			int top = 0;
+			stack[top++] = 0;
+			stack[top++] = all;
+			while(top > 0)
+			{
+				int mask = stack[--top];
+				int node = stack[--top];
+				int b = node*6;
+				mask = clip(planes, mask, bounds[b], bounds[b+1], bounds[b+2], 
+						bounds[b+3], bounds[b+4], bounds[b+5]);
+				if(mask < 0){
+					continue;
+				}
+				if(counts[node] > 0)
+				{
+					for(int i=starts[node], end=i+counts[node]; i<end; i++)
+					{
+						int item = order[i];
+						if(mask == 0 || clip(planes, mask, loX[item], loY[item], loZ[item], 
+								hiX[item], hiY[item], hiZ[item]) >= 0){
+							visible[count++] = item;
+						}
+					}
+				}
+				else
+				{
+					if(top+4 > stack.length){
+						stack = Arrays.copyOf(stack, stack.length*2);
+					}
+					stack[top++] = rights[node];
+					stack[top++] = mask;
+					stack[top++] = node+1;
+					stack[top++] = mask;
+				}
+			}
+			return count;
+		}
+		
+		/*
+		 * Tests a box against the planes in the mask, returning -1 if it is 
+		 * wholly behind one, or else the mask of planes it straddles
+		 */
+		private static int clip(double[][] planes, int mask, double minX, double minY, 
+				double minZ, double maxX, double maxY, double maxZ)
+		{
+			for(int p=0; p<planes.length; p++)
+			{
+				if((mask & (1 << p)) == 0){
+					continue;
+				}
+				double[] plane = planes[p];
+				double a = plane[0], b = plane[1], c = plane[2], d = plane[3];
+				//corners furthest in front of and behind the plane
+				double front = d + a*(a>0?maxX:minX) + b*(b>0?maxY:minY) + c*(c>0?maxZ:minZ);
+				if(front < 0){
+					return -1;
+				}
+				double back = d + a*(a>0?minX:maxX) + b*(b>0?minY:maxY) + c*(c>0?minZ:maxZ);
+				if(back >= 0){
+					mask &= ~(1 << p);
+				}
+			}
+			return mask;
+		}
+	}
+}
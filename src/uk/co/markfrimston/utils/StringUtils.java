@@ -139,9 +139,237 @@ public class StringUtils
 	
 	
 	
+	/*
+	 * Edit distance between strings using the bit-parallel algorithm of Myers,
+	 * in the block-based form given by Hyyro. The shorter string is the
+	 * pattern, held as bit vectors 64 characters to a word. One instance per
+	 * thread.
+	 */
+	private static class BitParallelDistance
+	{
+		private int[] latinSlots = new int[256];
+		private char[] others = new char[16];
+		private int numOthers;
+		private int othersBase;
+		private long[] peq = new long[64];
+		private long[] pv = new long[1];
+		private long[] mv = new long[1];
+		
+		private int slot(char c)
+		{
+			if(c < 256)
+			{
+				return latinSlots[c];
+			}
+			int index = Arrays.binarySearch(others, 0, numOthers, c);
+			return index >= 0 ? othersBase+index : 0;
+		}
+		
+		/*
+		 * Builds the match vectors for the pattern. Slot 0 is kept for
+		 * characters not in the pattern, and matches nothing.
+		 */
+		private void prepare(CharSequence pattern, int blocks)
+		{
+			int slots = 1;
+			numOthers = 0;
+			for(int i=0; i<pattern.length(); i++)
+			{
+				char c = pattern.charAt(i);
+				if(c < 256)
+				{
+					if(latinSlots[c] == 0){
+						latinSlots[c] = slots++;
+					}
+				}
+				else
+				{
+					if(numOthers == others.length){
+						others = Arrays.copyOf(others, others.length*2);
+					}
+					others[numOthers++] = c;
+				}
+			}
+			if(numOthers > 0)
+			{
+				Arrays.sort(others, 0, numOthers);
+				int unique = 1;
+				for(int i=1; i<numOthers; i++)
+				{
+					if(others[i] != others[unique-1]){
+						others[unique++] = others[i];
+					}
+				}
+				numOthers = unique;
+			}
+			othersBase = slots;
+			slots += numOthers;
+			
+			if(peq.length < slots*blocks){
+				peq = new long[Math.max(slots*blocks, peq.length*2)];
+			}
+			Arrays.fill(peq, 0, slots*blocks, 0L);
+			for(int i=0; i<pattern.length(); i++)
+			{
+				peq[slot(pattern.charAt(i))*blocks + (i>>>6)] |= 1L << (i&63);
+			}
+		}
+		
+		private void release(CharSequence pattern)
+		{
+			for(int i=0; i<pattern.length(); i++)
+			{
+				char c = pattern.charAt(i);
+				if(c < 256){
+					latinSlots[c] = 0;
+				}
+			}
+		}
+		
+		public int distance(CharSequence pattern, CharSequence text, int max)
+		{
+			int m = pattern.length();
+			int n = text.length();
+			if(max < 0 || Math.abs(m-n) > max){
+				return -1;
+			}
+			if(m == 0){
+				return n;
+			}
+			int blocks = (m+63)>>>6;
+			prepare(pattern, blocks);
+			try
+			{
+				if(blocks == 1)
+				{
+					return singleBlock(m, text, n, max);
+				}
+				else
+				{
+					return multiBlock(m, blocks, text, n, max);
+				}
+			}
+			finally
+			{
+				release(pattern);
+			}
+		}
+		
+		private int singleBlock(int m, CharSequence text, int n, int max)
+		{
+			long pv = -1L;
+			long mv = 0L;
+			long last = 1L << (m-1);
+			int score = m;
+			for(int j=0; j<n; j++)
+			{
+				long eq = peq[slot(text.charAt(j))];
+				long xv = eq | mv;
+				long xh = (((eq & pv) + pv) ^ pv) | eq;
+				long ph = mv | ~(xh | pv);
+				long mh = pv & xh;
+				if((ph & last) != 0){
+					score++;
+				}else if((mh & last) != 0){
+					score--;
+				}
+				//top row of the table increases by one each column
+				ph = (ph << 1) | 1L;
+				mh = mh << 1;
+				pv = mh | ~(xv | ph);
+				mv = ph & xv;
+				//remaining characters can each lower the score by at most one
+				if(score-(n-1-j) > max){
+					return -1;
+				}
+			}
+			return score;
+		}
+		
+		private int multiBlock(int m, int blocks, CharSequence text, int n, int max)
+		{
+			if(pv.length < blocks)
+			{
+				pv = new long[blocks];
+				mv = new long[blocks];
+			}
+			Arrays.fill(pv, 0, blocks, -1L);
+			Arrays.fill(mv, 0, blocks, 0L);
+			long last = 1L << ((m-1)&63);
+			int score = m;
+			for(int j=0; j<n; j++)
+			{
+				int base = slot(text.charAt(j))*blocks;
+				int hin = 1;
+				for(int b=0; b<blocks; b++)
+				{
+					long pvb = pv[b];
+					long mvb = mv[b];
+					long eq = peq[base+b];
+					long xv = eq | mvb;
+					if(hin < 0){
+						eq |= 1L;
+					}
+					long xh = (((eq & pvb) + pvb) ^ pvb) | eq;
+					long ph = mvb | ~(xh | pvb);
+					long mh = pvb & xh;
+					long high = b==blocks-1 ? last : Long.MIN_VALUE;
+					int hout = 0;
+					if((ph & high) != 0){
+						hout = 1;
+					}else if((mh & high) != 0){
+						hout = -1;
+					}
+					ph <<= 1;
+					mh <<= 1;
+					if(hin < 0){
+						mh |= 1L;
+					}else if(hin > 0){
+						ph |= 1L;
+					}
+					pv[b] = mh | ~(xv | ph);
+					mv[b] = ph & xv;
+					hin = hout;
+				}
+				score += hin;
+				if(score-(n-1-j) > max){
+					return -1;
+				}
+			}
+			return score;
+		}
+	}
+	
+	private static final ThreadLocal<BitParallelDistance> BIT_PARALLEL_DISTANCE 
+		= new ThreadLocal<BitParallelDistance>()
+	{
+		protected BitParallelDistance initialValue()
+		{
+			return new BitParallelDistance();
+		}
+	};
+	
 	public static int distance(String strA, String strB, int max)
 	{
-		return SequenceUtils.distance(Sequence.make(strA), Sequence.make(strB), max);
+		return distance((CharSequence)strA, (CharSequence)strB, max);
+	}
+	
+	/*
+	 * Returns the edit distance between the two strings, or -1 if it is 
+	 * greater than max. Uses the bit-parallel algorithm, except where the
+	 * strings are long and max small enough that the banded calculation in
+	 * SequenceUtils has fewer cells to visit than there are pattern blocks.
+	 */
+	public static int distance(CharSequence strA, CharSequence strB, int max)
+	{
+		CharSequence pattern = strA.length() <= strB.length() ? strA : strB;
+		CharSequence text = pattern==strA ? strB : strA;
+		int blocks = (pattern.length()+63)>>>6;
+		if(blocks > 1 && max >= 0 && max < blocks/2)
+		{
+			return SequenceUtils.distance(Sequence.make(strA), Sequence.make(strB), max);
+		}
+		return BIT_PARALLEL_DISTANCE.get().distance(pattern, text, max);
 	}
 	
 	public static int wordDistance(String strA, String strB, int max)
@@ -27,69 +27,183 @@ package uk.co.markfrimston.utils;
 
 public class ThreeDUtils
 {
+	/*
+	 * Scratch transform for the methods which apply one to a model, so that
+	 * those writing to a destination don't allocate
+	 */
+	private static final ThreadLocal<Matrix> TRANSFORM = new ThreadLocal<Matrix>()
+	{
+		protected Matrix initialValue()
+		{
+			return new Matrix(4, 4);
+		}
+	};
+	
 	public static Matrix scale(Matrix model, double x, double y, double z)
 	{
-		double[][] transform = new double[][]{
-				{x, 0, 0, 0},
-				{0, y, 0, 0},
-				{0, 0, z, 0},
-				{0, 0, 0, 1}
-		};	
-		Matrix m = new Matrix(transform);
-		return m.mult(model);
+		return scale(model, x, y, z, new Matrix(4, model.getCols()));
+	}
+	
+	/*
+	 * As scale(Matrix,double,double,double), writing the result into the 
+	 * given 4 x n matrix rather than allocating one. Returns dest.
+	 */
+	public static Matrix scale(Matrix model, double x, double y, double z, Matrix dest)
+	{
+		return setScale(TRANSFORM.get(), x, y, z).multInto(model, dest);
+	}
+	
+	/*
+	 * Fills the given 4x4 matrix with a scaling transform and returns it
+	 */
+	public static Matrix setScale(Matrix transform, double x, double y, double z)
+	{
+		double[] t = transformData(transform);
+		t[0]  = x; t[1]  = 0; t[2]  = 0; t[3]  = 0;
+		t[4]  = 0; t[5]  = y; t[6]  = 0; t[7]  = 0;
+		t[8]  = 0; t[9]  = 0; t[10] = z; t[11] = 0;
+		t[12] = 0; t[13] = 0; t[14] = 0; t[15] = 1;
+		return transform;
 	}
 	
 	public static Matrix project(Matrix model, double focalLength)
+	{
+		return project(model, focalLength, new Matrix(4, model.getCols()));
+	}
+	
+	/*
+	 * As project(Matrix,double), writing the result into the given 4 x n 
+	 * matrix rather than allocating one. Returns dest.
+	 */
+	public static Matrix project(Matrix model, double focalLength, Matrix dest)
+	{
+		return setProject(TRANSFORM.get(), focalLength).multInto(model, dest);
+	}
+	
+	/*
+	 * Fills the given 4x4 matrix with a projection transform and returns it
+	 */
+	public static Matrix setProject(Matrix transform, double focalLength)
 	{
 		double f = focalLength;
 		
-		double[][] transform = new double[][]{
-				{1, 0, 0, 0},
-				{0, 1, 0, 0},
-				{0, 0, 1, 0},
-				{0, 0, f, 0}
-		};	
-		Matrix m = new Matrix(transform);
-		return m.mult(model);
+		double[] t = transformData(transform);
+		t[0]  = 1; t[1]  = 0; t[2]  = 0; t[3]  = 0;
+		t[4]  = 0; t[5]  = 1; t[6]  = 0; t[7]  = 0;
+		t[8]  = 0; t[9]  = 0; t[10] = 1; t[11] = 0;
+		t[12] = 0; t[13] = 0; t[14] = f; t[15] = 0;
+		return transform;
 	}
 	
 	public static Matrix translate(Matrix model, double x, double y, double z)
 	{
-		double[][] transform = new double[][]{
-				{1, 0, 0, x},
-				{0, 1, 0, y},
-				{0, 0, 1, z},
-				{0, 0, 0, 1}
-		};	
-		Matrix m = new Matrix(transform);
-		return m.mult(model);
+		return translate(model, x, y, z, new Matrix(4, model.getCols()));
+	}
+	
+	/*
+	 * As translate(Matrix,double,double,double), writing the result into the 
+	 * given 4 x n matrix rather than allocating one. Returns dest.
+	 */
+	public static Matrix translate(Matrix model, double x, double y, double z, Matrix dest)
+	{
+		return setTranslate(TRANSFORM.get(), x, y, z).multInto(model, dest);
+	}
+	
+	/*
+	 * Fills the given 4x4 matrix with a translation transform and returns it
+	 */
+	public static Matrix setTranslate(Matrix transform, double x, double y, double z)
+	{
+		double[] t = transformData(transform);
+		t[0]  = 1; t[1]  = 0; t[2]  = 0; t[3]  = x;
+		t[4]  = 0; t[5]  = 1; t[6]  = 0; t[7]  = y;
+		t[8]  = 0; t[9]  = 0; t[10] = 1; t[11] = z;
+		t[12] = 0; t[13] = 0; t[14] = 0; t[15] = 1;
+		return transform;
 	}
 	
 	public static Matrix rotate(Matrix model, double x, double y, double z)
 	{
-		double[][] transform;
-		transform = new double[][]{
-				{1, 0, 				0, 				0},
-				{0, Math.cos(x), 	-Math.sin(x), 	0},
-				{0, Math.sin(x), 	Math.cos(x), 	0},
-				{0, 0, 				0, 				1}
-		};	
-		Matrix mx = new Matrix(transform);
-		transform = new double[][]{
-				{Math.cos(y), 	0, Math.sin(y), 	0},
-				{0, 			1, 0, 				0},
-				{-Math.sin(y), 	0, Math.cos(y), 	0},
-				{0, 			0, 0, 				1}
-		};
-		Matrix my = new Matrix(transform);
-		transform = new double[][]{
-				{Math.cos(z), 	-Math.sin(z), 	0, 0},
-				{Math.sin(z), 	Math.cos(z), 	0, 0},
-				{0, 			0, 				1, 0},
-				{0, 			0, 				0, 1}
-		};
-		Matrix mz = new Matrix(transform);
+		return rotate(model, x, y, z, new Matrix(4, model.getCols()));
+	}
+	
+	/*
+	 * As rotate(Matrix,double,double,double), writing the result into the 
+	 * given 4 x n matrix rather than allocating one. Returns dest.
+	 */
+	public static Matrix rotate(Matrix model, double x, double y, double z, Matrix dest)
+	{
+		return setRotate(TRANSFORM.get(), x, y, z).multInto(model, dest);
+	}
+	
+	/*
+	 * Fills the given 4x4 matrix with a transform rotating about the x axis, 
+	 * then the y, then the z, and returns it
+	 */
+	public static Matrix setRotate(Matrix transform, double x, double y, double z)
+	{
+		double cx = Math.cos(x), sx = Math.sin(x);
+		double cy = Math.cos(y), sy = Math.sin(y);
+		double cz = Math.cos(z), sz = Math.sin(z);
 		
-		return mz.mult(my).mult(mx).mult(model);
+		//product of the z, y and x rotations, multiplied out
+		double[] t = transformData(transform);
+		t[0]  = cz*cy; t[1]  = -sz*cx + cz*sy*sx; t[2]  = sz*sx + cz*sy*cx;  t[3]  = 0;
+		t[4]  = sz*cy; t[5]  = cz*cx + sz*sy*sx;  t[6]  = -cz*sx + sz*sy*cx; t[7]  = 0;
+		t[8]  = -sy;   t[9]  = cy*sx;             t[10] = cy*cx;             t[11] = 0;
+		t[12] = 0;     t[13] = 0;                 t[14] = 0;                 t[15] = 1;
+		return transform;
+	}
+	
+	/*
+	 * Picks out the lines worth drawing from points put through project(), 
+	 * which land on screen at x/w, y/w. Lines are dropped which lie wholly 
+	 * outside the given screen area, which are shorter on screen than 
+	 * minLength, or which are wholly behind the viewer. Lines with only one 
+	 * end behind the viewer are kept, to be clipped when drawn. The indices 
+	 * of the lines kept are written to visible, and their number returned.
+	 */
+	public static int cullLines(PointBuffer projected, int[][] lines, double minX, double minY,
+			double maxX, double maxY, double minLength, int[] visible)
+	{
+		if(visible.length < lines.length){
+			throw new ArrayIndexOutOfBoundsException("Visible array smaller than lines");
+		}
+		double[] xs = projected.xs, ys = projected.ys, ws = projected.ws;
+		double minLengthSq = minLength*minLength;
+		int count = 0;
+		for(int i=0; i<lines.length; i++)
+		{
+			int a = lines[i][0];
+			int b = lines[i][1];
+			double wa = ws[a], wb = ws[b];
+			if(wa <= 0 || wb <= 0)
+			{
+				if(wa > 0 || wb > 0){
+					visible[count++] = i;
+				}
+				continue;
+			}
+			double ax = xs[a]/wa, ay = ys[a]/wa;
+			double bx = xs[b]/wb, by = ys[b]/wb;
+			if(Math.max(ax, bx) < minX || Math.min(ax, bx) > maxX
+					|| Math.max(ay, by) < minY || Math.min(ay, by) > maxY){
+				continue;
+			}
+			double dx = bx-ax, dy = by-ay;
+			if(dx*dx + dy*dy < minLengthSq){
+				continue;
+			}
+			visible[count++] = i;
+		}
+		return count;
+	}
+	
+	private static double[] transformData(Matrix transform)
+	{
+		if(transform.getRows() != 4 || transform.getCols() != 4){
+			throw new ArrayIndexOutOfBoundsException("Transform must be 4x4");
+		}
+		return transform.getData();
 	}
 }
@@ -27,76 +27,409 @@ package uk.co.markfrimston.utils;
 
 import java.util.*;
 
+/*
+ * Clones share their legends and values with the grid they were taken from,
+ * so cloning takes constant time. Each grid copies only the parts it then 
+ * changes - a legend when a type is added to it, and the maps or blocks of
+ * values an add lands in.
+ */
 public class ThreeDimGrid<X,Y,Z,V> implements Cloneable
 {
-	private List<X> xLegend = new ArrayList<X>();
-	private List<Y> yLegend = new ArrayList<Y>();
-	private List<Z> zLegend = new ArrayList<Z>();
+	/*
+	 * How values are held. HASHED keeps maps of maps of maps, with a map for
+	 * every x and y pair. DENSE keeps a flat array with a slot for every x, y
+	 * and z, found by their positions in the legends. SPARSE keeps one hash 
+	 * table keyed on those positions packed together, holding only the 
+	 * values added, and allows up to 2^21 types along each side.
+	 */
+	public enum Storage {HASHED, DENSE, SPARSE}
+	
+	private static final int INITIAL_CAPACITY = 4;
+	private static final int INITIAL_TABLE_SIZE = 16;
+	private static final int ORDINAL_BITS = 21;
+	private static final long EMPTY = -1L;
+	
+	private Storage storage;
+	private Legend<X> xLegend = new Legend<X>();
+	private Legend<Y> yLegend = new Legend<Y>();
+	private Legend<Z> zLegend = new Legend<Z>();
+	private boolean xLegendOwned = true, yLegendOwned = true, zLegendOwned = true;
+	
+	private HashMap<X,HashMap<Y,HashMap<Z,V>>> data;
+	private boolean dataOwned = true;
+	//maps below data which may be written in place, or null for all of them
+	//when the grid has never been cloned
+	private Set<Object> ownedMaps;
+	//values at (x*yCapacity+y)*zCapacity+z
+	private SharedBlocks cells;
+	private int xCapacity, yCapacity, zCapacity;
+	//open addressed table of packed positions and their values
+	private SharedBlocks keys;
+	private SharedBlocks values;
+	private int tableSize;
+	private int count;
+	
+	private List<X> xView = new AbstractList<X>(){
+		public X get(int index)
+		{
+			return xLegend.asList().get(index);
+		}
+		
+		public int size()
+		{
+			return xLegend.size();
+		}
+	};
+	private List<Y> yView = new AbstractList<Y>(){
+		public Y get(int index)
+		{
+			return yLegend.asList().get(index);
+		}
+		
+		public int size()
+		{
+			return yLegend.size();
+		}
+	};
+	private List<Z> zView = new AbstractList<Z>(){
+		public Z get(int index)
+		{
+			return zLegend.asList().get(index);
+		}
+		
+		public int size()
+		{
+			return zLegend.size();
+		}
+	};
 	
-	private HashMap<X,HashMap<Y,HashMap<Z,V>>> data = new HashMap<X,HashMap<Y,HashMap<Z,V>>>();
+	public ThreeDimGrid()
+	{
+		this(Storage.HASHED);
+	}
+	
+	public ThreeDimGrid(Storage storage)
+	{
+		this.storage = storage;
+		allocate();
+	}
+	
+	private void allocate()
+	{
+		if(storage == Storage.DENSE){
+			cells = new SharedBlocks(INITIAL_CAPACITY*INITIAL_CAPACITY*INITIAL_CAPACITY);
+			xCapacity = yCapacity = zCapacity = INITIAL_CAPACITY;
+		}else if(storage == Storage.SPARSE){
+			allocateTable(INITIAL_TABLE_SIZE);
+		}else{
+			data = new HashMap<X,HashMap<Y,HashMap<Z,V>>>();
+			dataOwned = true;
+			ownedMaps = null;
+		}
+	}
+	
+	private static Set<Object> newMapSet()
+	{
+		return Collections.newSetFromMap(new IdentityHashMap<Object,Boolean>());
+	}
+	
+	public Storage getStorage()
+	{
+		return storage;
+	}
 	
 	public void addXType(X xType)
 	{
-		if(!xLegend.contains(xType))
+		addX(xType);
+	}
+	
+	private int addX(X xType)
+	{
+		int x = xLegend.indexOf(xType);
+		return x >= 0 ? x : addNewX(xType);
+	}
+	
+	private int addNewX(X xType)
+	{
+		if(!xLegendOwned)
+		{
+			xLegend = xLegend.copy();
+			xLegendOwned = true;
+		}
+		int x = xLegend.add(xType);
+		if(storage == Storage.DENSE)
+		{
+			if(x >= xCapacity){
+				xCapacity *= 2;
+				cells.grow(xCapacity*yCapacity*zCapacity);
+			}
+		}
+		else if(storage == Storage.HASHED)
 		{
-			xLegend.add(xType);
 			//x hash must have new y hash added to it, under new x key
 			HashMap<Y,HashMap<Z,V>> newHash = new HashMap<Y,HashMap<Z,V>>();
-			for(Y yType : yLegend)
+			own(newHash);
+			for(Y yType : yLegend.asList())
 			{
-				newHash.put(yType, new HashMap<Z,V>());
+				HashMap<Z,V> inner = new HashMap<Z,V>();
+				own(inner);
+				newHash.put(yType, inner);
 			}
-			data.put(xType,newHash);
+			writableData().put(xType,newHash);
 		}
+		return x;
 	}
 	
 	public void addYType(Y yType)
 	{
-		if(!yLegend.contains(yType))
+		addY(yType);
+	}
+	
+	private int addY(Y yType)
+	{
+		int y = yLegend.indexOf(yType);
+		return y >= 0 ? y : addNewY(yType);
+	}
+	
+	private int addNewY(Y yType)
+	{
+		if(!yLegendOwned)
+		{
+			yLegend = yLegend.copy();
+			yLegendOwned = true;
+		}
+		int y = yLegend.add(yType);
+		if(storage == Storage.DENSE)
+		{
+			if(y >= yCapacity){
+				resize(yCapacity*2, zCapacity);
+			}
+		}
+		else if(storage == Storage.HASHED)
 		{
-			yLegend.add(yType);
 			//each y hash must have new z hash added to it, under new y key
-			for(X xType : xLegend)
+			for(X xType : xLegend.asList())
 			{
-				data.get(xType).put(yType, new HashMap<Z,V>());
+				HashMap<Z,V> inner = new HashMap<Z,V>();
+				own(inner);
+				writableRow(xType).put(yType, inner);
 			}
 		}
+		return y;
 	}
 	
 	public void addZType(Z zType)
 	{
-		if(!zLegend.contains(zType))
+		addZ(zType);
+	}
+	
+	private int addZ(Z zType)
+	{
+		int z = zLegend.indexOf(zType);
+		return z >= 0 ? z : addNewZ(zType);
+	}
+	
+	private int addNewZ(Z zType)
+	{
+		if(!zLegendOwned)
+		{
+			zLegend = zLegend.copy();
+			zLegendOwned = true;
+		}
+		int z = zLegend.add(zType);
+		if(storage == Storage.DENSE && z >= zCapacity){
+			resize(yCapacity, zCapacity*2);
+		}
+		return z;
+	}
+	
+	/*
+	 * Lays the dense cells out again for new y and z capacities
+	 */
+	private void resize(int newYCapacity, int newZCapacity)
+	{
+		SharedBlocks old = cells;
+		cells = new SharedBlocks(xCapacity*newYCapacity*newZCapacity);
+		for(int x=0; x<xLegend.size(); x++)
+		{
+			for(int y=0; y<Math.min(yCapacity, newYCapacity); y++)
+			{
+				for(int z=0; z<zCapacity; z++)
+				{
+					Object value = old.get((x*yCapacity+y)*zCapacity+z);
+					if(value != null){
+						cells.set((x*newYCapacity+y)*newZCapacity+z, value);
+					}
+				}
+			}
+		}
+		yCapacity = newYCapacity;
+		zCapacity = newZCapacity;
+	}
+	
+	private void own(Object map)
+	{
+		if(ownedMaps != null){
+			ownedMaps.add(map);
+		}
+	}
+	
+	private boolean owns(Object map)
+	{
+		return ownedMaps == null || ownedMaps.contains(map);
+	}
+	
+	private HashMap<X,HashMap<Y,HashMap<Z,V>>> writableData()
+	{
+		if(!dataOwned)
 		{
-			zLegend.add(zType);			
+			data = new HashMap<X,HashMap<Y,HashMap<Z,V>>>(data);
+			dataOwned = true;
 		}
+		return data;
+	}
+	
+	private HashMap<Y,HashMap<Z,V>> writableRow(X xType)
+	{
+		HashMap<Y,HashMap<Z,V>> row = data.get(xType);
+		if(!owns(row))
+		{
+			row = new HashMap<Y,HashMap<Z,V>>(row);
+			own(row);
+			writableData().put(xType, row);
+		}
+		return row;
+	}
+	
+	private HashMap<Z,V> writableColumn(X xType, Y yType)
+	{
+		HashMap<Z,V> column = data.get(xType).get(yType);
+		if(!owns(column))
+		{
+			column = new HashMap<Z,V>(column);
+			own(column);
+			writableRow(xType).put(yType, column);
+		}
+		return column;
+	}
+	
+	private void allocateTable(int size)
+	{
+		keys = SharedBlocks.ofLongs(size, EMPTY);
+		values = new SharedBlocks(size);
+		tableSize = size;
+		count = 0;
+	}
+	
+	private static long pack(int x, int y, int z)
+	{
+		if(((x | y | z) >>> ORDINAL_BITS) != 0){
+			throw new IllegalStateException("Sparse grid has too many types along one side");
+		}
+		return ((long)x << (ORDINAL_BITS*2)) | ((long)y << ORDINAL_BITS) | z;
+	}
+	
+	/*
+	 * Returns the slot holding the given key, or the empty slot where it 
+	 * belongs
+	 */
+	private int slot(long key)
+	{
+		long h = key * 0x9E3779B97F4A7C15L;
+		int mask = tableSize-1;
+		int slot = (int)(h ^ (h >>> 32)) & mask;
+		long found;
+		while((found = keys.getLong(slot)) != EMPTY && found != key)
+		{
+			slot = (slot+1) & mask;
+		}
+		return slot;
+	}
+	
+	private void put(long key, V value)
+	{
+		int slot = slot(key);
+		if(keys.getLong(slot) == EMPTY)
+		{
+			if((count+1)*2 > tableSize)
+			{
+				//grow at half full
+				SharedBlocks oldKeys = keys;
+				SharedBlocks oldValues = values;
+				int oldSize = tableSize;
+				allocateTable(oldSize*2);
+				for(int i=0; i<oldSize; i++)
+				{
+					long oldKey = oldKeys.getLong(i);
+					if(oldKey != EMPTY)
+					{
+						int newSlot = slot(oldKey);
+						keys.setLong(newSlot, oldKey);
+						values.set(newSlot, oldValues.get(i));
+						count++;
+					}
+				}
+				slot = slot(key);
+			}
+			keys.setLong(slot, key);
+			count++;
+		}
+		values.set(slot, value);
 	}
 	
 	public List<X> getXLegend()
 	{
-		return Collections.unmodifiableList(xLegend);
+		return Collections.unmodifiableList(xView);
 	}
 	
 	public List<Y> getYLegend()
 	{
-		return Collections.unmodifiableList(yLegend);
+		return Collections.unmodifiableList(yView);
 	}
 	
 	public List<Z> getZLegend()
 	{
-		return Collections.unmodifiableList(zLegend);
+		return Collections.unmodifiableList(zView);
 	}
 	
 	public void add(X xType, Y yType, Z zType, V value)
 	{
-		addXType(xType);
-		addYType(yType);
-		addZType(zType);
+		int x = addX(xType);
+		int y = addY(yType);
+		int z = addZ(zType);
 		
-		data.get(xType).get(yType).put(zType, value);
+		if(storage == Storage.DENSE){
+			cells.set((x*yCapacity+y)*zCapacity+z, value);
+		}else if(storage == Storage.SPARSE){
+			put(pack(x, y, z), value);
+		}else{
+			writableColumn(xType, yType).put(zType, value);
+		}
 	}
 	
+	@SuppressWarnings("unchecked")
 	public V get(X xType, Y yType, Z zType)
 	{
+		if(storage == Storage.DENSE)
+		{
+			int x = xLegend.indexOf(xType);
+			int y = yLegend.indexOf(yType);
+			int z = zLegend.indexOf(zType);
+			if(x < 0 || y < 0 || z < 0){
+				return null;
+			}
+			return (V)cells.get((x*yCapacity+y)*zCapacity+z);
+		}
+		if(storage == Storage.SPARSE)
+		{
+			int x = xLegend.indexOf(xType);
+			int y = yLegend.indexOf(yType);
+			int z = zLegend.indexOf(zType);
+			if(x < 0 || y < 0 || z < 0){
+				return null;
+			}
+			return (V)values.get(slot(pack(x, y, z)));
+		}
 		if(xLegend.contains(xType))
 		{
 			if(yLegend.contains(yType))
@@ -116,30 +449,50 @@ public class ThreeDimGrid<X,Y,Z,V> implements Cloneable
 	
 	public void clear()
 	{
-		xLegend.clear();
-		yLegend.clear();
-		zLegend.clear();
-		data.clear();
+		xLegend = new Legend<X>();
+		yLegend = new Legend<Y>();
+		zLegend = new Legend<Z>();
+		xLegendOwned = yLegendOwned = zLegendOwned = true;
+		allocate();
 	}
 	
+	/*
+	 * Returns a grid sharing this one's contents, in constant time
+	 */
 	public Object clone()
 	{
-		ThreeDimGrid<X,Y,Z,V> obj = new ThreeDimGrid<X,Y,Z,V>();
-		for(X xType : xLegend)
+		ThreeDimGrid<X,Y,Z,V> obj = new ThreeDimGrid<X,Y,Z,V>(storage);
+		obj.xLegend = xLegend;
+		obj.yLegend = yLegend;
+		obj.zLegend = zLegend;
+		obj.xLegendOwned = obj.yLegendOwned = obj.zLegendOwned = false;
+		xLegendOwned = yLegendOwned = zLegendOwned = false;
+		if(storage == Storage.DENSE)
 		{
-			for(Y yType : yLegend)
-			{
-				for(Z zType : zLegend)
-				{
-					obj.add(xType, yType, zType, get(xType,yType,zType));
-				}
-			}
+			obj.xCapacity = xCapacity;
+			obj.yCapacity = yCapacity;
+			obj.zCapacity = zCapacity;
+			obj.cells = cells.share();
+		}
+		else if(storage == Storage.SPARSE)
+		{
+			obj.keys = keys.share();
+			obj.values = values.share();
+			obj.tableSize = tableSize;
+			obj.count = count;
+		}
+		else
+		{
+			obj.data = data;
+			obj.dataOwned = dataOwned = false;
+			obj.ownedMaps = newMapSet();
+			ownedMaps = newMapSet();
 		}
 		return obj;
 	}
 	
 	public boolean isEmpty()
 	{
-		return data.isEmpty();
+		return xLegend.size() == 0;
 	}
 }
@@ -0,0 +1,211 @@
+/*
+Copyright (c) 2008 Mark Frimston
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package uk.co.markfrimston.utils;
+
+import java.util.*;
+
+/*
+ * Builds up a sequence of 3D transforms as a single 4x4 matrix, so that a
+ * model can be put through all of them with one multiply. Steps are added
+ * in the order they are to be applied to the model.
+ * 
+ * The product of the steps so far is kept for every step. Calling reset()
+ * and adding the steps again - once a frame, say - only recomposes from the
+ * first step whose parameters have changed, so an unchanged pipeline costs
+ * nothing to rebuild.
+ */
+public class Transform
+{
+	private static final int SCALE = 0;
+	private static final int TRANSLATE = 1;
+	private static final int ROTATE = 2;
+	private static final int PROJECT = 3;
+	
+	//step types and their three parameters, as last added at each position
+	private int[] types = new int[8];
+	private double[] params = new double[8*3];
+	//product of the steps up to and including each position
+	private Matrix[] composed = new Matrix[8];
+	//steps recorded, whether or not they have been added since the last reset
+	private int stored = 0;
+	//steps added since the last reset
+	private int count = 0;
+	//leading positions whose products are up to date
+	private int valid = 0;
+	private Matrix step = new Matrix(4, 4);
+	private Matrix4 fixed = new Matrix4();
+	
+	/*
+	 * Starts building the transform again. Steps added afterwards are compared
+	 * with those previously at the same position, and products are kept for
+	 * as long as they match.
+	 */
+	public Transform reset()
+	{
+		count = 0;
+		return this;
+	}
+	
+	public Transform scale(double x, double y, double z)
+	{
+		return add(SCALE, x, y, z);
+	}
+	
+	public Transform translate(double x, double y, double z)
+	{
+		return add(TRANSLATE, x, y, z);
+	}
+	
+	public Transform rotate(double x, double y, double z)
+	{
+		return add(ROTATE, x, y, z);
+	}
+	
+	public Transform project(double focalLength)
+	{
+		return add(PROJECT, focalLength, 0, 0);
+	}
+	
+	public int getNumSteps()
+	{
+		return count;
+	}
+	
+	/*
+	 * Returns the combined transform as a 4x4 matrix. The matrix belongs to 
+	 * this object and must not be modified - it may be overwritten when the 
+	 * transform is next rebuilt.
+	 */
+	public Matrix getMatrix()
+	{
+		if(count == 0)
+		{
+			//identity, held in this object's own first product
+			if(composed[0] == null){
+				composed[0] = new Matrix(4, 4);
+			}
+			ThreeDUtils.setScale(composed[0], 1, 1, 1);
+			valid = 0;
+			return composed[0];
+		}
+		for(int i=valid; i<count; i++)
+		{
+			setStep(i);
+			if(i == 0){
+				composed[0].copyFrom(step);
+			}else{
+				step.multInto(composed[i-1], composed[i]);
+			}
+		}
+		valid = Math.max(valid, count);
+		return composed[count-1];
+	}
+	
+	/*
+	 * Applies the combined transform to the given 4 x n model matrix
+	 */
+	public Matrix apply(Matrix model)
+	{
+		return apply(model, new Matrix(4, model.getCols()));
+	}
+	
+	/*
+	 * Applies the combined transform to the given 4 x n model matrix, writing
+	 * the result to dest. Returns dest.
+	 */
+	public Matrix apply(Matrix model, Matrix dest)
+	{
+		return getMatrix().multInto(model, dest);
+	}
+	
+	public Matrix apply(WireframeModel model)
+	{
+		return apply(model.getMatrix());
+	}
+	
+	public Matrix apply(WireframeModel model, Matrix dest)
+	{
+		return apply(model.getMatrix(), dest);
+	}
+	
+	/*
+	 * Applies the combined transform to the given points, writing them to 
+	 * dest, which may be the same buffer. Returns dest.
+	 */
+	public PointBuffer apply(PointBuffer points, PointBuffer dest)
+	{
+		return fixed.set(getMatrix()).transformInto(points, dest);
+	}
+	
+	private Transform add(int type, double a, double b, double c)
+	{
+		int pos = count++;
+		if(pos < stored && types[pos]==type && params[pos*3]==a 
+				&& params[pos*3+1]==b && params[pos*3+2]==c)
+		{
+			return this;
+		}
+		
+		if(pos == types.length)
+		{
+			types = Arrays.copyOf(types, pos*2);
+			params = Arrays.copyOf(params, pos*2*3);
+			composed = Arrays.copyOf(composed, pos*2);
+		}
+		types[pos] = type;
+		params[pos*3] = a;
+		params[pos*3+1] = b;
+		params[pos*3+2] = c;
+		stored = Math.max(stored, pos+1);
+		valid = Math.min(valid, pos);
+		return this;
+	}
+	
+	private void setStep(int pos)
+	{
+		double a = params[pos*3];
+		double b = params[pos*3+1];
+		double c = params[pos*3+2];
+		switch(types[pos])
+		{
+			case SCALE:
+				ThreeDUtils.setScale(step, a, b, c);
+				break;
+			case TRANSLATE:
+				ThreeDUtils.setTranslate(step, a, b, c);
+				break;
+			case ROTATE:
+				ThreeDUtils.setRotate(step, a, b, c);
+				break;
+			default:
+				ThreeDUtils.setProject(step, a);
+				break;
+		}
+		if(composed[pos] == null){
+			composed[pos] = new Matrix(4, 4);
+		}
+	}
+}
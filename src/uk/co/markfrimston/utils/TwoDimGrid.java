@@ -26,50 +26,259 @@ OTHER DEALINGS IN THE SOFTWARE.
 package uk.co.markfrimston.utils;
 
 import java.util.*;
+import java.util.concurrent.*;
 
+/*
+ * Clones share their legends and values with the grid they were taken from,
+ * so cloning takes constant time. Each grid copies only the parts it then 
+ * changes - a legend when a type is added to it, and the row or block of 
+ * values an add lands in.
+ */
 public class TwoDimGrid<X,Y,V> implements Cloneable
 {
-	private List<X> xLegend = new ArrayList<X>();
-	private List<Y> yLegend = new ArrayList<Y>();
-	private HashMap<X,HashMap<Y,V>> data = new HashMap<X,HashMap<Y,V>>();
+	/*
+	 * How values are held. HASHED keeps a map of maps, holding only the 
+	 * values added. DENSE keeps a flat array with a slot for every x and y
+	 * pair, found by their positions in the legends. NUMERIC is laid out as
+	 * DENSE but holds primitive doubles, which are summarised without 
+	 * unboxing. It is only for grids of Doubles - see forDoubles.
+	 */
+	public enum Storage {HASHED, DENSE, NUMERIC}
+	
+	private static final int INITIAL_CAPACITY = 8;
+	//a NaN which doubleToLongBits never gives, marking empty numeric cells
+	private static final long EMPTY_BITS = 0x7ff000000000deadL;
+	private static final int PARALLEL_CELLS = 1 << 16;
+	private static final int TASKS_PER_THREAD = 16;
+	
+	private Storage storage;
+	private Legend<X> xLegend = new Legend<X>();
+	private Legend<Y> yLegend = new Legend<Y>();
+	private boolean xLegendOwned = true, yLegendOwned = true;
+	private HashMap<X,HashMap<Y,V>> data;
+	private boolean dataOwned = true;
+	//rows which may be written in place, or null for all of them when the
+	//grid has never been cloned
+	private Set<HashMap<Y,V>> ownedRows;
+	//values at x*yCapacity+y
+	private SharedBlocks cells;
+	private int xCapacity, yCapacity;
+	
+	private List<X> xView = new AbstractList<X>(){
+		public X get(int index)
+		{
+			return xLegend.asList().get(index);
+		}
+		
+		public int size()
+		{
+			return xLegend.size();
+		}
+	};
+	private List<Y> yView = new AbstractList<Y>(){
+		public Y get(int index)
+		{
+			return yLegend.asList().get(index);
+		}
+		
+		public int size()
+		{
+			return yLegend.size();
+		}
+	};
+	
+	public TwoDimGrid()
+	{
+		this(Storage.HASHED);
+	}
+	
+	public TwoDimGrid(Storage storage)
+	{
+		this(storage, false);
+	}
+	
+	private TwoDimGrid(Storage storage, boolean doubles)
+	{
+		if(storage == Storage.NUMERIC && !doubles){
+			throw new IllegalArgumentException("NUMERIC storage holds only Doubles - see forDoubles");
+		}
+		this.storage = storage;
+		if(storage != Storage.HASHED){
+			allocate(INITIAL_CAPACITY, INITIAL_CAPACITY);
+		}else{
+			data = new HashMap<X,HashMap<Y,V>>();
+		}
+	}
+	
+	/*
+	 * Makes a grid of Doubles with the given storage, which unlike other grids 
+	 * may be NUMERIC
+	 */
+	public static <X,Y> TwoDimGrid<X,Y,Double> forDoubles(Storage storage)
+	{
+		return new TwoDimGrid<X,Y,Double>(storage, true);
+	}
+	
+	private Set<HashMap<Y,V>> newRowSet()
+	{
+		return Collections.newSetFromMap(new IdentityHashMap<HashMap<Y,V>,Boolean>());
+	}
+	
+	public Storage getStorage()
+	{
+		return storage;
+	}
 	
 	public void addXType(X xType)
 	{
-		if(!xLegend.contains(xType))
+		addX(xType);
+	}
+	
+	private int addX(X xType)
+	{
+		int x = xLegend.indexOf(xType);
+		return x >= 0 ? x : addNewX(xType);
+	}
+	
+	private int addNewX(X xType)
+	{
+		if(!xLegendOwned)
+		{
+			xLegend = xLegend.copy();
+			xLegendOwned = true;
+		}
+		int x = xLegend.add(xType);
+		if(storage != Storage.HASHED)
 		{
-			xLegend.add(xType);
-			data.put(xType, new HashMap<Y,V>());
+			if(x >= xCapacity){
+				xCapacity *= 2;
+				cells.grow(xCapacity*yCapacity);
+			}
 		}
+		else
+		{
+			HashMap<Y,V> row = new HashMap<Y,V>();
+			writableData().put(xType, row);
+			ownRow(row);
+		}
+		return x;
 	}
 	
 	public void addYType(Y yType)
 	{
-		if(!yLegend.contains(yType))
+		addY(yType);
+	}
+	
+	private int addY(Y yType)
+	{
+		int y = yLegend.indexOf(yType);
+		return y >= 0 ? y : addNewY(yType);
+	}
+	
+	private int addNewY(Y yType)
+	{
+		if(!yLegendOwned)
+		{
+			yLegend = yLegend.copy();
+			yLegendOwned = true;
+		}
+		int y = yLegend.add(yType);
+		if(storage != Storage.HASHED && y >= yCapacity)
+		{
+			SharedBlocks old = cells;
+			int oldCapacity = yCapacity;
+			allocate(xCapacity, yCapacity*2);
+			for(int i=0; i<xLegend.size(); i++)
+			{
+				for(int j=0; j<oldCapacity; j++)
+				{
+					if(storage == Storage.NUMERIC){
+						cells.setLong(i*yCapacity+j, old.getLong(i*oldCapacity+j));
+					}else{
+						cells.set(i*yCapacity+j, old.get(i*oldCapacity+j));
+					}
+				}
+			}
+		}
+		return y;
+	}
+	
+	private void allocate(int xCapacity, int yCapacity)
+	{
+		this.xCapacity = xCapacity;
+		this.yCapacity = yCapacity;
+		if(storage == Storage.NUMERIC){
+			this.cells = SharedBlocks.ofLongs(xCapacity*yCapacity, EMPTY_BITS);
+		}else{
+			this.cells = new SharedBlocks(xCapacity*yCapacity);
+		}
+	}
+	
+	private HashMap<X,HashMap<Y,V>> writableData()
+	{
+		if(!dataOwned)
+		{
+			data = new HashMap<X,HashMap<Y,V>>(data);
+			dataOwned = true;
+		}
+		return data;
+	}
+	
+	private void ownRow(HashMap<Y,V> row)
+	{
+		if(ownedRows != null){
+			ownedRows.add(row);
+		}
+	}
+	
+	private HashMap<Y,V> writableRow(X xType)
+	{
+		HashMap<Y,V> row = data.get(xType);
+		if(ownedRows != null && !ownedRows.contains(row))
 		{
-			yLegend.add(yType);
+			row = new HashMap<Y,V>(row);
+			writableData().put(xType, row);
+			ownRow(row);
 		}
+		return row;
 	}
 	
 	public void add(X xType,Y yType,V value)
 	{
-		addXType(xType);
-		addYType(yType);
-		data.get(xType).put(yType, value);
+		int x = addX(xType);
+		int y = addY(yType);
+		if(storage == Storage.DENSE){
+			cells.set(x*yCapacity+y, value);
+		}else if(storage == Storage.NUMERIC){
+			cells.setLong(x*yCapacity+y, value != null 
+					? Double.doubleToLongBits((Double)value) : EMPTY_BITS);
+		}else{
+			writableRow(xType).put(yType, value);
+		}
 	}
 	
 	public List<X> getXLegend()
 	{
-		return Collections.unmodifiableList(xLegend);
+		return Collections.unmodifiableList(xView);
 	}
 	
 	public List<Y> getYLegend()
 	{
-		return Collections.unmodifiableList(yLegend);
+		return Collections.unmodifiableList(yView);
 	}
 	
 	public V get(X xType, Y yType)
 	{
-		if(xLegend.contains(xType))
+		if(storage != Storage.HASHED)
+		{
+			int x = xLegend.indexOf(xType);
+			int y = yLegend.indexOf(yType);
+			if(x < 0 || y < 0){
+				return null;
+			}
+			return valueAt(x, y);
+		}
+		else if(xLegend.contains(xType))
 		{
 			return data.get(xType).get(yType);
 		}
@@ -79,28 +288,397 @@ public class TwoDimGrid<X,Y,V> implements Cloneable
 		}
 	}
 	
-	public void clear()
+	/*
+	 * Returns the value at the given legend positions
+	 */
+	@SuppressWarnings("unchecked")
+	private V valueAt(int x, int y)
+	{
+		if(storage == Storage.DENSE)
+		{
+			return (V)cells.get(x*yCapacity+y);
+		}
+		else if(storage == Storage.NUMERIC)
+		{
+			//only grids of Doubles are NUMERIC
+			long bits = cells.getLong(x*yCapacity+y);
+			return bits != EMPTY_BITS ? (V)Double.valueOf(Double.longBitsToDouble(bits)) : null;
+		}
+		else
+		{
+			return data.get(xLegend.get(x)).get(yLegend.get(y));
+		}
+	}
+	
+	/*
+	 * Returns a view of the values for the given x type, in the order of the 
+	 * y legend, or an empty list if the type isn't present
+	 */
+	public List<V> getRow(X xType)
+	{
+		final int x = xLegend.indexOf(xType);
+		if(x < 0){
+			return Collections.emptyList();
+		}
+		return new AbstractList<V>(){
+			public V get(int y)
+			{
+				if(y < 0 || y >= yLegend.size()){
+					throw new IndexOutOfBoundsException("No y type at "+y);
+				}
+				return valueAt(x, y);
+			}
+			
+			public int size()
+			{
+				return yLegend.size();
+			}
+		};
+	}
+	
+	/*
+	 * Returns a view of the values for the given y type, in the order of the 
+	 * x legend, or an empty list if the type isn't present
+	 */
+	public List<V> getColumn(Y yType)
 	{
-		xLegend.clear();
-		yLegend.clear();
-		data.clear();
+		final int y = yLegend.indexOf(yType);
+		if(y < 0){
+			return Collections.emptyList();
+		}
+		return new AbstractList<V>(){
+			public V get(int x)
+			{
+				if(x < 0 || x >= xLegend.size()){
+					throw new IndexOutOfBoundsException("No x type at "+x);
+				}
+				return valueAt(x, y);
+			}
+			
+			public int size()
+			{
+				return xLegend.size();
+			}
+		};
 	}
 	
-	public Object clone()
+	/*
+	 * Summarises the values for the given x type, which must be Numbers
+	 */
+	public Summary summariseRow(X xType)
+	{
+		return summariseRow(xType, ForkJoinPool.commonPool());
+	}
+	
+	public Summary summariseRow(X xType, ForkJoinPool pool)
 	{
-		TwoDimGrid<X,Y,V> obj = new TwoDimGrid<X,Y,V>();
-		for(X xType : xLegend)
+		int x = xLegend.indexOf(xType);
+		if(x < 0){
+			return new Summary();
+		}
+		return summarise(Slice.ROW, x, yLegend.size(), pool);
+	}
+	
+	/*
+	 * Summarises the values for the given y type, which must be Numbers
+	 */
+	public Summary summariseColumn(Y yType)
+	{
+		return summariseColumn(yType, ForkJoinPool.commonPool());
+	}
+	
+	public Summary summariseColumn(Y yType, ForkJoinPool pool)
+	{
+		int y = yLegend.indexOf(yType);
+		if(y < 0){
+			return new Summary();
+		}
+		return summarise(Slice.COLUMN, y, xLegend.size(), pool);
+	}
+	
+	/*
+	 * Summarises all the values in the grid, which must be Numbers
+	 */
+	public Summary summarise()
+	{
+		return summarise(ForkJoinPool.commonPool());
+	}
+	
+	public Summary summarise(ForkJoinPool pool)
+	{
+		return summarise(Slice.ALL, 0, xLegend.size(), pool);
+	}
+	
+	private enum Slice {ROW, COLUMN, ALL}
+	
+	private Summary summarise(Slice slice, int fixed, int length, ForkJoinPool pool)
+	{
+		long cells = slice == Slice.ALL ? (long)length*yLegend.size() : length;
+		Summary summary = new Summary();
+		if(cells > PARALLEL_CELLS && pool.getParallelism() > 1)
+		{
+			long grain = Math.max(PARALLEL_CELLS/4, cells/(pool.getParallelism()*TASKS_PER_THREAD));
+			int lines = slice == Slice.ALL ? (int)Math.max(1, grain/Math.max(1, yLegend.size())) 
+					: (int)grain;
+			summary.merge(pool.invoke(new SummaryTask(slice, fixed, 0, length, lines)));
+		}
+		else
+		{
+			summarise(slice, fixed, 0, length, summary);
+		}
+		return summary;
+	}
+	
+	/*
+	 * Adds the values along part of a row or column, or in a run of rows, 
+	 * to the summary
+	 */
+	private void summarise(Slice slice, int fixed, int from, int to, Summary summary)
+	{
+		if(slice == Slice.ALL)
+		{
+			for(int x=from; x<to; x++)
+			{
+				summarise(Slice.ROW, x, 0, yLegend.size(), summary);
+			}
+		}
+		else if(storage == Storage.NUMERIC)
+		{
+			if(slice == Slice.ROW){
+				summariseRun(fixed*yCapacity+from, fixed*yCapacity+to, summary);
+			}else{
+				summariseStrided(from*yCapacity+fixed, to-from, yCapacity, summary);
+			}
+		}
+		else if(storage == Storage.HASHED)
+		{
+			//look the fixed type up once
+			HashMap<Y,V> row = slice == Slice.ROW ? data.get(xLegend.get(fixed)) : null;
+			Y yType = slice == Slice.COLUMN ? yLegend.get(fixed) : null;
+			for(int i=from; i<to; i++)
+			{
+				V value = row != null ? row.get(yLegend.get(i)) : data.get(xLegend.get(i)).get(yType);
+				if(value != null){
+					summary.add(((Number)value).doubleValue());
+				}
+			}
+		}
+		else
+		{
+			for(int i=from; i<to; i++)
+			{
+				V value = slice == Slice.ROW ? valueAt(fixed, i) : valueAt(i, fixed);
+				if(value != null){
+					summary.add(((Number)value).doubleValue());
+				}
+			}
+		}
+	}
+	
+	/*
+	 * Summarises a run of numeric cells a block at a time
+	 */
+	private void summariseRun(int from, int to, Summary summary)
+	{
+		int count = 0;
+		double sum = 0;
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		int i = from;
+		while(i < to)
+		{
+			long[] block = cells.longBlock(i >>> SharedBlocks.BLOCK_BITS);
+			int start = i & SharedBlocks.BLOCK_MASK;
+			int end = Math.min(SharedBlocks.BLOCK_SIZE, start+to-i);
+			for(int j=start; j<end; j++)
+			{
+				long bits = block[j];
+				if(bits != EMPTY_BITS)
+				{
+					double value = Double.longBitsToDouble(bits);
+					count++;
+					sum += value;
+					min = Math.min(min, value);
+					max = Math.max(max, value);
+				}
+			}
+			i += end-start;
+		}
+		summary.add(count, sum, min, max);
+	}
+	
+	private void summariseStrided(int from, int length, int stride, Summary summary)
+	{
+		int count = 0;
+		double sum = 0;
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		for(int i=0, index=from; i<length; i++, index+=stride)
 		{
-			for(Y yType : yLegend)
+			long bits = cells.getLong(index);
+			if(bits != EMPTY_BITS)
 			{
-				obj.add(xType, yType, get(xType,yType));
+				double value = Double.longBitsToDouble(bits);
+				count++;
+				sum += value;
+				min = Math.min(min, value);
+				max = Math.max(max, value);
 			}
-		}		
+		}
+		summary.add(count, sum, min, max);
+	}
+	
+	/*
+	 * Splits a slice in half until pieces are no longer than the grain 
+	 * size, then summarises them and merges the results
+	 */
+	@SuppressWarnings("serial")
+	private class SummaryTask extends RecursiveTask<Summary>
+	{
+		private Slice slice;
+		private int fixed, from, to, grain;
+		
+		public SummaryTask(Slice slice, int fixed, int from, int to, int grain)
+		{
+			this.slice = slice;
+			this.fixed = fixed;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+		}
+		
+		protected Summary compute()
+		{
+			if(to-from <= grain)
+			{
+				Summary summary = new Summary();
+				summarise(slice, fixed, from, to, summary);
+				return summary;
+			}
+			int mid = (from+to) >>> 1;
+			SummaryTask right = new SummaryTask(slice, fixed, mid, to, grain);
+			right.fork();
+			Summary summary = new SummaryTask(slice, fixed, from, mid, grain).compute();
+			summary.merge(right.join());
+			return summary;
+		}
+	}
+	
+	public void clear()
+	{
+		xLegend = new Legend<X>();
+		yLegend = new Legend<Y>();
+		xLegendOwned = yLegendOwned = true;
+		if(storage != Storage.HASHED){
+			allocate(INITIAL_CAPACITY, INITIAL_CAPACITY);
+		}else{
+			data = new HashMap<X,HashMap<Y,V>>();
+			dataOwned = true;
+			ownedRows = null;
+		}
+	}
+	
+	/*
+	 * Returns a grid sharing this one's contents, in constant time
+	 */
+	public Object clone()
+	{
+		TwoDimGrid<X,Y,V> obj = new TwoDimGrid<X,Y,V>(storage, true);
+		obj.xLegend = xLegend;
+		obj.yLegend = yLegend;
+		obj.xLegendOwned = obj.yLegendOwned = xLegendOwned = yLegendOwned = false;
+		if(storage != Storage.HASHED)
+		{
+			obj.xCapacity = xCapacity;
+			obj.yCapacity = yCapacity;
+			obj.cells = cells.share();
+		}
+		else
+		{
+			obj.data = data;
+			obj.dataOwned = dataOwned = false;
+			obj.ownedRows = newRowSet();
+			ownedRows = newRowSet();
+		}
 		return obj;
 	}
 	
 	public boolean isEmpty()
 	{
-		return data.isEmpty();
+		return xLegend.size() == 0;
+	}
+	
+	/*
+	 * The number, total, least, greatest and mean of a set of values. The 
+	 * least, greatest and mean of no values are NaN.
+	 */
+	public static final class Summary implements StandardHashable
+	{
+		private int count;
+		private double sum;
+		private double min = Double.POSITIVE_INFINITY;
+		private double max = Double.NEGATIVE_INFINITY;
+		
+		public int getCount()
+		{
+			return count;
+		}
+		
+		public double getSum()
+		{
+			return sum;
+		}
+		
+		public double getMin()
+		{
+			return count > 0 ? min : Double.NaN;
+		}
+		
+		public double getMax()
+		{
+			return count > 0 ? max : Double.NaN;
+		}
+		
+		public double getMean()
+		{
+			return count > 0 ? sum/count : Double.NaN;
+		}
+		
+		void add(double value)
+		{
+			add(1, value, value, value);
+		}
+		
+		void add(int count, double sum, double min, double max)
+		{
+			this.count += count;
+			this.sum += sum;
+			this.min = Math.min(this.min, min);
+			this.max = Math.max(this.max, max);
+		}
+		
+		void merge(Summary oth)
+		{
+			add(oth.count, oth.sum, oth.min, oth.max);
+		}
+		
+		public Object[] getHashableValues()
+		{
+			return new Object[]{getCount(), getSum(), getMin(), getMax()};
+		}
+		
+		public boolean equals(Object obj)
+		{
+			return ObjectUtils.standardEquals(this, obj);
+		}
+		
+		public int hashCode()
+		{
+			return ObjectUtils.standardHashCode(this);
+		}
+		
+		public String toString()
+		{
+			return "[count="+count+", sum="+sum+", min="+getMin()+", max="+getMax()
+					+", mean="+getMean()+"]";
+		}
 	}
 }
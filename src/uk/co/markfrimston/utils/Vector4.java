@@ -0,0 +1,86 @@
+/*
+Copyright (c) 2008 Mark Frimston
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package uk.co.markfrimston.utils;
+
+/*
+ * A homogeneous 3D point or direction
+ */
+public final class Vector4 implements StandardHashable
+{
+	public double x;
+	public double y;
+	public double z;
+	public double w;
+	
+	public Vector4()
+	{
+		
+	}
+	
+	public Vector4(double x, double y, double z, double w)
+	{
+		set(x, y, z, w);
+	}
+	
+	public Vector4 set(double x, double y, double z, double w)
+	{
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.w = w;
+		return this;
+	}
+	
+	public Vector4 set(Vector4 oth)
+	{
+		return set(oth.x, oth.y, oth.z, oth.w);
+	}
+	
+	public double dot(Vector4 oth)
+	{
+		return x*oth.x + y*oth.y + z*oth.z + w*oth.w;
+	}
+
+	public Object[] getHashableValues() 
+	{
+		return new Object[]{x,y,z,w};
+	}
+	
+	public boolean equals(Object obj)
+	{
+		return ObjectUtils.standardEquals(this, obj);
+	}
+	
+	public int hashCode()
+	{
+		return ObjectUtils.standardHashCode(this);
+	}
+	
+	public String toString()
+	{
+		return "["+x+", "+y+", "+z+", "+w+"]";
+	}
+}
@@ -27,8 +27,8 @@ package uk.co.markfrimston.utils;
 
 import java.util.*;
 import java.io.*;
+import java.util.concurrent.*;
 import uk.co.markfrimston.utils.*;
-import java.util.regex.*;
 
 public class WireframeModel
 {	
@@ -94,6 +94,10 @@ public class WireframeModel
 	private double[][] points;
 	private int[][] lines;
 	private Matrix matrix;
+	private PointBuffer pointBuffer;
+	//mapped binary file the points and lines come from, until they're needed
+	//as arrays
+	private BinaryModelFile binary;
 	private boolean dirty = true;
 	
 	public WireframeModel()
@@ -109,68 +113,146 @@ public class WireframeModel
 
 	private void update()
 	{
-		double[][] data = new double[4][points.length];
-		for(int i=0; i<points.length; i++)
-		{
-			for(int j=0; j<3; j++)
-			{
-				data[j][i] = points[i][j];
-			}
-			data[3][i] = 1;
-		}
-		this.matrix = new Matrix(data);
+		this.matrix = null;
+		this.pointBuffer = null;
 		this.dirty = false;
 	}
 	
 	public double[][] getPoints()
 	{
+		if(points == null && binary != null)
+		{
+			int size = binary.numPoints;
+			points = new double[size][4];
+			for(int i=0; i<size; i++)
+			{
+				points[i][0] = binary.xs.get(i);
+				points[i][1] = binary.ys.get(i);
+				points[i][2] = binary.zs.get(i);
+			}
+		}
 		return points;
 	}
 
 	public void setPoints(double[][] points)
 	{
+		getLines();
+		this.binary = null;
 		this.points = points;
 		dirty = true;
 	}
 
 	public int[][] getLines()
 	{
+		if(lines == null && binary != null)
+		{
+			lines = new int[binary.numLines][2];
+			for(int i=0; i<lines.length; i++)
+			{
+				lines[i][0] = binary.lines.get(i*2);
+				lines[i][1] = binary.lines.get(i*2+1);
+			}
+		}
 		return lines;
 	}
 
 	public void setLines(int[][] lines)
 	{
+		getPoints();
+		this.binary = null;
 		this.lines = lines;
 		dirty = true;
 	}
 	
 	public int getNumLines()
 	{
+		if(lines == null && binary != null){
+			return binary.numLines;
+		}
 		return lines.length;
 	}
 	
 	public int[] getLine(int number)
 	{
+		if(lines == null && binary != null){
+			return new int[]{binary.lines.get(number*2), binary.lines.get(number*2+1)};
+		}
 		return lines[number];
 	}
 	
 	public int getNumPoints()
 	{
+		if(points == null && binary != null){
+			return binary.numPoints;
+		}
 		return points.length;
 	}
 	
 	public Matrix getMatrix()
 	{
 		if(dirty) update();
+		if(matrix == null && points == null && binary != null)
+		{
+			//copied a row at a time straight from the mapped file
+			int size = binary.numPoints;
+			double[] data = new double[size*4];
+			binary.xs.duplicate().get(data, 0, size);
+			binary.ys.duplicate().get(data, size, size);
+			binary.zs.duplicate().get(data, size*2, size);
+			Arrays.fill(data, size*3, size*4, 1.0);
+			this.matrix = new Matrix(4, size, data);
+		}
+		else if(matrix == null)
+		{
+			double[][] data = new double[4][points.length];
+			for(int i=0; i<points.length; i++)
+			{
+				for(int j=0; j<3; j++)
+				{
+					data[j][i] = points[i][j];
+				}
+				data[3][i] = 1;
+			}
+			this.matrix = new Matrix(data);
+		}
 		return matrix;
 	}
 	
+	/*
+	 * Returns the points as a structure-of-arrays buffer, with w values of 1
+	 */
+	public PointBuffer getPointBuffer()
+	{
+		if(dirty) update();
+		if(pointBuffer == null && points == null && binary != null)
+		{
+			int size = binary.numPoints;
+			pointBuffer = new PointBuffer(size);
+			binary.xs.duplicate().get(pointBuffer.xs, 0, size);
+			binary.ys.duplicate().get(pointBuffer.ys, 0, size);
+			binary.zs.duplicate().get(pointBuffer.zs, 0, size);
+			Arrays.fill(pointBuffer.ws, 1.0);
+		}
+		else if(pointBuffer == null)
+		{
+			pointBuffer = new PointBuffer(points.length);
+			for(int i=0; i<points.length; i++)
+			{
+				double[] p = points[i];
+				pointBuffer.set(i, p[0], p[1], p[2], 1);
+			}
+		}
+		return pointBuffer;
+	}
+	
 	public boolean equals(Object oth)
 	{
 		if(oth==null) return false;
 		if(!oth.getClass().equals(this.getClass())) return false;
 		
 		WireframeModel mod = (WireframeModel)oth;
+		this.materialise();
+		mod.materialise();
 		if((this.points==null)!=(mod.points==null)) return false;
 		if(this.points!=null && this.points.length!=mod.points.length) return false;
 		if(this.points.length > 0)
@@ -195,6 +277,7 @@ public class WireframeModel
 	
 	public int hashCode()
 	{
+		materialise();
 		return ("model"+String.valueOf(Arrays.hashCode(points))
 				+String.valueOf(Arrays.hashCode(lines))).hashCode();
 	}
@@ -208,105 +291,156 @@ public class WireframeModel
 	public void loadObj(InputStream input, double scaling)
 		throws IOException, ModelFormatException
 	{
-		Pattern faceVertexPattern = Pattern.compile("(\\d+)(?:/(\\d*)(?:/(\\d*))?)?");
-		
-		BufferedReader reader = null;
 		try
 		{
-			List<Trio<Double,Double,Double>> points 
-				= new ArrayList<Trio<Double,Double,Double>>();
-			List<Pair<Integer,Integer>> lines
-				= new ArrayList<Pair<Integer,Integer>>();
-			
-			reader = new BufferedReader(new InputStreamReader(input));
-			String line = null;
-			while((line=reader.readLine())!=null)
-			{
-				String[] tokens = line.split("\\s");
-				if(tokens.length>0)
-				{
-					if(tokens[0].equals("v"))
-					{
-						//vertex with x,y,z 
-						if(tokens.length != 4){
-							throw new ModelFormatException("Expected 3 values for vertex");
-						}
-						double x,y,z;
-						try
-						{
-							x = Double.parseDouble(tokens[1]) * scaling;
-							y = Double.parseDouble(tokens[2]) * scaling;
-							z = Double.parseDouble(tokens[3]) * scaling;
-						}
-						catch(NumberFormatException e)
-						{
-							throw new ModelFormatException("Bad coordinate value for vertex",e);
-						}
-						points.add(new Trio<Double,Double,Double>(x,y,z));
-					}
-					else if(tokens[0].equals("f"))
-					{
-						//face with list of vertices
-						int firstVertex = -1;
-						int prevVertex = -1;
-						for(int i=1; i<tokens.length; i++)
-						{
-							String vertex = tokens[i];
-							Matcher m = faceVertexPattern.matcher(vertex);
-							if(!m.matches()){
-								throw new ModelFormatException("Bad vertex format for face");
-							}
-							int vertexIndex = -1;
-							try
-							{
-								vertexIndex = Integer.parseInt(m.group(1));
-							}
-							catch(NumberFormatException e)
-							{
-								throw new ModelFormatException("Bad vertex index for face",e);
-							}
-							if(firstVertex == -1)
-							{
-								firstVertex = vertexIndex;
-							}
-							else
-							{
-								lines.add(new Pair<Integer,Integer>(prevVertex-1,vertexIndex-1));
-								if(i==tokens.length-1)
-								{
-									lines.add(new Pair<Integer,Integer>(vertexIndex-1,firstVertex-1));
-								}
-							}
-							prevVertex= vertexIndex;
-						}
-					}
-				}
-			}		
-			
-			this.points = new double[points.size()][4];
-			for(int i=0; i<points.size(); i++)
-			{
-				Trio<Double,Double,Double> p = points.get(i);
-				this.points[i][0] = p.a;
-				this.points[i][1] = p.b;
-				this.points[i][2] = p.c;
-			}
-			
-			this.lines = new int[lines.size()][2];
-			for(int i=0; i<lines.size(); i++)
-			{
-				Pair<Integer,Integer> l = lines.get(i);
-				this.lines[i][0] = l.a;
-				this.lines[i][1] = l.b;
-			}
-			
-			dirty = true;
+			ObjParser parser = new ObjParser(scaling);
+			parser.parse(input);
+			setFromParser(parser);
 		}
 		finally
 		{
 			try{
-				reader.close();
+				input.close();
 			}catch(Exception e){}
 		}		
 	}
+	
+	public void loadObj(File file) 
+		throws IOException, ModelFormatException
+	{
+		loadObj(file, 1.0);
+	}
+	
+	/*
+	 * Loads the model from an OBJ file, which is memory-mapped rather than
+	 * read through a stream
+	 */
+	public void loadObj(File file, double scaling)
+		throws IOException, ModelFormatException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			ObjParser parser = new ObjParser(scaling);
+			parser.parse(raf.getChannel());
+			setFromParser(parser);
+		}
+		finally
+		{
+			try{
+				raf.close();
+			}catch(Exception e){}
+		}
+	}
+	
+	/*
+	 * Loads the model from an OBJ file, which is memory-mapped and split 
+	 * between the threads of the given pool
+	 */
+	public void loadObj(File file, double scaling, ForkJoinPool pool)
+		throws IOException, ModelFormatException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			Pair<double[][],int[][]> model = ObjParser.parse(raf.getChannel(), scaling, pool);
+			this.binary = null;
+			this.points = model.a;
+			this.lines = model.b;
+			dirty = true;
+		}
+		finally
+		{
+			try{
+				raf.close();
+			}catch(Exception e){}
+		}
+	}
+	
+	private void setFromParser(ObjParser parser)
+	{
+		this.binary = null;
+		this.points = parser.getPoints();
+		this.lines = parser.getLines();
+		dirty = true;
+	}
+	
+	/*
+	 * Writes the model to a compact binary file, which loadBinary can map
+	 * back in far faster than an OBJ file can be parsed
+	 */
+	public void saveBinary(File file) throws IOException
+	{
+		BinaryModelFile.write(file, getPointBuffer(), getLines(), -1, 0, 1.0);
+	}
+	
+	/*
+	 * Maps in a model written by saveBinary. The points and lines are read 
+	 * straight from the mapping until they're asked for as arrays.
+	 */
+	public void loadBinary(File file) throws IOException, ModelFormatException
+	{
+		BinaryModelFile binary = BinaryModelFile.read(file);
+		this.points = null;
+		this.lines = null;
+		this.binary = binary;
+		dirty = true;
+	}
+	
+	/*
+	 * Loads the model from an OBJ file by way of a binary cache of it next to
+	 * the file, with ".wfm" added to its name
+	 */
+	public void loadObjCached(File source, double scaling)
+		throws IOException, ModelFormatException
+	{
+		loadObjCached(source, new File(source.getPath()+".wfm"), scaling);
+	}
+	
+	/*
+	 * Loads the model from an OBJ file by way of the given binary cache. The 
+	 * cache is used if it was made from the file at its current length and 
+	 * modification time with the same scaling, and passes its checksum. 
+	 * Otherwise, or if it can't be read, the OBJ file is parsed and the cache 
+	 * written afresh, if it can be.
+	 */
+	public void loadObjCached(File source, File cache, double scaling)
+		throws IOException, ModelFormatException
+	{
+		try
+		{
+			BinaryModelFile header = BinaryModelFile.readHeader(cache);
+			if(header != null && header.isFrom(source, scaling))
+			{
+				loadBinary(cache);
+				return;
+			}
+		}
+		catch(IOException e)
+		{
+			//unreadable - rebuild it
+		}
+		catch(ModelFormatException e)
+		{
+			//damaged - rebuild it
+		}
+		
+		long length = source.length();
+		long modified = source.lastModified();
+		loadObj(source, scaling);
+		try
+		{
+			BinaryModelFile.write(cache, getPointBuffer(), getLines(), length, modified, scaling);
+		}
+		catch(IOException e)
+		{
+			//the cache is only an optimisation - the model itself loaded fine
+		}
+	}
+	
+	private void materialise()
+	{
+		getPoints();
+		getLines();
+	}
 }
@@ -0,0 +1,60 @@
+package uk.co.markfrimston.utils.tests;
+
+import java.io.*;
+import uk.co.markfrimston.utils.*;
+
+/*
+ * Times saving a ten million point grid mesh as a binary model file, and 
+ * loading it back both on its own and through to its point matrix. Needs
+ * a heap of a couple of gigabytes. Run from the command line - not part of 
+ * the unit test suite.
+ */
+public class BinaryModelBenchmark
+{
+	private static final int GRID = 3163;
+	private static final int RUNS = 3;
+	
+	public static void main(String[] args) throws Exception
+	{
+		double[][] points = new double[GRID*GRID][];
+		for(int i=0; i<GRID; i++)
+		{
+			for(int j=0; j<GRID; j++)
+			{
+				points[i*GRID+j] = new double[]{i, j, (i*j) % 7};
+			}
+		}
+		int[][] lines = new int[2*GRID*(GRID-1)][];
+		int line = 0;
+		for(int i=0; i<GRID; i++)
+		{
+			for(int j=0; j<GRID-1; j++)
+			{
+				lines[line++] = new int[]{i*GRID+j, i*GRID+j+1};
+				lines[line++] = new int[]{j*GRID+i, (j+1)*GRID+i};
+			}
+		}
+		WireframeModel model = new WireframeModel(points, lines);
+		File file = File.createTempFile("benchmark", ".wfm");
+		file.deleteOnExit();
+		
+		long start = System.nanoTime();
+		model.saveBinary(file);
+		System.out.println(points.length+" points, "+lines.length+" lines, "
+				+(file.length()/1000000)+"MB saved in "+((System.nanoTime()-start)/1000000)+"ms");
+		model = null;
+		points = null;
+		lines = null;
+		
+		for(int i=0; i<RUNS; i++)
+		{
+			start = System.nanoTime();
+			WireframeModel loaded = new WireframeModel();
+			loaded.loadBinary(file);
+			long load = System.nanoTime()-start;
+			loaded.getMatrix();
+			long matrix = System.nanoTime()-start;
+			System.out.println("loaded in "+(load/1000000)+"ms, with matrix "+(matrix/1000000)+"ms");
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package uk.co.markfrimston.utils.tests;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+import org.junit.*;
+import uk.co.markfrimston.utils.*;
+import static org.junit.Assert.*;
+
+public class ConcurrentThreeDimGridTest
+{
+	private static final int THREADS = 4;
+	private static final int ADDS = 10000;
+	
+	@Test
+	public void testMerge() throws Exception
+	{
+		final ConcurrentThreeDimGrid<Integer,Integer,Integer,Long> grid 
+				= new ConcurrentThreeDimGrid<Integer,Integer,Integer,Long>();
+		final BinaryOperator<Long> sum = new BinaryOperator<Long>(){
+			public Long apply(Long a, Long b)
+			{
+				return a+b;
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for(int t=0; t<THREADS; t++)
+		{
+			futures.add(executor.submit(new Runnable(){
+				public void run()
+				{
+					for(int i=0; i<ADDS; i++)
+					{
+						grid.merge(i % 5, i % 7, i % 11, (long)i, sum);
+					}
+				}
+			}));
+		}
+		for(Future<?> future : futures)
+		{
+			future.get();
+		}
+		executor.shutdown();
+		
+		long[][][] expected = new long[5][7][11];
+		for(int i=0; i<ADDS; i++)
+		{
+			expected[i % 5][i % 7][i % 11] += (long)i*THREADS;
+		}
+		ThreeDimGrid<Integer,Integer,Integer,Long> plain = grid.toGrid(ThreeDimGrid.Storage.SPARSE);
+		for(int x=0; x<5; x++)
+		{
+			for(int y=0; y<7; y++)
+			{
+				for(int z=0; z<11; z++)
+				{
+					Long value = expected[x][y][z] != 0 ? expected[x][y][z] : null;
+					assertEquals(value, grid.get(x, y, z));
+					assertEquals(value, plain.get(x, y, z));
+				}
+			}
+		}
+		assertEquals(11, grid.getZLegend().size());
+		
+		@SuppressWarnings("unchecked")
+		ConcurrentThreeDimGrid<Integer,Integer,Integer,Long> copy 
+				= (ConcurrentThreeDimGrid<Integer,Integer,Integer,Long>)grid.clone();
+		grid.clear();
+		assertTrue(grid.isEmpty());
+		assertEquals(Long.valueOf(expected[1][1][1]), copy.get(1, 1, 1));
+	}
+}
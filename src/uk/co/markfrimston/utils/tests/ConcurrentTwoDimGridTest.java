@@ -0,0 +1,110 @@
+package uk.co.markfrimston.utils.tests;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+import org.junit.*;
+import uk.co.markfrimston.utils.*;
+import static org.junit.Assert.*;
+
+public class ConcurrentTwoDimGridTest
+{
+	private static final int THREADS = 8;
+	private static final int ADDS = 20000;
+	private static final int TYPES = 300;
+	
+	private static final BinaryOperator<Integer> SUM = new BinaryOperator<Integer>(){
+		public Integer apply(Integer a, Integer b)
+		{
+			return a+b;
+		}
+	};
+	
+	@Test
+	public void testMerge() throws Exception
+	{
+		final ConcurrentTwoDimGrid<String,Integer,Integer> grid 
+				= new ConcurrentTwoDimGrid<String,Integer,Integer>();
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for(int t=0; t<THREADS; t++)
+		{
+			final int thread = t;
+			futures.add(executor.submit(new Runnable(){
+				public void run()
+				{
+					//each thread meets the types in a different order
+					for(int i=0; i<ADDS; i++)
+					{
+						int n = (i*31 + thread*7) % TYPES;
+						grid.merge("x"+(n % 17), n, 1, SUM);
+					}
+				}
+			}));
+		}
+		for(Future<?> future : futures)
+		{
+			future.get();
+		}
+		executor.shutdown();
+		
+		int total = 0;
+		for(String xType : grid.getXLegend())
+		{
+			for(Integer yType : grid.getYLegend())
+			{
+				Integer count = grid.get(xType, yType);
+				if(count != null){
+					total += count;
+				}
+			}
+		}
+		assertEquals(THREADS*ADDS, total);
+		assertEquals(17, grid.getXLegend().size());
+		assertEquals(TYPES, grid.getYLegend().size());
+		assertEquals(TYPES, new HashSet<Integer>(grid.getYLegend()).size());
+		
+		TwoDimGrid<String,Integer,Integer> plain = grid.toGrid(TwoDimGrid.Storage.DENSE);
+		assertEquals(grid.getXLegend(), plain.getXLegend());
+		assertEquals(grid.getYLegend(), plain.getYLegend());
+		for(int n=0; n<TYPES; n++)
+		{
+			assertEquals(grid.get("x"+(n % 17), n), plain.get("x"+(n % 17), n));
+		}
+	}
+	
+	@Test
+	public void testAdd()
+	{
+		ConcurrentTwoDimGrid<String,String,String> grid 
+				= new ConcurrentTwoDimGrid<String,String,String>();
+		assertTrue(grid.isEmpty());
+		grid.add("a", "b", "c");
+		grid.add("a", "d", "e");
+		grid.addYType("f");
+		assertFalse(grid.isEmpty());
+		assertEquals(Arrays.asList("b", "d", "f"), grid.getYLegend());
+		assertEquals("c", grid.get("a", "b"));
+		assertNull(grid.get("a", "f"));
+		assertNull(grid.get("missing", "b"));
+		assertEquals("cg", grid.merge("a", "b", "g", new BinaryOperator<String>(){
+			public String apply(String a, String b)
+			{
+				return a+b;
+			}
+		}));
+		
+		@SuppressWarnings("unchecked")
+		ConcurrentTwoDimGrid<String,String,String> copy 
+				= (ConcurrentTwoDimGrid<String,String,String>)grid.clone();
+		grid.add("a", "b", null);
+		assertNull(grid.get("a", "b"));
+		assertEquals("cg", copy.get("a", "b"));
+		assertEquals(grid.getYLegend(), copy.getYLegend());
+		
+		grid.clear();
+		assertTrue(grid.isEmpty());
+		assertNull(grid.get("a", "d"));
+		assertEquals("e", copy.get("a", "d"));
+	}
+}
@@ -0,0 +1,157 @@
+package uk.co.markfrimston.utils.tests;
+
+import java.lang.reflect.*;
+import java.sql.*;
+import java.util.*;
+import org.junit.*;
+import uk.co.markfrimston.utils.*;
+import uk.co.markfrimston.utils.DatabaseUtils.*;
+import static org.junit.Assert.*;
+
+public class DatabaseUtilsTest
+{
+	public static class Order
+	{
+		public int id;
+		public String customer;
+		public List<Item> items = new ArrayList<Item>();
+
+		public void addItem(Item item)
+		{
+			items.add(item);
+		}
+	}
+
+	public static class Item
+	{
+		public int id;
+		public String name;
+	}
+
+	/*
+	 * Minimal forward-only result set over an array of rows, counting how many
+	 * rows have been read
+	 */
+	private static class Rows implements InvocationHandler
+	{
+		private String[] labels;
+		private String[][] rows;
+		private int position = -1;
+
+		public Rows(String[] labels, String[][] rows)
+		{
+			this.labels = labels;
+			this.rows = rows;
+		}
+
+		public ResultSet resultSet()
+		{
+			return (ResultSet)Proxy.newProxyInstance(getClass().getClassLoader(),
+					new Class<?>[]{ResultSet.class}, this);
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args)
+		{
+			String name = method.getName();
+			if(name.equals("next"))
+			{
+				position++;
+				return position < rows.length;
+			}
+			else if(name.equals("getString"))
+			{
+				return rows[position][(Integer)args[0]-1];
+			}
+			else if(name.equals("getColumnCount"))
+			{
+				return labels.length;
+			}
+			else if(name.equals("getColumnLabel"))
+			{
+				return labels[(Integer)args[0]-1];
+			}
+			else if(name.equals("getMetaData"))
+			{
+				return Proxy.newProxyInstance(getClass().getClassLoader(),
+						new Class<?>[]{ResultSetMetaData.class}, this);
+			}
+			throw new UnsupportedOperationException(name);
+		}
+	}
+
+	private static final String[] LABELS = {"id", "customer", "id", "name"};
+	private static final String[][] ROWS = {
+		{"1", "alice", "10", "apple"},
+		{"1", "alice", "11", "banana"},
+		{"2", "bob",   null, null    },
+		{"3", "carol", "12", "cherry"},
+		{"3", "carol", "13", "damson"},
+		{"3", "carol", "14", "elder" }
+	};
+
+	private static void assertOrder(Order order, int id, String customer, String... itemNames)
+	{
+		assertEquals(id, order.id);
+		assertEquals(customer, order.customer);
+		assertEquals(itemNames.length, order.items.size());
+		for(int i=0; i<itemNames.length; i++)
+		{
+			assertEquals(itemNames[i], order.items.get(i).name);
+		}
+	}
+
+	@Test
+	public void testMapResults() throws Exception
+	{
+		List<Order> orders = DatabaseUtils.mapResults(new Rows(LABELS, ROWS).resultSet(),
+				new ColumnMapping<Order>(Order.class, 2), new ColumnMapping<Item>(Item.class, 2));
+		assertEquals(3, orders.size());
+		assertOrder(orders.get(0), 1, "alice", "apple", "banana");
+		assertOrder(orders.get(1), 2, "bob");
+		assertOrder(orders.get(2), 3, "carol", "cherry", "damson", "elder");
+		assertEquals(11, orders.get(0).items.get(1).id);
+	}
+
+	@Test
+	public void testMapResultsStreaming() throws Exception
+	{
+		final Rows rows = new Rows(LABELS, ROWS);
+		final List<Order> orders = new ArrayList<Order>();
+		final List<Integer> rowsRead = new ArrayList<Integer>();
+		final List<Integer> itemCounts = new ArrayList<Integer>();
+		DatabaseUtils.mapResults(rows.resultSet(), new ResultHandler<Order>(){
+			public void handle(Order order)
+			{
+				orders.add(order);
+				rowsRead.add(rows.position);
+				itemCounts.add(order.items.size());
+			}
+		}, new ColumnMapping<Order>(Order.class, 2), new ColumnMapping<Item>(Item.class, 2));
+
+		//each order is handled complete, as soon as the row after it is read
+		assertEquals(3, orders.size());
+		assertOrder(orders.get(0), 1, "alice", "apple", "banana");
+		assertOrder(orders.get(1), 2, "bob");
+		assertOrder(orders.get(2), 3, "carol", "cherry", "damson", "elder");
+		assertEquals(Arrays.asList(2, 3, 6), rowsRead);
+		assertEquals(Arrays.asList(2, 0, 3), itemCounts);
+	}
+
+	@Test
+	public void testMapResultsEmpty() throws Exception
+	{
+		List<Order> orders = DatabaseUtils.mapResults(new Rows(LABELS, new String[0][]).resultSet(),
+				new ColumnMapping<Order>(Order.class, 2), new ColumnMapping<Item>(Item.class, 2));
+		assertTrue(orders.isEmpty());
+	}
+
+	@Test
+	public void testMapResultsMismatch() throws Exception
+	{
+		try{
+			DatabaseUtils.mapResults(new Rows(LABELS, ROWS).resultSet(),
+					new ColumnMapping<Order>(Order.class, 2), new ColumnMapping<Item>(Item.class, 1));
+			fail();
+		}catch(ColumnMappingException e){}
+	}
+}
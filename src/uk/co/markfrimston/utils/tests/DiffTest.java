@@ -0,0 +1,46 @@
+package uk.co.markfrimston.utils.tests;
+
+import java.util.*;
+import org.junit.*;
+import uk.co.markfrimston.utils.*;
+import uk.co.markfrimston.utils.Diff.*;
+import static org.junit.Assert.*;
+
+public class DiffTest
+{
+	@Test
+	public void testDiff()
+	{
+		List<Edit> edits = Diff.diff(Sequence.make("abcabba"), Sequence.make("cbabac"));
+		int kept = 0;
+		StringBuffer result = new StringBuffer();
+		for(Edit edit : edits)
+		{
+			if(edit.operation == Operation.KEEP)
+			{
+				kept += edit.length;
+				result.append("abcabba".substring(edit.positionA, edit.positionA+edit.length));
+			}
+			else if(edit.operation == Operation.INSERT)
+			{
+				result.append("cbabac".substring(edit.positionB, edit.positionB+edit.length));
+			}
+		}
+		//longest common subsequence is 4 long
+		assertEquals(4, kept);
+		assertEquals("cbabac", result.toString());
+	}
+	
+	@Test
+	public void testDiffLines()
+	{
+		List<Edit> edits = Diff.diffLines("one\ntwo\nthree\nfour\n", "one\nthree\nfour\nfive\n");
+		assertEquals(Arrays.asList(
+				new Edit(Operation.KEEP, 0, 0, 1),
+				new Edit(Operation.DELETE, 1, 1, 1),
+				new Edit(Operation.KEEP, 2, 1, 2),
+				new Edit(Operation.INSERT, 4, 3, 1)), edits);
+		assertEquals(Arrays.asList(new Edit(Operation.INSERT, 0, 0, 2)), 
+				Diff.diffLines("", "a\nb"));
+	}
+}
@@ -0,0 +1,69 @@
+package uk.co.markfrimston.utils.tests;
+
+import java.util.*;
+import java.util.concurrent.*;
+import uk.co.markfrimston.utils.*;
+
+/*
+ * Times the batch distance calculations in SequenceUtils with increasing
+ * numbers of worker threads. Run from the command line - not part of the 
+ * unit test suite.
+ */
+public class DistanceBenchmark
+{
+	private static final int CANDIDATES = 100000;
+	private static final int CLUSTER = 1000;
+	private static final int RUNS = 5;
+	
+	public static void main(String[] args)
+	{
+		Random random = new Random(1);
+		List<Sequence<Character>> candidates = new ArrayList<Sequence<Character>>();
+		for(int i=0; i<CANDIDATES; i++)
+		{
+			StringBuffer sb = new StringBuffer();
+			int length = 10+random.nextInt(20);
+			for(int j=0; j<length; j++)
+			{
+				sb.append((char)('a'+random.nextInt(26)));
+			}
+			candidates.add(Sequence.make(sb.toString()));
+		}
+		Sequence<Character> query = candidates.get(0);
+		List<Sequence<Character>> cluster = candidates.subList(0, CLUSTER);
+		
+		int cores = Runtime.getRuntime().availableProcessors();
+		for(int threads=1; threads<=cores; threads*=2)
+		{
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			//warm up
+			SequenceUtils.distances(query, candidates, 10, pool);
+			SequenceUtils.pairwiseDistances(cluster, 10, pool);
+			
+			long start = System.nanoTime();
+			for(int i=0; i<RUNS; i++)
+			{
+				SequenceUtils.distances(query, candidates, 10, pool);
+			}
+			long batch = (System.nanoTime()-start)/RUNS/1000000;
+			
+			start = System.nanoTime();
+			for(int i=0; i<RUNS; i++)
+			{
+				SequenceUtils.pairwiseDistances(cluster, 10, pool);
+			}
+			long pairwise = (System.nanoTime()-start)/RUNS/1000000;
+			
+			start = System.nanoTime();
+			for(int i=0; i<RUNS; i++)
+			{
+				SequenceUtils.nearest(query, candidates, 10, 10, pool);
+			}
+			long nearest = (System.nanoTime()-start)/RUNS/1000000;
+			
+			System.out.println(threads+" threads: distances "+batch+"ms, pairwise "
+					+pairwise+"ms, nearest "+nearest+"ms");
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package uk.co.markfrimston.utils.tests;
+
+import java.util.*;
+import org.junit.*;
+import uk.co.markfrimston.utils.*;
+import static org.junit.Assert.*;
+
+public class FuzzyIndexTest
+{
+	@Test
+	public void testSearch()
+	{
+		List<String> words = Arrays.asList("book", "books", "cake", "boo", "boon", "cook", 
+				"cape", "cart", "", "bookkeeper");
+		FuzzyIndex<String> index = FuzzyIndex.ofStrings(words);
+		assertEquals(words.size(), index.size());
+		
+		for(String query : new String[]{"book", "bo", "cakes", "zzzz", "bookeeper", ""})
+		{
+			for(int max=0; max<=4; max++)
+			{
+				Set<String> expected = new HashSet<String>();
+				for(String word : words)
+				{
+					if(StringUtils.distance(query, word, max) != -1){
+						expected.add(word);
+					}
+				}
+				assertEquals(query+"/"+max, expected, new HashSet<String>(index.search(query, max)));
+			}
+		}
+		assertEquals("cape", index.get("cape"));
+		assertNull(index.get("cap"));
+	}
+	
+	@Test
+	public void testSequences()
+	{
+		FuzzyIndex<String> index = new FuzzyIndex<String>();
+		index.put(Sequence.make(new int[]{1, 2, 3}), "a");
+		index.put(Sequence.make(new int[]{1, 2, 4}), "b");
+		index.put(Sequence.make(new int[]{7, 8, 9}), "c");
+		assertEquals("a", index.put(Sequence.make(new int[]{1, 2, 3}), "d"));
+		List<Pair<String,Integer>> found 
+			= index.searchWithDistances(Sequence.make(new int[]{1, 2}), 1);
+		assertEquals(2, found.size());
+		assertEquals(Integer.valueOf(1), found.get(0).b);
+		assertEquals(new HashSet<String>(Arrays.asList("b", "d")), new HashSet<String>(index.search(
+				Sequence.make(Arrays.asList(1, 2)), 1)));
+		
+		FuzzyIndex<Integer> words = new FuzzyIndex<Integer>();
+		words.put(Sequence.make(new String[]{"the", "cat", "sat"}), 1);
+		assertEquals(Arrays.asList(1), words.search(Sequence.make(new String[]{"the", "dog", "sat"}), 1));
+	}
+	
+	@Test
+	public void testMixedKinds()
+	{
+		FuzzyIndex<String> chars = FuzzyIndex.ofStrings(Arrays.asList("abc", "ab"));
+		assertTrue(chars.search(Sequence.make(Arrays.<Object>asList(1, 2, 3)), 2).isEmpty());
+		assertEquals(Arrays.asList("ab"), chars.search(Sequence.make(Arrays.<Object>asList(1, 2)), 2));
+		assertEquals(new HashSet<String>(Arrays.asList("abc", "ab")), new HashSet<String>(
+				chars.search(Sequence.make(Arrays.asList('a', 'b', 'c')), 1)));
+		assertEquals("ab", chars.get(Sequence.make(Arrays.asList('a', 'b'))));
+		try{
+			chars.put(Sequence.make(Arrays.asList("abc")), "strings");
+			fail();
+		}catch(IllegalArgumentException e){}
+		assertEquals(2, chars.size());
+		
+		FuzzyIndex<String> ints = new FuzzyIndex<String>();
+		ints.put(Sequence.make(new int[]{1, 2}), "a");
+		ints.put(Sequence.make(new int[]{-1}), "b");
+		assertEquals(new HashSet<String>(Arrays.asList("a", "b")), new HashSet<String>(
+				ints.search("ab", 2)));
+		assertTrue(ints.search("a", 0).isEmpty());
+		assertEquals(Arrays.asList("b"), ints.search("a", 1));
+		assertEquals(Arrays.asList("b"), ints.search(Sequence.make(Arrays.asList(-1)), 0));
+		assertNull(ints.get("ab"));
+		
+		FuzzyIndex<String> objects = new FuzzyIndex<String>();
+		objects.put(Sequence.make(Arrays.asList(1, 2)), "a");
+		assertEquals(Arrays.asList("a"), objects.search(Sequence.make(new int[]{1, 3}), 1));
+		assertTrue(objects.search("ab", 1).isEmpty());
+	}
+	
+	@Test
+	public void testLongKey()
+	{
+		FuzzyIndex<String> index = new FuzzyIndex<String>();
+		index.put("hello", "hello");
+		char[] chars = new char[100000];
+		Arrays.fill(chars, 'a');
+		index.put(new String(chars), "long");
+		char[] query = new char[2000];
+		Arrays.fill(query, 'h');
+		assertTrue(index.search(new String(query), 2).isEmpty());
+		assertEquals(Arrays.asList("hello"), index.search("hallo", 2));
+	}
+	
+	@Test
+	public void testConcurrentSearch() throws Exception
+	{
+		final List<String> words = Arrays.asList("book", "books", "cake", "boo", "boon", 
+				"cook", "cape", "cart", "bookkeeper");
+		final FuzzyIndex<String> index = FuzzyIndex.ofStrings(words);
+		final String[] queries = {"book", "bo", "cakes", "zzzz", "bookeeper"};
+		final Map<String,Set<String>> expected = new HashMap<String,Set<String>>();
+		for(String query : queries)
+		{
+			expected.put(query, new HashSet<String>(index.search(query, 2)));
+		}
+		final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+		Thread[] threads = new Thread[4];
+		for(int t=0; t<threads.length; t++)
+		{
+			threads[t] = new Thread(){
+				public void run()
+				{
+					for(int i=0; i<2000; i++)
+					{
+						String query = queries[i%queries.length];
+						if(!expected.get(query).equals(new HashSet<String>(index.search(query, 2)))){
+							failures.add(query);
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for(Thread thread : threads)
+		{
+			thread.join();
+		}
+		assertTrue(failures.toString(), failures.isEmpty());
+	}
+}
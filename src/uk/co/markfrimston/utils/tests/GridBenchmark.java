@@ -0,0 +1,132 @@
+package uk.co.markfrimston.utils.tests;
+
+import uk.co.markfrimston.utils.*;
+
+/*
+ * Times filling, reading, summarising and cloning a TwoDimGrid with 2,000 
+ * types along each side in each storage mode, then fills a ThreeDimGrid 
+ * with 1,000 types along each side but only 100,000 values, sparsely and 
+ * with the nested maps. Run from the command line - not part of the unit 
+ * test suite.
+ */
+public class GridBenchmark
+{
+	private static final int SIZE = 2000;
+	private static final int COLUMN_RUNS = 100;
+	private static final int CUBE_SIZE = 1000;
+	private static final int CUBE_VALUES = 100000;
+	
+	//keeps the grid reachable while its memory is measured
+	private static Object cube;
+	
+	public static void main(String[] args)
+	{
+		String[] xTypes = new String[SIZE];
+		Integer[] yTypes = new Integer[SIZE];
+		Double[] values = new Double[SIZE];
+		for(int i=0; i<SIZE; i++)
+		{
+			xTypes[i] = "x"+i;
+			yTypes[i] = i;
+			values[i] = (double)i;
+		}
+		for(int pass=0; pass<2; pass++)
+		{
+			for(TwoDimGrid.Storage storage : TwoDimGrid.Storage.values())
+			{
+				TwoDimGrid<String,Integer,Double> grid = TwoDimGrid.forDoubles(storage);
+				long start = System.nanoTime();
+				for(int i=0; i<SIZE; i++)
+				{
+					for(int j=0; j<SIZE; j++)
+					{
+						grid.add(xTypes[i], yTypes[j], values[j]);
+					}
+				}
+				long fill = System.nanoTime()-start;
+				
+				start = System.nanoTime();
+				double sum = 0;
+				for(int i=0; i<SIZE; i++)
+				{
+					for(int j=0; j<SIZE; j++)
+					{
+						sum += grid.get(xTypes[i], yTypes[j]);
+					}
+				}
+				long read = System.nanoTime()-start;
+				
+				//a column by hand, then summarised
+				start = System.nanoTime();
+				double total = 0;
+				for(int i=0; i<COLUMN_RUNS; i++)
+				{
+					for(String xType : grid.getXLegend())
+					{
+						total += grid.get(xType, yTypes[i]);
+					}
+				}
+				long columnByHand = (System.nanoTime()-start)/COLUMN_RUNS;
+				start = System.nanoTime();
+				for(int i=0; i<COLUMN_RUNS; i++)
+				{
+					total += grid.summariseColumn(yTypes[i]).getSum();
+				}
+				long column = (System.nanoTime()-start)/COLUMN_RUNS;
+				start = System.nanoTime();
+				total += grid.summarise().getSum();
+				long all = System.nanoTime()-start;
+				
+				//a snapshot, then a change to one row
+				start = System.nanoTime();
+				grid.clone();
+				long clone = System.nanoTime()-start;
+				start = System.nanoTime();
+				for(int j=0; j<SIZE; j++)
+				{
+					grid.add(xTypes[0], yTypes[j], values[0]);
+				}
+				long write = System.nanoTime()-start;
+				
+				if(pass > 0)
+				{
+					System.out.println(storage+": fill "+(fill/1000000)+"ms, read "
+							+(read/1000000)+"ms ("+sum+"), clone "+(clone/1000)+"us, "
+							+"writing a row after "+(write/1000)+"us");
+					System.out.println("  column by hand "+(columnByHand/1000)+"us, "
+							+"summarised "+(column/1000)+"us, whole grid "+(all/1000000)+"ms ("
+							+total+")");
+				}
+			}
+		}
+			
+		ThreeDimGrid.Storage[] cubeStorage = {ThreeDimGrid.Storage.HASHED, 
+				ThreeDimGrid.Storage.SPARSE};
+		for(ThreeDimGrid.Storage storage : cubeStorage)
+		{
+			cube = null;
+			System.gc();
+			Runtime runtime = Runtime.getRuntime();
+			long before = runtime.totalMemory()-runtime.freeMemory();
+			long start = System.nanoTime();
+			ThreeDimGrid<Integer,Integer,Integer,Integer> grid 
+					= new ThreeDimGrid<Integer,Integer,Integer,Integer>(storage);
+			cube = grid;
+			for(int i=0; i<CUBE_SIZE; i++)
+			{
+				grid.addXType(i);
+				grid.addYType(i);
+				grid.addZType(i);
+			}
+			for(int i=0; i<CUBE_VALUES; i++)
+			{
+				grid.add(i % CUBE_SIZE, (i/CUBE_SIZE*7) % CUBE_SIZE, (i*13) % CUBE_SIZE, i);
+			}
+			long fill = System.nanoTime()-start;
+			System.gc();
+			long used = runtime.totalMemory()-runtime.freeMemory()-before;
+			System.out.println("Cube "+storage+": fill "+(fill/1000000)+"ms, "
+					+(used/1024)+"KB");
+		}
+	}
+}
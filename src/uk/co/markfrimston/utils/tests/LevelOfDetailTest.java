@@ -0,0 +1,122 @@
+package uk.co.markfrimston.utils.tests;
+
+import java.util.*;
+import org.junit.*;
+import uk.co.markfrimston.utils.*;
+import static org.junit.Assert.*;
+
+public class LevelOfDetailTest
+{
+	private static final int SIZE = 40;
+	
+	private WireframeModel model = grid(SIZE);
+	
+	@Test
+	public void testLevels()
+	{
+		LevelOfDetail lod = new LevelOfDetail(model);
+		assertTrue(lod.getNumLevels() > 2);
+		assertSame(model, lod.getLevel(0));
+		assertEquals(0, lod.getError(0), 0);
+		for(int level=1; level<lod.getNumLevels(); level++)
+		{
+			WireframeModel simpler = lod.getLevel(level);
+			WireframeModel previous = lod.getLevel(level-1);
+			assertTrue(simpler.getNumPoints() < previous.getNumPoints());
+			assertTrue(simpler.getNumLines() <= previous.getNumLines());
+			assertTrue(lod.getError(level) > lod.getError(level-1));
+			
+			Set<Long> seen = new HashSet<Long>();
+			for(int[] line : simpler.getLines())
+			{
+				assertTrue(line[0] != line[1]);
+				assertTrue(line[0] >= 0 && line[0] < simpler.getNumPoints());
+				assertTrue(line[1] >= 0 && line[1] < simpler.getNumPoints());
+				long key = ((long)Math.min(line[0], line[1]) << 32) | Math.max(line[0], line[1]);
+				assertTrue(seen.add(key));
+			}
+			
+			//every original point within the error of some point at this level
+			double error = lod.getError(level);
+			for(double[] p : model.getPoints())
+			{
+				double nearest = Double.POSITIVE_INFINITY;
+				for(double[] q : simpler.getPoints())
+				{
+					double dx = p[0]-q[0], dy = p[1]-q[1], dz = p[2]-q[2];
+					nearest = Math.min(nearest, Math.sqrt(dx*dx + dy*dy + dz*dz));
+				}
+				assertTrue(nearest <= error);
+			}
+		}
+		int last = lod.getNumLevels()-1;
+		assertTrue(lod.getLevel(last).getNumPoints() <= 16);
+	}
+	
+	@Test
+	public void testSelect()
+	{
+		LevelOfDetail lod = new LevelOfDetail(model);
+		assertSame(model, lod.select(0));
+		assertSame(lod.getLevel(1), lod.select(lod.getError(1)));
+		int last = lod.getNumLevels()-1;
+		assertSame(lod.getLevel(last), lod.select(Double.POSITIVE_INFINITY));
+		
+		Transform near = new Transform().translate(0, 0, 2);
+		Transform far = new Transform().translate(0, 0, 500);
+		Transform behind = new Transform().translate(0, 0, -0.5);
+		assertSame(model, lod.select(near.getMatrix(), 1, 500, 1));
+		assertSame(model, lod.select(behind.getMatrix(), 1, 500, 1));
+		WireframeModel distant = lod.select(far.getMatrix(), 1, 500, 1);
+		assertTrue(distant.getNumPoints() < model.getNumPoints());
+		//scaling the model up calls for more detail at the same distance
+		Transform bigger = new Transform().scale(10, 10, 10).translate(0, 0, 500);
+		assertTrue(lod.select(bigger.getMatrix(), 1, 500, 1).getNumPoints() 
+				> distant.getNumPoints());
+	}
+	
+	@Test
+	public void testLargeExtent()
+	{
+		//short lines far apart, more line lengths across than fit in a cell key
+		double far = 1 << 23;
+		WireframeModel wide = new WireframeModel(
+				new double[][]{{0, 0, 0}, {0.5, 0, 0}, {far, 0, 0}, {far+0.5, 0, 0}},
+				new int[][]{{0, 1}, {2, 3}});
+		
+		//distant points are never merged
+		LevelOfDetail lod = new LevelOfDetail(wide, 1);
+		assertTrue(lod.getNumLevels() > 1);
+		assertEquals(2, lod.getLevel(1).getNumPoints());
+		assertTrue(lod.getError(1) < 1);
+	}
+	
+	@Test
+	public void testFlat()
+	{
+		WireframeModel point = new WireframeModel(new double[][]{{1,2,3},{1,2,3}}, 
+				new int[][]{{0,1}});
+		LevelOfDetail lod = new LevelOfDetail(point);
+		assertEquals(1, lod.getNumLevels());
+		assertSame(point, lod.select(100));
+	}
+	
+	/*
+	 * A square grid of lines in the unit square. Also used by LodBenchmark.
+	 */
+	static WireframeModel grid(int size)
+	{
+		double[][] points = new double[size*size][];
+		List<int[]> lines = new ArrayList<int[]>();
+		for(int i=0; i<size; i++)
+		{
+			for(int j=0; j<size; j++)
+			{
+				points[i*size+j] = new double[]{(double)i/size, (double)j/size, 0};
+				if(i > 0) lines.add(new int[]{(i-1)*size+j, i*size+j});
+				if(j > 0) lines.add(new int[]{i*size+j-1, i*size+j});
+			}
+		}
+		return new WireframeModel(points, lines.toArray(new int[0][]));
+	}
+}
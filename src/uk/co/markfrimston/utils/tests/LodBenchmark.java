@@ -0,0 +1,75 @@
+package uk.co.markfrimston.utils.tests;
+
+import uk.co.markfrimston.utils.*;
+
+/*
+ * Times drawing frames of grid models of growing size at a distance - a 
+ * transform and project, then culling lines to the screen - with the full 
+ * model and with the level LevelOfDetail picks for a one pixel tolerance.
+ * Lines under half a pixel long are culled.
+ * Run from the command line - not part of the unit test suite.
+ */
+public class LodBenchmark
+{
+	private static final int[] SIZES = {100, 300, 1000};
+	private static final double DISTANCE = 5;
+	private static final double PIXELS = 500;
+	private static final int RUNS = 20;
+	
+	public static void main(String[] args)
+	{
+		for(int size : SIZES)
+		{
+			WireframeModel model = LevelOfDetailTest.grid(size);
+			long start = System.nanoTime();
+			LevelOfDetail lod = new LevelOfDetail(model);
+			long build = System.nanoTime()-start;
+			
+			long full = 0, reduced = 0;
+			int fullLines = 0, reducedLines = 0;
+			for(int pass=0; pass<2; pass++)
+			{
+				full = time(model, RUNS);
+				fullLines = drawn;
+				start = System.nanoTime();
+				for(int i=0; i<RUNS; i++)
+				{
+					lod.select(view(i).getMatrix(), 1, PIXELS, 1);
+				}
+				long selecting = System.nanoTime()-start;
+				reduced = time(lod.select(view(0).getMatrix(), 1, PIXELS, 1), RUNS) 
+						+ selecting;
+				reducedLines = drawn;
+			}
+			System.out.println(model.getNumPoints()+" points, "+lod.getNumLevels()
+					+" levels built in "+(build/1000000)+"ms");
+			System.out.println("  full: "+(full/RUNS/1000)+"us/frame, "+fullLines+" lines drawn");
+			System.out.println("  LOD:  "+(reduced/RUNS/1000)+"us/frame, "+reducedLines
+					+" lines drawn");
+		}
+	}
+	
+	private static int drawn;
+	
+	private static long time(WireframeModel model, int runs)
+	{
+		PointBuffer points = model.getPointBuffer();
+		int[][] lines = model.getLines();
+		PointBuffer projected = new PointBuffer(points.size());
+		int[] visible = new int[lines.length];
+		long start = System.nanoTime();
+		for(int i=0; i<runs; i++)
+		{
+			view(i).project(1).apply(points, projected);
+			drawn = ThreeDUtils.cullLines(projected, lines, -0.5, -0.5, 0.5, 0.5, 
+					0.5/PIXELS, visible);
+		}
+		return System.nanoTime()-start;
+	}
+	
+	private static Transform view(int frame)
+	{
+		return new Transform().translate(-0.5, -0.5, 0).rotate(0.3, frame*0.01, 0)
+				.translate(0, 0, DISTANCE);
+	}
+}
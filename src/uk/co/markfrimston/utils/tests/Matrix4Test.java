@@ -0,0 +1,94 @@
+package uk.co.markfrimston.utils.tests;
+
+import java.util.*;
+import org.junit.*;
+import uk.co.markfrimston.utils.*;
+import static org.junit.Assert.*;
+
+public class Matrix4Test
+{
+	private Matrix rotate = ThreeDUtils.setRotate(new Matrix(4, 4), 0.2, 1.1, -0.7);
+	private Matrix translate = ThreeDUtils.setTranslate(new Matrix(4, 4), 3, -2, 5);
+	
+	@Test
+	public void testConversion()
+	{
+		assertEquals(rotate, new Matrix4(rotate).toMatrix());
+		assertEquals(ThreeDUtils.setScale(new Matrix(4, 4), 1, 1, 1), new Matrix4().toMatrix());
+	}
+	
+	@Test
+	public void testMult()
+	{
+		Matrix4 r = new Matrix4(rotate);
+		Matrix4 t = new Matrix4(translate);
+		assertClose(translate.mult(rotate), t.mult(r).toMatrix());
+		
+		//destination can be an operand
+		t.multInto(r, t);
+		assertClose(translate.mult(rotate), t.toMatrix());
+	}
+	
+	@Test
+	public void testTransform()
+	{
+		Random random = new Random(1);
+		PointBuffer points = new PointBuffer(50);
+		for(int i=0; i<points.size(); i++)
+		{
+			points.set(i, random.nextDouble(), random.nextDouble(), random.nextDouble(), 1);
+		}
+		Matrix4 r = new Matrix4(rotate);
+		Matrix expected = rotate.mult(points.toMatrix());
+		assertClose(expected, r.transform(points).toMatrix());
+		
+		Vector4 v = points.get(7);
+		assertEquals(new Vector4(expected.get(0,7), expected.get(1,7), 
+				expected.get(2,7), expected.get(3,7)), r.transform(v));
+		
+		r.transformInto(points, points);
+		assertClose(expected, points.toMatrix());
+	}
+	
+	@Test
+	public void testKernels()
+	{
+		Random random = new Random(2);
+		//not a whole number of strips
+		PointBuffer points = new PointBuffer(2500);
+		for(int i=0; i<points.size(); i++)
+		{
+			points.set(i, random.nextDouble(), random.nextDouble(), random.nextDouble(), 1);
+		}
+		Matrix4 r = new Matrix4(rotate);
+		Matrix expected = r.transformInto(points, new PointBuffer(2500), Matrix4.Kernel.SCALAR).toMatrix();
+		assertEquals(expected, r.transformInto(points, new PointBuffer(2500), Matrix4.Kernel.VECTORISED).toMatrix());
+		
+		PointBuffer copy = new PointBuffer(points.toMatrix());
+		assertEquals(expected, r.transformInto(copy, copy, Matrix4.Kernel.VECTORISED).toMatrix());
+	}
+	
+	@Test
+	public void testModelBuffer()
+	{
+		WireframeModel model = WireframeModel.CUBE;
+		assertEquals(model.getMatrix(), model.getPointBuffer().toMatrix());
+		
+		Transform transform = new Transform().rotate(1, 0, 0.5).translate(0, 0, 4).project(2);
+		PointBuffer dest = new PointBuffer(model.getNumPoints());
+		assertClose(transform.apply(model), transform.apply(model.getPointBuffer(), dest).toMatrix());
+	}
+	
+	private void assertClose(Matrix expected, Matrix actual)
+	{
+		assertEquals(expected.getRows(), actual.getRows());
+		assertEquals(expected.getCols(), actual.getCols());
+		for(int i=0; i<expected.getRows(); i++)
+		{
+			for(int j=0; j<expected.getCols(); j++)
+			{
+				assertEquals(expected.get(i,j), actual.get(i,j), 1e-12);
+			}
+		}
+	}
+}
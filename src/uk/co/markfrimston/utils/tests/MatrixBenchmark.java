@@ -0,0 +1,116 @@
+package uk.co.markfrimston.utils.tests;
+
+import java.util.*;
+import java.util.concurrent.*;
+import uk.co.markfrimston.utils.*;
+
+/*
+ * Times Matrix multiplication against a plain loop over nested arrays, for 
+ * a 4x4 transform-sized product up to one that no longer fits in cache. 
+ * The product is also timed with increasing numbers of worker threads.
+ * Run from the command line - not part of the unit test suite.
+ */
+public class MatrixBenchmark
+{
+	private static final int[] SIZES = {4, 64, 1024};
+	private static final long MIN_TIME = 1000000000L;
+	
+	public static void main(String[] args)
+	{
+		Random random = new Random(1);
+		for(int size : SIZES)
+		{
+			final double[][] dataA = randomData(random, size);
+			final double[][] dataB = randomData(random, size);
+			final Matrix a = new Matrix(dataA);
+			final Matrix b = new Matrix(dataB);
+			final Matrix bt = b.transpose();
+			final ForkJoinPool single = new ForkJoinPool(1);
+			
+			double naive = time(new Runnable(){
+				public void run(){ naiveMult(dataA, dataB); }
+			});
+			double mult = time(new Runnable(){
+				public void run(){ a.mult(b, single); }
+			});
+			double transposed = time(new Runnable(){
+				public void run(){ a.multTransposed(bt); }
+			});
+			System.out.println(size+"x"+size+": naive "+format(naive)
+					+", mult "+format(mult)+", multTransposed "+format(transposed));
+			
+			int cores = Runtime.getRuntime().availableProcessors();
+			for(int threads=2; threads<=cores; threads*=2)
+			{
+				final ForkJoinPool pool = new ForkJoinPool(threads);
+				double parallel = time(new Runnable(){
+					public void run(){ a.mult(b, pool); }
+				});
+				System.out.println("    "+threads+" threads: mult "+format(parallel));
+				pool.shutdown();
+			}
+		}
+	}
+	
+	private static double[][] randomData(Random random, int size)
+	{
+		double[][] data = new double[size][size];
+		for(int i=0; i<size; i++)
+		{
+			for(int j=0; j<size; j++)
+			{
+				data[i][j] = random.nextDouble();
+			}
+		}
+		return data;
+	}
+	
+	private static double[][] naiveMult(double[][] a, double[][] b)
+	{
+		double[][] result = new double[a.length][b[0].length];
+		for(int i=0; i<a.length; i++)
+		{
+			for(int j=0; j<b[0].length; j++)
+			{
+				double val = 0;
+				for(int k=0; k<b.length; k++)
+				{
+					val += a[i][k] * b[k][j];
+				}
+				result[i][j] = val;
+			}
+		}
+		return result;
+	}
+	
+	/*
+	 * Returns the mean nanoseconds per run, after a warm-up of the same length
+	 */
+	private static double time(Runnable task)
+	{
+		for(int pass=0; ; pass++)
+		{
+			long runs = 0;
+			long start = System.nanoTime();
+			long elapsed;
+			do
+			{
+				task.run();
+				runs++;
+				elapsed = System.nanoTime()-start;
+			}
+			while(elapsed < MIN_TIME);
+			if(pass > 0){
+				return (double)elapsed/runs;
+			}
+		}
+	}
+	
+	private static String format(double nanos)
+	{
+		if(nanos < 1000000){
+			return String.format("%.1fus", nanos/1000);
+		}
+		return String.format("%.1fms", nanos/1000000);
+	}
+}
@@ -1,5 +1,7 @@
 package uk.co.markfrimston.utils.tests;
 
+import java.util.*;
+import java.util.concurrent.*;
 import org.junit.*;
 import uk.co.markfrimston.utils.*;
 import static org.junit.Assert.*;
@@ -97,4 +99,112 @@ public class MatrixTest
 		
 		assertEquals(c, a.mult(b));
 	}
+	
+	@Test
+	public void testTranspose()
+	{
+		dataA = new double[][]{
+				{0, 1, 2},
+				{3, 4, 5}
+		};
+		a = new Matrix(dataA);
+		
+		dataB = new double[][]{
+				{0, 3},
+				{1, 4},
+				{2, 5}
+		};
+		b = new Matrix(dataB);
+		
+		assertEquals(b, a.transpose());
+	}
+	
+	@Test
+	public void testLargeMatrixMult()
+	{
+		Random random = new Random(1);
+		a = randomMatrix(random, 150, 70);
+		b = randomMatrix(random, 70, 130);
+		c = a.mult(b);
+		
+		assertEquals(150, c.getRows());
+		assertEquals(130, c.getCols());
+		for(int i=0; i<c.getRows(); i++)
+		{
+			for(int j=0; j<c.getCols(); j++)
+			{
+				double val = 0;
+				for(int k=0; k<a.getCols(); k++)
+				{
+					val += a.get(i,k) * b.get(k,j);
+				}
+				assertEquals(val, c.get(i,j), 0.0);
+			}
+		}
+		
+		assertEquals(c, a.multTransposed(b.transpose()));
+	}
+	
+	@Test
+	public void testParallel()
+	{
+		Random random = new Random(2);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		ForkJoinPool single = new ForkJoinPool(1);
+		
+		a = randomMatrix(random, 600, 600);
+		b = randomMatrix(random, 600, 600);
+		assertEquals(a.add(b, single), a.add(b, pool));
+		assertEquals(a.mult(3.0, single), a.mult(3.0, pool));
+		assertEquals(a.transpose(single), a.transpose(pool));
+		assertEquals(a.mult(b, single), a.mult(b, pool));
+		
+		//a transform applied to many points only has four rows to share out
+		a = randomMatrix(random, 4, 4);
+		b = randomMatrix(random, 4, 300000);
+		assertEquals(a.mult(b, single), a.mult(b, pool));
+	}
+	
+	@Test
+	public void testDestination()
+	{
+		Random random = new Random(3);
+		a = randomMatrix(random, 3, 5);
+		b = randomMatrix(random, 5, 4);
+		
+		c = new Matrix(3, 4);
+		assertSame(c, a.multInto(b, c));
+		assertEquals(a.mult(b), c);
+		//reused destination is overwritten, not added to
+		a.multInto(b, c);
+		assertEquals(a.mult(b), c);
+		
+		Matrix t = new Matrix(5, 3);
+		assertEquals(a.transpose(), a.transposeInto(t));
+		assertEquals(a.mult(b), a.multTransposedInto(b.transpose(), c));
+		
+		Matrix sum = a.add(a);
+		assertEquals(sum, new Matrix(3, 5).copyFrom(a).addInPlace(a));
+		assertEquals(sum, new Matrix(3, 5).copyFrom(a).multInPlace(2.0));
+		
+		try{
+			a.multInto(b, new Matrix(4, 4));
+			fail();
+		}catch(ArrayIndexOutOfBoundsException e){}
+		try{
+			c = new Matrix(4, 4);
+			c.multInto(new Matrix(4, 4), c);
+			fail();
+		}catch(IllegalArgumentException e){}
+	}
+	
+	private Matrix randomMatrix(Random random, int rows, int cols)
+	{
+		double[] data = new double[rows*cols];
+		for(int i=0; i<data.length; i++)
+		{
+			data[i] = random.nextInt(100)-50;
+		}
+		return new Matrix(rows, cols, data);
+	}
 }
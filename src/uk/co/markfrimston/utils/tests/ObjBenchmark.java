@@ -0,0 +1,70 @@
+package uk.co.markfrimston.utils.tests;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import uk.co.markfrimston.utils.*;
+
+/*
+ * Times loading a generated OBJ grid mesh of a million points, through a 
+ * stream, through a memory-mapped file, and split between increasing 
+ * numbers of threads. Run from the command line - not part of the unit 
+ * test suite.
+ */
+public class ObjBenchmark
+{
+	private static final int GRID = 1000;
+	private static final int RUNS = 3;
+	
+	public static void main(String[] args) throws Exception
+	{
+		File file = File.createTempFile("benchmark", ".obj");
+		file.deleteOnExit();
+		Random random = new Random(1);
+		PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+		for(int i=0; i<GRID; i++)
+		{
+			for(int j=0; j<GRID; j++)
+			{
+				writer.printf(Locale.ROOT, "v %.6f %.6f %.6f\n", i*0.01, j*0.01, random.nextDouble());
+			}
+		}
+		for(int i=0; i<GRID-1; i++)
+		{
+			for(int j=0; j<GRID-1; j++)
+			{
+				int v = i*GRID+j+1;
+				writer.println("f "+v+"/"+v+" "+(v+1)+"/"+(v+1)+" "+(v+GRID+1)+" "+(v+GRID));
+			}
+		}
+		writer.close();
+		System.out.println("File size: "+(file.length()/1000000)+"MB");
+		
+		for(int i=0; i<RUNS; i++)
+		{
+			long start = System.nanoTime();
+			new WireframeModel().loadObj(new FileInputStream(file));
+			long stream = System.nanoTime()-start;
+			
+			start = System.nanoTime();
+			new WireframeModel().loadObj(file);
+			long mapped = System.nanoTime()-start;
+			
+			System.out.println("stream "+(stream/1000000)+"ms, mapped "+(mapped/1000000)+"ms");
+		}
+		
+		int cores = Runtime.getRuntime().availableProcessors();
+		for(int threads=1; threads<=cores; threads*=2)
+		{
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			for(int i=0; i<RUNS; i++)
+			{
+				long start = System.nanoTime();
+				new WireframeModel().loadObj(file, 1.0, pool);
+				long time = System.nanoTime()-start;
+				System.out.println(threads+" threads: "+(time/1000000)+"ms");
+			}
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package uk.co.markfrimston.utils.tests;
+
+import java.util.*;
+import uk.co.markfrimston.utils.*;
+
+/*
+ * Times the scalar and vectorised Matrix4 kernels transforming a buffer of
+ * a million points, and one small enough to stay in cache. Run from the 
+ * command line - not part of the unit test suite.
+ */
+public class PointBufferBenchmark
+{
+	private static final int[] SIZES = {10000, 1000000};
+	private static final int POINTS_PER_SIZE = 100000000;
+	
+	public static void main(String[] args)
+	{
+		Random random = new Random(1);
+		Matrix4 transform = new Matrix4(ThreeDUtils.setRotate(new Matrix(4, 4), 1, 2, 3));
+		for(int size : SIZES)
+		{
+			PointBuffer points = new PointBuffer(size);
+			for(int i=0; i<size; i++)
+			{
+				points.set(i, random.nextDouble(), random.nextDouble(), random.nextDouble(), 1);
+			}
+			PointBuffer dest = new PointBuffer(size);
+			int runs = POINTS_PER_SIZE / size;
+			
+			for(int pass=0; pass<2; pass++)
+			{
+				StringBuffer sb = new StringBuffer(size+" points:");
+				for(Matrix4.Kernel kernel : Matrix4.Kernel.values())
+				{
+					long start = System.nanoTime();
+					for(int i=0; i<runs; i++)
+					{
+						transform.transformInto(points, dest, kernel);
+					}
+					long time = System.nanoTime()-start;
+					sb.append(" "+kernel+" "+(time/runs/1000)+"us");
+				}
+				if(pass > 0){
+					System.out.println(sb);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package uk.co.markfrimston.utils.tests;
+
+import java.util.*;
+import uk.co.markfrimston.utils.*;
+
+/*
+ * Times the boxed and primitive access paths of Sequence over large arrays.
+ * Run from the command line - not part of the unit test suite.
+ */
+public class SequenceBenchmark
+{
+	private static final int SIZE = 1000000;
+	private static final int RUNS = 20;
+	
+	private static interface Job
+	{
+		public long run();
+	}
+	
+	private static void time(String name, Job job)
+	{
+		long check = 0;
+		//warm up
+		for(int i=0; i<RUNS; i++)
+		{
+			check += job.run();
+		}
+		long start = System.nanoTime();
+		for(int i=0; i<RUNS; i++)
+		{
+			check += job.run();
+		}
+		long elapsed = System.nanoTime() - start;
+		System.out.println(StringUtils.rightPad(name, 30, ' ')
+				+ (elapsed/RUNS/1000) + "us/op  (" + check + ")");
+	}
+	
+	public static void main(String[] args)
+	{
+		Random random = new Random(1);
+		int[] ints = new int[SIZE];
+		char[] chars = new char[SIZE];
+		for(int i=0; i<SIZE; i++)
+		{
+			ints[i] = random.nextInt(1000);
+			chars[i] = (char)('a' + random.nextInt(26));
+		}
+		final Sequence<Integer> intSeq = Sequence.make(ints);
+		final Sequence<Integer> intSeq2 = Sequence.make(ints.clone());
+		final Sequence<Character> charSeq = Sequence.make(chars);
+		final Sequence<Character> stringSeq = Sequence.make(new String(chars));
+		
+		time("int boxed iterate", new Job(){
+			public long run()
+			{
+				long sum = 0;
+				for(Integer i : intSeq)
+				{
+					sum += i;
+				}
+				return sum;
+			}
+		});
+		time("int cursor iterate", new Job(){
+			public long run()
+			{
+				long sum = 0;
+				Sequence.Cursor c = intSeq.cursor();
+				while(c.hasNext())
+				{
+					sum += c.nextInt();
+				}
+				return sum;
+			}
+		});
+		time("int boxed equals", new Job(){
+			public long run()
+			{
+				for(int i=0; i<SIZE; i++)
+				{
+					if(!intSeq.get(i).equals(intSeq2.get(i))) return 0;
+				}
+				return 1;
+			}
+		});
+		time("int equals", new Job(){
+			public long run()
+			{
+				return intSeq.equals(intSeq2) ? 1 : 0;
+			}
+		});
+		time("char/string boxed equals", new Job(){
+			public long run()
+			{
+				for(int i=0; i<SIZE; i++)
+				{
+					if(!charSeq.get(i).equals(stringSeq.get(i))) return 0;
+				}
+				return 1;
+			}
+		});
+		time("char/string equals", new Job(){
+			public long run()
+			{
+				return charSeq.equals(stringSeq) ? 1 : 0;
+			}
+		});
+		time("int boxed contains", new Job(){
+			public long run()
+			{
+				for(Object o : intSeq)
+				{
+					if(o.equals(-1)) return 1;
+				}
+				return 0;
+			}
+		});
+		time("int contains", new Job(){
+			public long run()
+			{
+				return intSeq.contains(-1) ? 1 : 0;
+			}
+		});
+	}
+}
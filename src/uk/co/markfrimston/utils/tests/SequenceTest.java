@@ -0,0 +1,111 @@
+package uk.co.markfrimston.utils.tests;
+
+import java.util.*;
+import org.junit.*;
+import uk.co.markfrimston.utils.*;
+import static org.junit.Assert.*;
+
+public class SequenceTest
+{
+	@Test
+	public void testPrimitiveAccess()
+	{
+		Sequence<Integer> ints = Sequence.make(new int[]{3, 1, 4, 1, 5});
+		assertEquals(Integer.TYPE, ints.getPrimitiveType());
+		assertEquals(4, ints.getInt(2));
+		assertEquals(4L, ints.getLong(2));
+		assertArrayEquals(new int[]{3, 1, 4, 1, 5}, ints.toIntArray());
+		
+		Sequence.Cursor c = ints.cursor();
+		int sum = 0;
+		while(c.hasNext())
+		{
+			sum += c.nextInt();
+		}
+		assertEquals(14, sum);
+		
+		Sequence<Character> chars = Sequence.make("abc");
+		assertEquals(Character.TYPE, chars.getPrimitiveType());
+		assertEquals('b', chars.getChar(1));
+		assertNull(Sequence.make(Arrays.asList(1, 2)).getPrimitiveType());
+	}
+	
+	@Test
+	public void testEquals()
+	{
+		assertEquals(Sequence.make("abc"), Sequence.make(new char[]{'a', 'b', 'c'}));
+		assertEquals(Sequence.make("abc").hashCode(), 
+				Sequence.make(new char[]{'a', 'b', 'c'}).hashCode());
+		assertEquals(Sequence.make(new int[]{1, 2}), Sequence.make(Arrays.asList(1, 2)));
+		assertFalse(Sequence.make(new int[]{1, 2}).equals(Sequence.make(new int[]{1, 3})));
+		assertFalse(Sequence.make(new double[]{0.0}).equals(Sequence.make(new double[]{-0.0})));
+		assertEquals(Sequence.make(new double[]{Double.NaN}), Sequence.make(new double[]{Double.NaN}));
+	}
+	
+	@Test
+	public void testContains()
+	{
+		Sequence<Integer> ints = Sequence.make(new int[]{3, 1, 4});
+		assertTrue(ints.contains(4));
+		assertFalse(ints.contains(5));
+		assertFalse(ints.contains(4L));
+		assertEquals(2, ints.indexOf(4));
+		assertEquals(1, Sequence.make("abc").indexOf('b'));
+	}
+	
+	@Test
+	public void testSubSequence()
+	{
+		int[] array = new int[]{0, 1, 2, 3, 4, 5};
+		Sequence<Integer> sub = Sequence.make(array).subSequence(1, 5).subSequence(1);
+		assertEquals(Sequence.make(new int[]{2, 3, 4}), sub);
+		assertEquals(Arrays.asList(2, 3, 4).hashCode(), sub.hashCode());
+		assertArrayEquals(new int[]{2, 3, 4}, sub.compact().toIntArray());
+		try
+		{
+			sub.get(3);
+			fail();
+		}
+		catch(IndexOutOfBoundsException e){}
+		
+		assertEquals(Sequence.make("cat"), Sequence.make("concatenate").subSequence(3, 6));
+	}
+	
+	@Test
+	public void testAppend()
+	{
+		Sequence<Character> seq = Sequence.make("");
+		StringBuffer expected = new StringBuffer();
+		for(int i=0; i<200; i++)
+		{
+			String part = "part"+i+",";
+			seq = seq.append(Sequence.make(part));
+			expected.append(part);
+		}
+		assertEquals(Sequence.make(expected.toString()), seq);
+		assertEquals(Character.TYPE, seq.getPrimitiveType());
+		assertEquals(Sequence.make("part150"), seq.subSequence(expected.indexOf("part150"), 
+				expected.indexOf("part151")-1));
+		assertEquals(expected.toString(), SequenceUtils.toString(seq.compact(), true));
+		
+		Sequence<Integer> ints = Sequence.make(new int[]{1, 2}).append(Sequence.make(Arrays.asList(3)));
+		assertArrayEquals(new int[]{1, 2, 3}, ints.toIntArray());
+	}
+	
+	@Test
+	public void testAppendList()
+	{
+		List<Integer> list = new ArrayList<Integer>();
+		for(int i=0; i<20; i++)
+		{
+			list.add(i);
+		}
+		Sequence<Integer> tail = Sequence.make(new int[20]);
+		Sequence<Integer> seq = Sequence.make(list).append(tail);
+		Sequence<Integer> seq2 = tail.append(Sequence.make(list));
+		list.clear();
+		assertEquals(40, seq.size());
+		assertEquals(Integer.valueOf(19), seq.get(19));
+		assertEquals(Integer.valueOf(19), seq2.get(39));
+	}
+}
@@ -0,0 +1,96 @@
+package uk.co.markfrimston.utils.tests;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.*;
+import uk.co.markfrimston.utils.*;
+import static org.junit.Assert.*;
+
+public class SequenceUtilsTest
+{
+	private List<Sequence<Character>> words(int count)
+	{
+		Random random = new Random(7);
+		List<Sequence<Character>> words = new ArrayList<Sequence<Character>>();
+		for(int i=0; i<count; i++)
+		{
+			StringBuffer sb = new StringBuffer();
+			int length = 3+random.nextInt(6);
+			for(int j=0; j<length; j++)
+			{
+				sb.append((char)('a'+random.nextInt(4)));
+			}
+			words.add(Sequence.make(sb.toString()));
+		}
+		return words;
+	}
+	
+	@Test
+	public void testDistances()
+	{
+		List<Sequence<Character>> words = words(500);
+		Sequence<Character> query = Sequence.make("abcab");
+		ForkJoinPool pool = new ForkJoinPool(4);
+		int[] result = SequenceUtils.distances(query, words, 3, pool);
+		for(int i=0; i<words.size(); i++)
+		{
+			assertEquals(SequenceUtils.distance(query, words.get(i), 3), result[i]);
+		}
+		
+		int[] pairs = SequenceUtils.pairwiseDistances(words, 2, pool);
+		assertEquals(words.size()*(words.size()-1)/2, pairs.length);
+		for(int i=0; i<words.size(); i++)
+		{
+			for(int j=i+1; j<words.size(); j++)
+			{
+				assertEquals(SequenceUtils.distance(words.get(i), words.get(j), 2), 
+						pairs[SequenceUtils.pairIndex(i, j, words.size())]);
+			}
+		}
+		assertEquals(0, SequenceUtils.pairwiseDistances(words.subList(0, 1), 2, pool).length);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testTooManyPairs()
+	{
+		SequenceUtils.pairwiseDistances(Collections.nCopies(70000, Sequence.make("a")), 2);
+	}
+	
+	@Test
+	public void testNearest()
+	{
+		List<Sequence<Character>> words = words(2000);
+		Sequence<Character> query = Sequence.make("abcab");
+		List<Pair<Integer,Integer>> expected = new ArrayList<Pair<Integer,Integer>>();
+		for(int d=0; d<=3 && expected.size()<10; d++)
+		{
+			for(int i=0; i<words.size() && expected.size()<10; i++)
+			{
+				if(SequenceUtils.distance(query, words.get(i), d) == d){
+					expected.add(new Pair<Integer,Integer>(i, d));
+				}
+			}
+		}
+		assertEquals(expected, SequenceUtils.nearest(query, words, 10, 3, new ForkJoinPool(4)));
+	}
+	
+	@Test
+	public void testPermutations()
+	{
+		assertEquals(Arrays.asList("abc", "acb", "bac", "bca", "cab", "cba"), 
+				StringUtils.combinations("abc"));
+		assertEquals(Arrays.asList("aab", "aba", "baa"), StringUtils.combinations("aab"));
+		
+		int count = 0;
+		Set<Sequence<Integer>> seen = new HashSet<Sequence<Integer>>();
+		for(Sequence<Integer> perm : SequenceUtils.permutations(Sequence.make(new int[]{1, 2, 2, 3, 3, 3})))
+		{
+			assertTrue(seen.add(perm));
+			count++;
+		}
+		//6! / (2! * 3!)
+		assertEquals(60, count);
+		
+		assertEquals("(ab|ba)", RegexUtils.allOrders(new String[]{"a", "b"}));
+	}
+}
@@ -0,0 +1,106 @@
+package uk.co.markfrimston.utils.tests;
+
+import java.util.*;
+import uk.co.markfrimston.utils.*;
+
+/*
+ * Times nearest point, radius and frustum queries on a 1,000,000 point 
+ * model with SpatialIndex against scanning every point, along with building
+ * and refitting the index. Run from the command line - not part of the unit
+ * test suite.
+ */
+public class SpatialIndexBenchmark
+{
+	private static final int POINTS = 1000000;
+	private static final int QUERIES = 1000;
+	private static final int FRAMES = 20;
+	
+	//keeps query results from being optimised away
+	public static int sink;
+	
+	public static void main(String[] args)
+	{
+		Random random = new Random(1);
+		double[][] points = new double[POINTS][];
+		int[][] lines = new int[POINTS-1][];
+		for(int i=0; i<POINTS; i++)
+		{
+			points[i] = new double[]{random.nextDouble(), random.nextDouble(), random.nextDouble()};
+			if(i > 0) lines[i-1] = new int[]{i-1, i};
+		}
+		WireframeModel model = new WireframeModel(points, lines);
+		PointBuffer buffer = model.getPointBuffer();
+		double[][] queries = new double[QUERIES][];
+		for(int i=0; i<QUERIES; i++)
+		{
+			queries[i] = new double[]{random.nextDouble(), random.nextDouble(), random.nextDouble()};
+		}
+		Matrix view = new Transform().translate(-0.5, -0.5, -0.5).translate(0, 0, 1.5)
+				.project(1).getMatrix();
+		Matrix move = new Transform().rotate(0.01, 0.02, 0).getMatrix();
+		int[] visible = new int[POINTS];
+		
+		for(int pass=0; pass<2; pass++)
+		{
+			long start = System.nanoTime();
+			SpatialIndex index = new SpatialIndex(model);
+			long build = System.nanoTime()-start;
+			
+			start = System.nanoTime();
+			for(int i=0; i<FRAMES; i++)
+			{
+				index.apply(move);
+			}
+			long refit = System.nanoTime()-start;
+			index.refit(buffer);
+			
+			start = System.nanoTime();
+			for(double[] q : queries)
+			{
+				sink += index.nearest(q[0], q[1], q[2], 10)[0];
+			}
+			long nearest = System.nanoTime()-start;
+			
+			start = System.nanoTime();
+			for(int i=0; i<QUERIES/10; i++)
+			{
+				double[] q = queries[i];
+				double best = Double.POSITIVE_INFINITY;
+				for(int j=0; j<POINTS; j++)
+				{
+					double dx = buffer.xs[j]-q[0], dy = buffer.ys[j]-q[1], dz = buffer.zs[j]-q[2];
+					double dist = dx*dx + dy*dy + dz*dz;
+					if(dist < best){
+						best = dist;
+						sink += j;
+					}
+				}
+			}
+			long scan = (System.nanoTime()-start)*10;
+			
+			start = System.nanoTime();
+			for(double[] q : queries)
+			{
+				sink += index.withinRadius(q[0], q[1], q[2], 0.02).length;
+			}
+			long radius = System.nanoTime()-start;
+			
+			start = System.nanoTime();
+			for(int i=0; i<FRAMES; i++)
+			{
+				sink += index.visiblePoints(view, -0.05, -0.05, 0.05, 0.05, visible);
+			}
+			long frustum = System.nanoTime()-start;
+			
+			if(pass > 0)
+			{
+				System.out.println("Build: "+(build/1000000)+"ms, refit: "
+						+(refit/FRAMES/1000000)+"ms");
+				System.out.println("10 nearest: "+(nearest/QUERIES)+"ns, scan for nearest: "
+						+(scan/QUERIES/1000)+"us");
+				System.out.println("Radius: "+(radius/QUERIES)+"ns");
+				System.out.println("Frustum: "+(frustum/FRAMES/1000)+"us");
+			}
+		}
+	}
+}
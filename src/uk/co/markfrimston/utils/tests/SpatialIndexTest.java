@@ -0,0 +1,187 @@
+package uk.co.markfrimston.utils.tests;
+
+import java.util.*;
+import org.junit.*;
+import uk.co.markfrimston.utils.*;
+import static org.junit.Assert.*;
+
+public class SpatialIndexTest
+{
+	private static final int POINTS = 2000;
+	
+	private Random random = new Random(3);
+	private WireframeModel model = randomModel();
+	
+	@Test
+	public void testNearest()
+	{
+		SpatialIndex index = new SpatialIndex(model);
+		double[][] points = model.getPoints();
+		for(int q=0; q<50; q++)
+		{
+			double x = random.nextDouble(), y = random.nextDouble(), z = random.nextDouble();
+			int[] nearest = index.nearest(x, y, z, 10);
+			assertArrayEquals(bruteNearest(points, x, y, z, 10), nearest);
+			assertEquals(nearest[0], index.nearest(x, y, z));
+		}
+		assertEquals(POINTS, index.nearest(0, 0, 0, POINTS*2).length);
+		assertEquals(-1, new SpatialIndex(new WireframeModel(new double[0][], 
+				new int[0][])).nearest(0, 0, 0));
+	}
+	
+	@Test
+	public void testRadius()
+	{
+		SpatialIndex index = new SpatialIndex(model);
+		double[][] points = model.getPoints();
+		for(int q=0; q<50; q++)
+		{
+			double x = random.nextDouble(), y = random.nextDouble(), z = random.nextDouble();
+			int[] found = index.withinRadius(x, y, z, 0.15);
+			Arrays.sort(found);
+			List<Integer> expected = new ArrayList<Integer>();
+			for(int i=0; i<points.length; i++)
+			{
+				if(distance(points[i], x, y, z) <= 0.15) expected.add(i);
+			}
+			assertEquals(expected.size(), found.length);
+			for(int i=0; i<found.length; i++)
+			{
+				assertEquals((int)expected.get(i), found[i]);
+			}
+		}
+	}
+	
+	@Test
+	public void testFrustum()
+	{
+		SpatialIndex index = new SpatialIndex(model);
+		Matrix view = new Transform().translate(-0.5, -0.5, -0.5).rotate(0.2, 0.7, 0)
+				.translate(0.2, 0, 1).project(1).getMatrix();
+		PointBuffer projected = new Transform().translate(-0.5, -0.5, -0.5).rotate(0.2, 0.7, 0)
+				.translate(0.2, 0, 1).project(1).apply(model.getPointBuffer(), 
+				new PointBuffer(POINTS));
+		
+		int[] visible = new int[POINTS];
+		int count = index.visiblePoints(view, -0.3, -0.3, 0.3, 0.3, visible);
+		Set<Integer> found = toSet(visible, count);
+		int expected = 0;
+		for(int i=0; i<POINTS; i++)
+		{
+			double w = projected.ws[i];
+			double x = projected.xs[i]/w, y = projected.ys[i]/w;
+			if(w > 0 && x >= -0.3 && x <= 0.3 && y >= -0.3 && y <= 0.3)
+			{
+				expected++;
+				assertTrue(found.contains(i));
+			}
+		}
+		assertEquals(expected, count);
+		assertTrue(count > 0 && count < POINTS);
+		
+		//lines found include every line cullLines keeps in front of the viewer
+		int[][] lines = model.getLines();
+		int[] visibleLines = new int[lines.length];
+		count = index.visibleLines(view, -0.3, -0.3, 0.3, 0.3, visibleLines);
+		found = toSet(visibleLines, count);
+		int[] culled = new int[lines.length];
+		int kept = ThreeDUtils.cullLines(projected, lines, -0.3, -0.3, 0.3, 0.3, 0, culled);
+		for(int i=0; i<kept; i++)
+		{
+			int[] line = lines[culled[i]];
+			if(projected.ws[line[0]] > 0 && projected.ws[line[1]] > 0){
+				assertTrue(found.contains(culled[i]));
+			}
+		}
+		assertTrue(count < lines.length);
+	}
+	
+	@Test
+	public void testRefit()
+	{
+		SpatialIndex index = new SpatialIndex(model);
+		Matrix transform = new Transform().rotate(0.4, -1, 2).scale(2, 1, 3)
+				.translate(5, 0, -1).getMatrix();
+		index.apply(transform);
+		
+		WireframeModel moved = new WireframeModel(columns(transform.mult(model.getMatrix())), 
+				model.getLines());
+		SpatialIndex rebuilt = new SpatialIndex(moved);
+		for(int q=0; q<20; q++)
+		{
+			double x = 5+random.nextDouble(), y = random.nextDouble(), z = random.nextDouble();
+			assertArrayEquals(rebuilt.nearest(x, y, z, 5), index.nearest(x, y, z, 5));
+			int[] a = index.withinRadius(x, y, z, 0.5), b = rebuilt.withinRadius(x, y, z, 0.5);
+			Arrays.sort(a);
+			Arrays.sort(b);
+			assertArrayEquals(b, a);
+		}
+		
+		index.refit(model.getPointBuffer());
+		double[][] points = model.getPoints();
+		assertArrayEquals(bruteNearest(points, 0.5, 0.5, 0.5, 5), index.nearest(0.5, 0.5, 0.5, 5));
+	}
+	
+	private WireframeModel randomModel()
+	{
+		double[][] points = new double[POINTS][];
+		int[][] lines = new int[POINTS-1][];
+		for(int i=0; i<POINTS; i++)
+		{
+			points[i] = new double[]{random.nextDouble(), random.nextDouble(), random.nextDouble()};
+			if(i > 0) lines[i-1] = new int[]{i-1, i};
+		}
+		return new WireframeModel(points, lines);
+	}
+	
+	private static double[][] columns(Matrix matrix)
+	{
+		double[][] points = new double[matrix.getCols()][3];
+		for(int i=0; i<points.length; i++)
+		{
+			for(int j=0; j<3; j++)
+			{
+				points[i][j] = matrix.get(j, i);
+			}
+		}
+		return points;
+	}
+	
+	private static int[] bruteNearest(final double[][] points, final double x, final double y, 
+			final double z, int k)
+	{
+		Integer[] indices = new Integer[points.length];
+		for(int i=0; i<points.length; i++)
+		{
+			indices[i] = i;
+		}
+		Arrays.sort(indices, new Comparator<Integer>(){
+			public int compare(Integer a, Integer b)
+			{
+				return Double.compare(distance(points[a], x, y, z), distance(points[b], x, y, z));
+			}
+		});
+		int[] result = new int[k];
+		for(int i=0; i<k; i++)
+		{
+			result[i] = indices[i];
+		}
+		return result;
+	}
+	
+	private static double distance(double[] p, double x, double y, double z)
+	{
+		double dx = p[0]-x, dy = p[1]-y, dz = p[2]-z;
+		return Math.sqrt(dx*dx + dy*dy + dz*dz);
+	}
+	
+	private static Set<Integer> toSet(int[] values, int count)
+	{
+		Set<Integer> set = new HashSet<Integer>();
+		for(int i=0; i<count; i++)
+		{
+			set.add(values[i]);
+		}
+		return set;
+	}
+}
@@ -21,4 +21,29 @@ public class StringUtilsTest
 		output = StringUtils.dqEscape(input);
 		assertEquals(expected, output);
 	}
+	
+	@Test
+	public void testDistance()
+	{
+		assertEquals(3, StringUtils.distance("kitten", "sitting", 5));
+		assertEquals(3, StringUtils.distance("kitten", "sitting", 3));
+		assertEquals(-1, StringUtils.distance("kitten", "sitting", 2));
+		assertEquals(2, StringUtils.distance("abaab", "baabb", 2));
+		assertEquals(0, StringUtils.distance("", "", 0));
+		assertEquals(4, StringUtils.distance("", "abcd", 10));
+		assertEquals(-1, StringUtils.distance("", "abcd", 3));
+		assertEquals(4, StringUtils.distance("abcd", "", Integer.MAX_VALUE));
+		
+		
+		//beyond one 64 character block
+		String longA = StringUtils.repeat("abcdefghij", 20);
+		String longB = longA.substring(0, 95)+"X"+longA.substring(96, 180)+"YZ";
+		assertEquals(21, StringUtils.distance(longA, longB, 100));
+		assertEquals(21, StringUtils.distance(longB, longA, 21));
+		assertEquals(-1, StringUtils.distance(longA, longB, 20));
+		assertEquals(21, SequenceUtils.distance(Sequence.make(longA), Sequence.make(longB), 100));
+		
+		assertEquals(1, StringUtils.wordDistance("the cat sat", "the dog sat", 2));
+		assertEquals(2, StringUtils.lineDistance("a\nb\nc\nd", "a\nc\nd\ne", 2));
+	}
 }
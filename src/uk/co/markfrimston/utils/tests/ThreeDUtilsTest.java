@@ -0,0 +1,87 @@
+package uk.co.markfrimston.utils.tests;
+
+import java.util.*;
+import org.junit.*;
+import uk.co.markfrimston.utils.*;
+import static org.junit.Assert.*;
+
+public class ThreeDUtilsTest
+{
+	private Matrix model = new Matrix(new double[][]{
+			{ 1, 0, -2, 0.5},
+			{ 0, 3,  1, 2  },
+			{-1, 2,  0, 4  },
+			{ 1, 1,  1, 1  }
+	});
+	
+	@Test
+	public void testRotate()
+	{
+		double x = 0.3, y = -1.2, z = 2.5;
+		Matrix mx = new Matrix(new double[][]{
+				{1, 0, 				0, 				0},
+				{0, Math.cos(x), 	-Math.sin(x), 	0},
+				{0, Math.sin(x), 	Math.cos(x), 	0},
+				{0, 0, 				0, 				1}
+		});
+		Matrix my = new Matrix(new double[][]{
+				{Math.cos(y), 	0, Math.sin(y), 	0},
+				{0, 			1, 0, 				0},
+				{-Math.sin(y), 	0, Math.cos(y), 	0},
+				{0, 			0, 0, 				1}
+		});
+		Matrix mz = new Matrix(new double[][]{
+				{Math.cos(z), 	-Math.sin(z), 	0, 0},
+				{Math.sin(z), 	Math.cos(z), 	0, 0},
+				{0, 			0, 				1, 0},
+				{0, 			0, 				0, 1}
+		});
+		
+		assertClose(mz.mult(my).mult(mx).mult(model), ThreeDUtils.rotate(model, x, y, z));
+	}
+	
+	@Test
+	public void testDestination()
+	{
+		Matrix dest = new Matrix(4, 4);
+		assertSame(dest, ThreeDUtils.scale(model, 2, 3, 4, dest));
+		assertEquals(ThreeDUtils.scale(model, 2, 3, 4), dest);
+		ThreeDUtils.translate(model, 1, -1, 5, dest);
+		assertEquals(ThreeDUtils.translate(model, 1, -1, 5), dest);
+		ThreeDUtils.project(model, 1.5, dest);
+		assertEquals(ThreeDUtils.project(model, 1.5), dest);
+		ThreeDUtils.rotate(model, 1, 2, 3, dest);
+		assertEquals(ThreeDUtils.rotate(model, 1, 2, 3), dest);
+		
+		Matrix transform = ThreeDUtils.setTranslate(new Matrix(4, 4), 1, 2, 3);
+		assertEquals(ThreeDUtils.translate(model, 1, 2, 3), transform.mult(model));
+	}
+	
+	@Test
+	public void testCullLines()
+	{
+		//screen positions are x/w, y/w
+		PointBuffer projected = new PointBuffer(new double[][]{
+				{0, 0, 0, 1}, {1, 1, 0, 2}, {0.51, 0.5, 0, 1}, {5, 0, 0, 1},
+				{5, 5, 0, 1}, {0, 0, 0, -1}, {1, 0, 0, -1}
+		});
+		int[][] lines = {{0,1}, {1,2}, {3,4}, {0,3}, {5,6}, {0,5}};
+		int[] visible = new int[lines.length];
+		int count = ThreeDUtils.cullLines(projected, lines, -1, -1, 1, 1, 0.1, visible);
+		//too short, off screen and behind are dropped
+		assertArrayEquals(new int[]{0, 3, 5}, Arrays.copyOf(visible, count));
+	}
+	
+	private void assertClose(Matrix expected, Matrix actual)
+	{
+		assertEquals(expected.getRows(), actual.getRows());
+		assertEquals(expected.getCols(), actual.getCols());
+		for(int i=0; i<expected.getRows(); i++)
+		{
+			for(int j=0; j<expected.getCols(); j++)
+			{
+				assertEquals(expected.get(i,j), actual.get(i,j), 1e-12);
+			}
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package uk.co.markfrimston.utils.tests;
+
+import org.junit.*;
+import uk.co.markfrimston.utils.*;
+import static org.junit.Assert.*;
+
+public class ThreeDimGridTest
+{
+	@Test
+	public void testStorage()
+	{
+		for(ThreeDimGrid.Storage storage : ThreeDimGrid.Storage.values())
+		{
+			ThreeDimGrid<Integer,String,Integer,Integer> grid 
+					= new ThreeDimGrid<Integer,String,Integer,Integer>(storage);
+			assertTrue(grid.isEmpty());
+			//added in an order which grows each side of the dense array in turn
+			for(int i=0; i<20; i++)
+			{
+				for(int j=0; j<20; j++)
+				{
+					for(int k=0; k<20; k++)
+					{
+						if((i+j+k) % 4 == 0){
+							grid.add(k, "y"+j, i, i*400+j*20+k);
+						}
+					}
+				}
+			}
+			assertFalse(grid.isEmpty());
+			assertEquals(20, grid.getXLegend().size());
+			assertEquals(20, grid.getZLegend().size());
+			for(int i=0; i<20; i++)
+			{
+				for(int j=0; j<20; j++)
+				{
+					for(int k=0; k<20; k++)
+					{
+						Integer expected = (i+j+k) % 4 == 0 ? i*400+j*20+k : null;
+						assertEquals(expected, grid.get(k, "y"+j, i));
+					}
+				}
+			}
+			assertNull(grid.get(0, "missing", 0));
+			assertNull(grid.get(0, "y0", 99));
+			
+			@SuppressWarnings("unchecked")
+			ThreeDimGrid<Integer,String,Integer,Integer> copy 
+					= (ThreeDimGrid<Integer,String,Integer,Integer>)grid.clone();
+			assertEquals(storage, copy.getStorage());
+			grid.add(0, "y0", 0, -1);
+			assertEquals(0, (int)copy.get(0, "y0", 0));
+			assertEquals(-1, (int)grid.get(0, "y0", 0));
+			
+			grid.clear();
+			assertTrue(grid.isEmpty());
+			assertNull(grid.get(0, "y0", 0));
+		}
+	}
+	
+	@Test
+	public void testSparse()
+	{
+		//a cube too big to hold densely, with a value on one diagonal
+		ThreeDimGrid<Integer,Integer,Integer,String> grid 
+				= new ThreeDimGrid<Integer,Integer,Integer,String>(ThreeDimGrid.Storage.SPARSE);
+		for(int i=0; i<1000; i++)
+		{
+			grid.addXType(i);
+			grid.addYType(i);
+			grid.addZType(i);
+		}
+		for(int i=0; i<1000; i++)
+		{
+			grid.add(i, i, 999-i, "d"+i);
+		}
+		for(int i=0; i<1000; i++)
+		{
+			assertEquals("d"+i, grid.get(i, i, 999-i));
+			assertNull(grid.get(i, i, i == 999-i ? 0 : i));
+		}
+		assertEquals(1000, grid.getYLegend().size());
+	}
+	
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testClone()
+	{
+		for(ThreeDimGrid.Storage storage : ThreeDimGrid.Storage.values())
+		{
+			ThreeDimGrid<Integer,Integer,Integer,Integer> grid 
+					= new ThreeDimGrid<Integer,Integer,Integer,Integer>(storage);
+			for(int i=0; i<15; i++)
+			{
+				for(int j=0; j<15; j++)
+				{
+					for(int k=0; k<15; k++)
+					{
+						grid.add(i, j, k, (i*15+j)*15+k);
+					}
+				}
+			}
+			ThreeDimGrid<Integer,Integer,Integer,Integer> copy 
+					= (ThreeDimGrid<Integer,Integer,Integer,Integer>)grid.clone();
+			grid.add(0, 0, 0, -1);
+			grid.add(0, 50, 0, -2);
+			copy.add(1, 1, 1, -3);
+			copy.add(0, 0, 50, -4);
+			ThreeDimGrid<Integer,Integer,Integer,Integer> again 
+					= (ThreeDimGrid<Integer,Integer,Integer,Integer>)copy.clone();
+			again.add(2, 2, 2, -5);
+			
+			assertEquals(-1, (int)grid.get(0, 0, 0));
+			assertEquals(-2, (int)grid.get(0, 50, 0));
+			assertEquals(1*225+1*15+1, (int)grid.get(1, 1, 1));
+			assertNull(grid.get(0, 0, 50));
+			assertEquals(16, grid.getYLegend().size());
+			assertEquals(15, grid.getZLegend().size());
+			
+			assertEquals(0, (int)copy.get(0, 0, 0));
+			assertEquals(-3, (int)copy.get(1, 1, 1));
+			assertEquals(-4, (int)copy.get(0, 0, 50));
+			assertEquals(2*225+2*15+2, (int)copy.get(2, 2, 2));
+			assertNull(copy.get(0, 50, 0));
+			assertEquals(15, copy.getYLegend().size());
+			assertEquals(16, copy.getZLegend().size());
+			
+			assertEquals(-5, (int)again.get(2, 2, 2));
+			assertEquals(-4, (int)again.get(0, 0, 50));
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package uk.co.markfrimston.utils.tests;
+
+import java.util.*;
+import uk.co.markfrimston.utils.*;
+
+/*
+ * Times putting a 100,000 point model through a rotate, translate and 
+ * project, step by step with ThreeDUtils, composed with Transform, and 
+ * composed into a Matrix4 over a PointBuffer. Run from the command line - 
+ * not part of the unit test suite.
+ */
+public class TransformBenchmark
+{
+	private static final int POINTS = 100000;
+	private static final int RUNS = 200;
+	
+	public static void main(String[] args)
+	{
+		Random random = new Random(1);
+		double[][] points = new double[POINTS][3];
+		for(int i=0; i<POINTS; i++)
+		{
+			for(int j=0; j<3; j++)
+			{
+				points[i][j] = random.nextDouble();
+			}
+		}
+		WireframeModel model = new WireframeModel(points, new int[0][]);
+		Matrix matrix = model.getMatrix();
+		PointBuffer buffer = model.getPointBuffer();
+		Transform transform = new Transform();
+		Matrix dest = new Matrix(4, POINTS);
+		PointBuffer destBuffer = new PointBuffer(POINTS);
+		
+		for(int pass=0; pass<2; pass++)
+		{
+			long start = System.nanoTime();
+			for(int i=0; i<RUNS; i++)
+			{
+				Matrix result = ThreeDUtils.rotate(matrix, i*0.01, 0.5, 0);
+				result = ThreeDUtils.translate(result, 0, 0, 5);
+				ThreeDUtils.project(result, 2);
+			}
+			long steps = System.nanoTime()-start;
+			
+			start = System.nanoTime();
+			for(int i=0; i<RUNS; i++)
+			{
+				transform.reset().rotate(i*0.01, 0.5, 0).translate(0, 0, 5).project(2);
+				transform.apply(matrix, dest);
+			}
+			long composed = System.nanoTime()-start;
+			
+			start = System.nanoTime();
+			for(int i=0; i<RUNS; i++)
+			{
+				transform.reset().rotate(i*0.01, 0.5, 0).translate(0, 0, 5).project(2);
+				transform.apply(buffer, destBuffer);
+			}
+			long fixed = System.nanoTime()-start;
+			
+			if(pass > 0)
+			{
+				System.out.println("ThreeDUtils steps: "+(steps/RUNS/1000)+"us");
+				System.out.println("Transform on Matrix: "+(composed/RUNS/1000)+"us");
+				System.out.println("Transform on PointBuffer: "+(fixed/RUNS/1000)+"us");
+			}
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package uk.co.markfrimston.utils.tests;
+
+import org.junit.*;
+import uk.co.markfrimston.utils.*;
+import static org.junit.Assert.*;
+
+public class TransformTest
+{
+	private Matrix model = WireframeModel.CUBE.getMatrix();
+	
+	@Test
+	public void testCompose()
+	{
+		Transform transform = new Transform()
+			.rotate(0.5, 1.0, -0.25)
+			.scale(2, 2, 3)
+			.translate(0, 1, 10)
+			.project(4);
+		
+		Matrix expected = ThreeDUtils.rotate(model, 0.5, 1.0, -0.25);
+		expected = ThreeDUtils.scale(expected, 2, 2, 3);
+		expected = ThreeDUtils.translate(expected, 0, 1, 10);
+		expected = ThreeDUtils.project(expected, 4);
+		
+		assertClose(expected, transform.apply(model));
+		assertClose(expected, transform.apply(WireframeModel.CUBE));
+	}
+	
+	@Test
+	public void testEmpty()
+	{
+		assertEquals(model, new Transform().apply(model));
+		
+		//each transform has its own identity, and it doesn't disturb the steps
+		Transform transform = new Transform().rotate(1, 2, 3);
+		Matrix rotated = new Matrix(4, 4).copyFrom(transform.getMatrix());
+		new Transform().getMatrix().multInPlace(5);
+		assertEquals(model, new Transform().apply(model));
+		transform.reset();
+		assertEquals(model, transform.apply(model));
+		transform.reset().rotate(1, 2, 3);
+		assertEquals(rotated, transform.getMatrix());
+	}
+	
+	@Test
+	public void testRebuild()
+	{
+		Transform transform = new Transform();
+		transform.rotate(1, 2, 3).translate(0, 0, 5).project(2);
+		Matrix first = new Matrix(4, 4).copyFrom(transform.getMatrix());
+		
+		transform.reset().rotate(1, 2, 3).translate(0, 0, 5).project(2);
+		assertEquals(first, transform.getMatrix());
+		
+		//change a later step, then go back to a shorter pipeline
+		transform.reset().rotate(1, 2, 3).translate(0, 0, 6).project(2);
+		Matrix expected = new Transform().rotate(1, 2, 3).translate(0, 0, 6).project(2).getMatrix();
+		assertEquals(expected, transform.getMatrix());
+		
+		transform.reset().rotate(1, 2, 3);
+		assertEquals(1, transform.getNumSteps());
+		assertEquals(new Transform().rotate(1, 2, 3).getMatrix(), transform.getMatrix());
+		
+		//longer than the initial capacity
+		transform.reset();
+		Transform single = new Transform();
+		for(int i=0; i<20; i++)
+		{
+			transform.rotate(i*0.1, 0, 0);
+		}
+		single.rotate(19, 0, 0);
+		assertClose(single.getMatrix(), transform.getMatrix());
+	}
+	
+	private void assertClose(Matrix expected, Matrix actual)
+	{
+		assertEquals(expected.getRows(), actual.getRows());
+		assertEquals(expected.getCols(), actual.getCols());
+		for(int i=0; i<expected.getRows(); i++)
+		{
+			for(int j=0; j<expected.getCols(); j++)
+			{
+				assertEquals(expected.get(i,j), actual.get(i,j), 1e-9);
+			}
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package uk.co.markfrimston.utils.tests;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.*;
+import uk.co.markfrimston.utils.*;
+import static org.junit.Assert.*;
+
+public class TwoDimGridTest
+{
+	@Test
+	public void testStorage()
+	{
+		//NUMERIC holds only Doubles
+		TwoDimGrid.Storage[] storages = {TwoDimGrid.Storage.HASHED, TwoDimGrid.Storage.DENSE};
+		for(TwoDimGrid.Storage storage : storages)
+		{
+			TwoDimGrid<String,Integer,String> grid = new TwoDimGrid<String,Integer,String>(storage);
+			assertTrue(grid.isEmpty());
+			//enough to grow the dense array in both directions
+			for(int i=0; i<50; i++)
+			{
+				for(int j=0; j<i; j+=3)
+				{
+					grid.add("x"+i, j, i+","+j);
+				}
+			}
+			assertFalse(grid.isEmpty());
+			assertEquals(49, grid.getXLegend().size());
+			assertEquals("x1", grid.getXLegend().get(0));
+			assertEquals(Arrays.asList(0, 3, 6), grid.getYLegend().subList(0, 3));
+			for(int i=0; i<50; i++)
+			{
+				for(int j=0; j<50; j++)
+				{
+					String expected = j < i && j % 3 == 0 ? i+","+j : null;
+					assertEquals(expected, grid.get("x"+i, j));
+				}
+			}
+			assertNull(grid.get("missing", 0));
+			
+			grid.add("x10", 3, "changed");
+			assertEquals("changed", grid.get("x10", 3));
+			assertEquals(49, grid.getXLegend().size());
+			
+			@SuppressWarnings("unchecked")
+			TwoDimGrid<String,Integer,String> copy = (TwoDimGrid<String,Integer,String>)grid.clone();
+			assertEquals(storage, copy.getStorage());
+			grid.add("x10", 3, "again");
+			assertEquals("changed", copy.get("x10", 3));
+			assertEquals("49,45", copy.get("x49", 45));
+			assertEquals(grid.getYLegend(), copy.getYLegend());
+			
+			grid.clear();
+			assertTrue(grid.isEmpty());
+			assertNull(grid.get("x10", 3));
+			grid.add("a", 1, "b");
+			assertEquals("b", grid.get("a", 1));
+		}
+		
+		try{
+			new TwoDimGrid<String,Integer,Integer>(TwoDimGrid.Storage.NUMERIC);
+			fail();
+		}catch(IllegalArgumentException e){}
+		assertEquals(TwoDimGrid.Storage.NUMERIC, 
+				TwoDimGrid.forDoubles(TwoDimGrid.Storage.NUMERIC).getStorage());
+	}
+	
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testClone()
+	{
+		for(TwoDimGrid.Storage storage : TwoDimGrid.Storage.values())
+		{
+			TwoDimGrid<Integer,Integer,Double> grid = TwoDimGrid.forDoubles(storage);
+			for(int i=0; i<40; i++)
+			{
+				for(int j=0; j<40; j++)
+				{
+					grid.add(i, j, (double)(i*40+j));
+				}
+			}
+			List<Integer> xLegend = grid.getXLegend();
+			TwoDimGrid<Integer,Integer,Double> first = (TwoDimGrid<Integer,Integer,Double>)grid.clone();
+			TwoDimGrid<Integer,Integer,Double> second = (TwoDimGrid<Integer,Integer,Double>)grid.clone();
+			
+			//changes to any one are seen by none of the others
+			grid.add(0, 0, -1.0);
+			grid.add(99, 0, -2.0);
+			first.add(1, 1, -3.0);
+			first.add(0, 99, -4.0);
+			TwoDimGrid<Integer,Integer,Double> third = (TwoDimGrid<Integer,Integer,Double>)first.clone();
+			third.add(2, 2, -5.0);
+			first.add(2, 2, -6.0);
+			
+			assertEquals(-1, grid.get(0, 0), 0);
+			assertEquals(-2, grid.get(99, 0), 0);
+			assertEquals(1*40+1, grid.get(1, 1), 0);
+			assertNull(grid.get(0, 99));
+			assertEquals(41, grid.getXLegend().size());
+			assertEquals(40, grid.getYLegend().size());
+			//legends fetched earlier follow the grid
+			assertEquals(41, xLegend.size());
+			
+			assertEquals(0, first.get(0, 0), 0);
+			assertEquals(-3, first.get(1, 1), 0);
+			assertEquals(-4, first.get(0, 99), 0);
+			assertEquals(-6, first.get(2, 2), 0);
+			assertNull(first.get(99, 0));
+			assertEquals(40, first.getXLegend().size());
+			assertEquals(41, first.getYLegend().size());
+			
+			assertEquals(-3, third.get(1, 1), 0);
+			assertEquals(-5, third.get(2, 2), 0);
+			
+			for(int i=0; i<40; i++)
+			{
+				for(int j=0; j<40; j++)
+				{
+					assertEquals(i*40+j, second.get(i, j), 0);
+				}
+			}
+			assertEquals(40, second.getXLegend().size());
+			assertEquals(40, second.getYLegend().size());
+		}
+	}
+	
+	@Test
+	public void testSlices()
+	{
+		for(TwoDimGrid.Storage storage : TwoDimGrid.Storage.values())
+		{
+			TwoDimGrid<String,String,Double> grid = TwoDimGrid.forDoubles(storage);
+			grid.add("a", "p", 1.0);
+			grid.add("a", "q", 2.0);
+			grid.add("b", "q", 3.0);
+			grid.addYType("r");
+			
+			assertEquals(Arrays.asList(1.0, 2.0, null), grid.getRow("a"));
+			assertEquals(Arrays.asList(2.0, 3.0), grid.getColumn("q"));
+			assertEquals(Arrays.asList(null, null), grid.getColumn("r"));
+			assertTrue(grid.getRow("missing").isEmpty());
+			
+			//views follow the grid
+			List<Double> row = grid.getRow("b");
+			grid.add("b", "s", 4.0);
+			assertEquals(Arrays.asList(null, 3.0, null, 4.0), row);
+		}
+	}
+	
+	@Test
+	public void testSummaries()
+	{
+		Random random = new Random(5);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		int x = random.nextInt(300), y = random.nextInt(300);
+		TwoDimGrid.Summary[] expected = null;
+		for(TwoDimGrid.Storage storage : TwoDimGrid.Storage.values())
+		{
+			//big enough to be summarised in parallel
+			TwoDimGrid<Integer,Integer,Double> grid = TwoDimGrid.forDoubles(storage);
+			Random values = new Random(5);
+			for(int i=0; i<300; i++)
+			{
+				for(int j=0; j<300; j++)
+				{
+					if(values.nextInt(4) != 0){
+						grid.add(i, j, (double)(values.nextInt(1000)-500));
+					}
+				}
+			}
+			TwoDimGrid.Summary[] summaries = {
+					grid.summariseRow(x), grid.summariseColumn(y), grid.summarise(),
+					grid.summariseRow(x, pool), grid.summariseColumn(y, pool), 
+					grid.summarise(pool)
+			};
+			if(expected == null)
+			{
+				//worked out by hand from the first grid
+				expected = new TwoDimGrid.Summary[3];
+				for(int i=0; i<3; i++)
+				{
+					double sum = 0, min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+					int count = 0;
+					for(int a=0; a<300; a++)
+					{
+						for(int b=0; b<300; b++)
+						{
+							if((i == 0 && a != x) || (i == 1 && b != y)){
+								continue;
+							}
+							Double value = grid.get(a, b);
+							if(value != null)
+							{
+								count++;
+								sum += value;
+								min = Math.min(min, value);
+								max = Math.max(max, value);
+							}
+						}
+					}
+					assertEquals(count, summaries[i].getCount());
+					assertEquals(sum, summaries[i].getSum(), 0);
+					assertEquals(min, summaries[i].getMin(), 0);
+					assertEquals(max, summaries[i].getMax(), 0);
+					assertEquals(sum/count, summaries[i].getMean(), 1e-12);
+					expected[i] = summaries[i];
+				}
+			}
+			for(int i=0; i<summaries.length; i++)
+			{
+				assertEquals(expected[i % 3], summaries[i]);
+			}
+		}
+		pool.shutdown();
+		
+		TwoDimGrid<String,String,Integer> empty = new TwoDimGrid<String,String,Integer>();
+		empty.addXType("a");
+		TwoDimGrid.Summary none = empty.summariseRow("a");
+		assertEquals(0, none.getCount());
+		assertEquals(0, none.getSum(), 0);
+		assertTrue(Double.isNaN(none.getMin()));
+		assertTrue(Double.isNaN(none.getMean()));
+		assertEquals(none, empty.summariseColumn("missing"));
+	}
+}
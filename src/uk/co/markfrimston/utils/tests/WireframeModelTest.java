@@ -0,0 +1,368 @@
+package uk.co.markfrimston.utils.tests;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.*;
+import uk.co.markfrimston.utils.*;
+import static org.junit.Assert.*;
+
+public class WireframeModelTest
+{
+	private static final String SQUARES = 
+		"# two squares sharing an edge\n"
+		+"v 0 0 0\n"
+		+"v 1.5 0 0\n"
+		+"v 1.5 1 -2.25\r\n"
+		+"vt 0.5 0.5\n"
+		+"vn 0 0 1\n"
+		+"v\t0  1   0\n"
+		+"v 3e0 0 0\n"
+		+"v 3 1 0 1.0\n"
+		+"f 1/1/1 2/1/1 3//1 4\n"
+		+"f 2 5 6 3\n"
+		+"f 6\n"
+		+"g group\n"
+		+"f 3 6";
+	
+	@Test
+	public void testLoadObj() throws Exception
+	{
+		WireframeModel model = load(SQUARES, 2.0);
+		
+		double[][] points = model.getPoints();
+		assertEquals(6, points.length);
+		assertEquals(3.0, points[1][0], 0.0);
+		assertEquals(-4.5, points[2][2], 0.0);
+		assertEquals(2.0, points[3][1], 0.0);
+		assertEquals(6.0, points[4][0], 0.0);
+		
+		int[][] lines = model.getLines();
+		int[][] expected = {{0,1},{1,2},{2,3},{3,0},{1,4},{4,5},{5,2}};
+		assertEquals(expected.length, lines.length);
+		for(int i=0; i<expected.length; i++)
+		{
+			assertArrayEquals(expected[i], lines[i]);
+		}
+	}
+	
+	@Test
+	public void testLoadObjFile() throws Exception
+	{
+		File file = File.createTempFile("model", ".obj");
+		try
+		{
+			write(file, SQUARES);
+			
+			WireframeModel model = new WireframeModel();
+			model.loadObj(file, 2.0);
+			assertEquals(load(SQUARES, 2.0), model);
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+	
+	@Test
+	public void testNumbers() throws Exception
+	{
+		Random random = new Random(1);
+		StringBuffer sb = new StringBuffer();
+		List<Double> values = new ArrayList<Double>();
+		for(int i=0; i<20000; i++)
+		{
+			double value = (random.nextDouble()-0.5) * Math.pow(10, random.nextInt(30)-15);
+			String[] forms = {
+				String.valueOf(value),
+				String.format(Locale.ROOT, "%.6f", value),
+				String.format(Locale.ROOT, "%.3e", value),
+				String.valueOf((long)value)
+			};
+			sb.append("v");
+			for(int j=0; j<3; j++)
+			{
+				String form = forms[random.nextInt(forms.length)];
+				values.add(Double.parseDouble(form));
+				sb.append(" "+form);
+			}
+			sb.append("\n");
+		}
+		
+		//long enough to be read in several pieces
+		double[][] points = load(sb.toString(), 1.0).getPoints();
+		for(int i=0; i<values.size(); i++)
+		{
+			assertEquals(values.get(i), points[i/3][i%3], 0.0);
+		}
+	}
+	
+	@Test
+	public void testRelativeIndices() throws Exception
+	{
+		String relative = SQUARES.replace("f 2 5 6 3", "f -5 -2 -1 3");
+		assertEquals(load(SQUARES, 1.0), load(relative, 1.0));
+		
+		//relative texture and normal indices too
+		relative = SQUARES.replace("f 1/1/1 2/1/1 3//1 4", "f -6/-1/-1 -5/-1/-1 -4//-1 -3/1")
+				.replace("f 2 5 6 3", "f -5/1 -2//-1 -1/-1 3/-1/1");
+		assertEquals(load(SQUARES, 1.0), load(relative, 1.0));
+		
+		File file = File.createTempFile("model", ".obj");
+		try
+		{
+			write(file, relative);
+			
+			WireframeModel model = new WireframeModel();
+			model.loadObj(file, 1.0, new ForkJoinPool(4));
+			assertEquals(load(SQUARES, 1.0), model);
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+	
+	@Test
+	public void testLoadObjParallel() throws Exception
+	{
+		//a grid of quads, with faces mixed in among the points and using
+		//relative indices, big enough to be split into several parts
+		int size = 400;
+		Random random = new Random(3);
+		StringBuffer sb = new StringBuffer();
+		for(int i=0; i<size; i++)
+		{
+			for(int j=0; j<size; j++)
+			{
+				sb.append("v "+i+" "+j+" "+random.nextDouble()+"\n");
+			}
+			if(i > 0)
+			{
+				for(int j=0; j<size-1; j++)
+				{
+					int v = (i-1)*size+j+1;
+					if(random.nextBoolean()){
+						sb.append("f "+v+" "+(v+1)+"/1 "+(v+size+1)+" "+(v+size)+"\n");
+					}else{
+						int back = (i+1)*size+1;
+						sb.append("f "+(v-back)+" "+(v+1-back)+"/1 "+(v+size+1-back)+" "+(v+size-back)+"\n");
+					}
+				}
+			}
+		}
+		String obj = sb.toString();
+		
+		File file = File.createTempFile("model", ".obj");
+		try
+		{
+			write(file, obj);
+			assertTrue(file.length() > 4*1024*1024);
+			
+			WireframeModel model = new WireframeModel();
+			model.loadObj(file, 1.0, new ForkJoinPool(4));
+			assertEquals(load(obj, 1.0), model);
+			assertEquals(size*size, model.getNumPoints());
+			assertEquals(2*size*(size-1), model.getNumLines());
+			
+			write(file, obj+"f 1 -"+(size*size+1)+"\n");
+			try{
+				model.loadObj(file, 1.0, new ForkJoinPool(4));
+				fail();
+			}catch(ModelFormatException e){}
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+	
+	@Test
+	public void testBinary() throws Exception
+	{
+		WireframeModel model = load(SQUARES, 2.0);
+		File file = File.createTempFile("model", ".wfm");
+		try
+		{
+			model.saveBinary(file);
+			WireframeModel loaded = new WireframeModel();
+			loaded.loadBinary(file);
+			assertEquals(model.getNumPoints(), loaded.getNumPoints());
+			assertEquals(model.getNumLines(), loaded.getNumLines());
+			assertArrayEquals(model.getLine(3), loaded.getLine(3));
+			assertEquals(model.getMatrix(), loaded.getMatrix());
+			assertEquals(model.getPointBuffer().toMatrix(), loaded.getPointBuffer().toMatrix());
+			assertEquals(model, loaded);
+			
+			corrupt(file);
+			try{
+				loaded.loadBinary(file);
+				fail();
+			}catch(ModelFormatException e){}
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+	
+	@Test
+	public void testLoadObjCached() throws Exception
+	{
+		File source = File.createTempFile("model", ".obj");
+		File cache = new File(source.getPath()+".wfm");
+		try
+		{
+			write(source, SQUARES);
+			WireframeModel model = new WireframeModel();
+			model.loadObjCached(source, 2.0);
+			assertTrue(cache.exists());
+			assertEquals(load(SQUARES, 2.0), model);
+			
+			//cache used while the source is unchanged
+			long cached = cache.lastModified();
+			model = new WireframeModel();
+			model.loadObjCached(source, 2.0);
+			assertEquals(load(SQUARES, 2.0), model);
+			assertEquals(cached, cache.lastModified());
+			
+			//but not with a different scaling
+			model.loadObjCached(source, 1.0);
+			assertEquals(load(SQUARES, 1.0), model);
+			
+			//or once the source changes
+			String changed = SQUARES+"\nv 9 9 9\nf 1 7\n";
+			write(source, changed);
+			source.setLastModified(source.lastModified()+2000);
+			model.loadObjCached(source, 1.0);
+			assertEquals(load(changed, 1.0), model);
+			
+			//or when it has been damaged
+			corrupt(cache);
+			model = new WireframeModel();
+			model.loadObjCached(source, 1.0);
+			assertEquals(load(changed, 1.0), model);
+			model.loadBinary(cache);
+		}
+		finally
+		{
+			source.delete();
+			cache.delete();
+		}
+	}
+	
+	@Test
+	public void testLoadObjCachedUnreadable() throws Exception
+	{
+		File source = File.createTempFile("model", ".obj");
+		File cache = new File(source.getPath()+".wfm");
+		try
+		{
+			write(source, SQUARES);
+			new WireframeModel().loadObjCached(source, 2.0);
+			
+			//a cache cut short after its header is rebuilt
+			RandomAccessFile raf = new RandomAccessFile(cache, "rw");
+			raf.setLength(raf.length()-8);
+			raf.close();
+			WireframeModel model = new WireframeModel();
+			model.loadObjCached(source, 2.0);
+			assertEquals(load(SQUARES, 2.0), model);
+			model.loadBinary(cache);
+			
+			//as is one that can't be read at all
+			cache.setReadable(false);
+			model = new WireframeModel();
+			model.loadObjCached(source, 2.0);
+			assertEquals(load(SQUARES, 2.0), model);
+		}
+		finally
+		{
+			source.delete();
+			cache.delete();
+		}
+	}
+	
+	@Test
+	public void testLoadObjCachedUnwritable() throws Exception
+	{
+		File source = File.createTempFile("model", ".obj");
+		File cache = new File(source.getPath()+".missing", "model.wfm");
+		try
+		{
+			//a cache that can't be written doesn't stop the model loading
+			write(source, SQUARES);
+			WireframeModel model = new WireframeModel();
+			model.loadObjCached(source, cache, 2.0);
+			assertEquals(load(SQUARES, 2.0), model);
+			assertFalse(cache.exists());
+			
+			//nor does one that can't be replaced, and no temporary file is left
+			cache = new File(source.getPath()+".dir");
+			cache.mkdir();
+			new File(cache, "content").createNewFile();
+			model = new WireframeModel();
+			model.loadObjCached(source, cache, 2.0);
+			assertEquals(load(SQUARES, 2.0), model);
+			assertTrue(cache.isDirectory());
+			for(File sibling : cache.getAbsoluteFile().getParentFile().listFiles())
+			{
+				assertFalse(sibling.getName().startsWith(cache.getName()) 
+						&& sibling.getName().endsWith(".tmp"));
+			}
+		}
+		finally
+		{
+			source.delete();
+			new File(cache, "content").delete();
+			cache.delete();
+		}
+	}
+	
+	private void write(File file, String content) throws IOException
+	{
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "US-ASCII");
+		writer.write(content);
+		writer.close();
+	}
+	
+	private void corrupt(File file) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.seek(raf.length()-3);
+		int b = raf.read();
+		raf.seek(raf.length()-3);
+		raf.write(b ^ 0xff);
+		raf.close();
+	}
+	
+	@Test
+	public void testBadObj() throws Exception
+	{
+		String[] bad = {
+			"v 1 2\n",
+			"v 1 x 2\n",
+			"v 1 2 3\nf 1 a\n",
+			"v 1 2 3\nf 1 0\n",
+			"v 1 2 3\nf 1 -2\n",
+			"v 1 2 3\nf 1/2/3/4 1\n",
+			"v 1 2 3\nf 1/- 1\n",
+			"v 1 2 3\nf 1/2-3 1\n",
+			"v 1 2 3\nf 1/--2 1\n"
+		};
+		for(String obj : bad)
+		{
+			try{
+				load(obj, 1.0);
+				fail(obj);
+			}catch(ModelFormatException e){}
+		}
+	}
+	
+	private WireframeModel load(String obj, double scaling) throws Exception
+	{
+		WireframeModel model = new WireframeModel();
+		model.loadObj(new ByteArrayInputStream(obj.getBytes("US-ASCII")), scaling);
+		return model;
+	}
+}